@@ -0,0 +1,91 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import net.sf.gsaapi.constants.CircuitState;
+
+/**
+ * Stops sending searches after a run of consecutive failures. The
+ * circuit then stays open for the open time, after which a single trial
+ * search is let through: its success closes the circuit, its failure
+ * opens it again.
+ * Intended for internal use by GSAClient.
+ */
+class CircuitBreaker {
+
+    private CircuitState state = CircuitState.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+    private long openCount;
+
+    /**
+     * @return true if the search may be sent
+     */
+    synchronized boolean tryAcquire(long openNanos) {
+        if (state == CircuitState.CLOSED) return true;
+        if (state == CircuitState.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) return false;
+            state = CircuitState.HALF_OPEN;
+        }
+        if (trialInFlight) return false;
+        trialInFlight = true;
+        return true;
+    }
+
+    synchronized void succeeded() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+        state = CircuitState.CLOSED;
+    }
+
+    synchronized void failed(int threshold) {
+        consecutiveFailures++;
+        trialInFlight = false;
+        if (state == CircuitState.HALF_OPEN
+                || (state == CircuitState.CLOSED && consecutiveFailures >= threshold)) {
+            state = CircuitState.OPEN;
+            openedAt = System.nanoTime();
+            openCount++;
+        }
+    }
+
+    /**
+     * a search that ended without telling whether the appliance is
+     * healthy (it was aborted, or rejected by the concurrency limit).
+     */
+    synchronized void abandoned() {
+        trialInFlight = false;
+    }
+
+    synchronized CircuitState getState(long openNanos) {
+        if (state == CircuitState.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            return CircuitState.HALF_OPEN;
+        }
+        return state;
+    }
+
+    synchronized long getOpenCount() {
+        return openCount;
+    }
+}
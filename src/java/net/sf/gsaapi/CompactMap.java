@@ -0,0 +1,182 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A small map of String keys to String values, kept as parallel key and
+ * value arrays in insertion order. Results usually carry only a handful
+ * of metas or fields, for which a linear scan is as fast as hashing and
+ * takes a fraction of the memory of a HashMap. Once a map holds
+ * {@link #INDEX_THRESHOLD} entries, an open-addressing table of entry
+ * positions is added, so that results with hundreds of metas are still
+ * built in linear time. The response binders take names from
+ * {@link ResponseBuilder#NAMES}, so the names repeated on every result of
+ * a page share one String.
+ * <br/>
+ * Through the Map interface the map is read-only; entries are added
+ * with {@link #add(String, String)}.
+ * Intended for internal use by GSAResult.
+ */
+class CompactMap extends AbstractMap {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    /**
+     * the size from which keys are looked up by hash.
+     */
+    static final int INDEX_THRESHOLD = 16;
+
+    private String[] keys;
+    private String[] values;
+    private int size;
+    // entry position + 1 by hash of the key, 0 for a free slot; null
+    // below INDEX_THRESHOLD entries
+    private int[] index;
+    private Set entrySet;
+
+    CompactMap() {
+        keys = new String[INITIAL_CAPACITY];
+        values = new String[INITIAL_CAPACITY];
+    }
+
+    /**
+     * adds an entry, replacing the value of an existing key.
+     */
+    void add(String key, String value) {
+        int i = indexOf(key);
+        if (i >= 0) {
+            values[i] = value;
+            return;
+        }
+        if (size == keys.length) {
+            String[] newKeys = new String[size * 2];
+            String[] newValues = new String[size * 2];
+            System.arraycopy(keys, 0, newKeys, 0, size);
+            System.arraycopy(values, 0, newValues, 0, size);
+            keys = newKeys;
+            values = newValues;
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+        if (index != null && index.length == keys.length * 2) {
+            insert(size - 1);
+        } else if (size >= INDEX_THRESHOLD) {
+            reindex();
+        }
+    }
+
+    /**
+     * rebuilds the table of positions, at most half full.
+     */
+    private void reindex() {
+        index = new int[keys.length * 2];
+        for (int i = 0; i < size; i++) {
+            insert(i);
+        }
+    }
+
+    private void insert(int i) {
+        int mask = index.length - 1;
+        int slot = hash(keys[i]) & mask;
+        while (index[slot] != 0) slot = (slot + 1) & mask;
+        index[slot] = i + 1;
+    }
+
+    /**
+     * @return the slot of the table holding the position of the key, or
+     * the free slot where it would go.
+     */
+    private int slotOf(Object key) {
+        int mask = index.length - 1;
+        int slot = hash(key) & mask;
+        for (int i; (i = index[slot] - 1) >= 0; slot = (slot + 1) & mask) {
+            if (keys[i] == key || (key != null && key.equals(keys[i]))) return slot;
+        }
+        return slot;
+    }
+
+    private static int hash(Object key) {
+        int h = key == null ? 0 : key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private int indexOf(Object key) {
+        if (index != null) return index[slotOf(key)] - 1;
+        for (int i = 0; i < size; i++) {
+            if (keys[i] == key) return i;
+        }
+        if (key == null) return -1;
+        for (int i = 0; i < size; i++) {
+            if (key.equals(keys[i])) return i;
+        }
+        return -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    public Object get(Object key) {
+        int i = indexOf(key);
+        return i < 0 ? null : values[i];
+    }
+
+    public Set entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet() {
+                public int size() {
+                    return size;
+                }
+                public Iterator iterator() {
+                    return new Iterator() {
+                        private int next;
+                        public boolean hasNext() {
+                            return next < size;
+                        }
+                        public Object next() {
+                            if (next >= size) throw new NoSuchElementException();
+                            int i = next++;
+                            return new SimpleImmutableEntry(keys[i], values[i]);
+                        }
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
+        }
+        return entrySet;
+    }
+}
@@ -0,0 +1,107 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+/**
+ * Limits the number of searches in flight to a limit that adapts to the
+ * observed latency, in the manner of a gradient limiter: the limit grows
+ * while recent latencies stay close to the long-term average and shrinks
+ * in proportion as they rise above it, ie. as requests start to queue
+ * on the appliance. Failed searches cut the limit multiplicatively.
+ * Intended for internal use by GSAClient.
+ */
+class ConcurrencyLimiter {
+
+    static final int MIN_LIMIT = 1;
+    // recent latency may exceed the long-term average by this factor before the limit shrinks
+    private static final double TOLERANCE = 1.5;
+    private static final double SHORT_ALPHA = 0.2;
+    private static final double LONG_ALPHA = 0.01;
+    private static final double SMOOTHING = 0.2;
+    private static final double BACKOFF = 0.9;
+
+    private final int maxLimit;
+    private double limit;
+    private int inFlight;
+    private double shortLatency;
+    private double longLatency;
+
+    ConcurrencyLimiter(int initialLimit, int maxLimit) {
+        if (initialLimit < MIN_LIMIT || maxLimit < initialLimit) {
+            throw new IllegalArgumentException("invalid limits: " + initialLimit + ", " + maxLimit);
+        }
+        this.limit = initialLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * @return true if the search may be sent; it must then be
+     * followed by exactly one of the other calls.
+     */
+    synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) return false;
+        inFlight++;
+        return true;
+    }
+
+    synchronized void succeeded(long latencyNanos) {
+        boolean utilized = inFlight * 2 >= limit;
+        inFlight--;
+        if (longLatency == 0) {
+            shortLatency = longLatency = latencyNanos;
+            return;
+        }
+        shortLatency += SHORT_ALPHA * (latencyNanos - shortLatency);
+        longLatency += LONG_ALPHA * (latencyNanos - longLatency);
+        if (longLatency > 2 * shortLatency) {
+            // the appliance got faster: let the average catch up
+            longLatency *= 0.95;
+        }
+        // an under-used limit says nothing about the capacity of the appliance
+        if (!utilized) return;
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longLatency / shortLatency));
+        double target = limit * gradient + Math.sqrt(limit);
+        limit = clamp(limit * (1 - SMOOTHING) + target * SMOOTHING);
+    }
+
+    synchronized void failed() {
+        inFlight--;
+        limit = clamp(limit * BACKOFF);
+    }
+
+    synchronized void abandoned() {
+        inFlight--;
+    }
+
+    private double clamp(double value) {
+        return Math.max(MIN_LIMIT, Math.min(maxLimit, value));
+    }
+
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+}
@@ -0,0 +1,167 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The connect, read and total timeouts of a single search. The total
+ * timeout runs from the creation of the Deadline and covers the fetch
+ * and the parse of the response. Zero means no timeout.
+ * Intended for internal use by GSAClient.
+ */
+class Deadline {
+
+    static final Deadline NONE = new Deadline(0, 0, 0);
+
+    private final long connectTimeoutMillis;
+    private final long readTimeoutMillis;
+    private final long timeoutMillis;
+    private final long expiresNanos;
+
+    Deadline(long connectTimeoutMillis, long readTimeoutMillis, long timeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.timeoutMillis = timeoutMillis;
+        this.expiresNanos = timeoutMillis > 0
+                ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0;
+    }
+
+    /**
+     * @param defaultTimeoutMillis the total timeout if this has none
+     * @return a Deadline with the same timeouts, running from now.
+     */
+    Deadline restart(long defaultTimeoutMillis) {
+        return new Deadline(connectTimeoutMillis, readTimeoutMillis,
+                timeoutMillis > 0 ? timeoutMillis : defaultTimeoutMillis);
+    }
+
+    /**
+     * @return true if any of the timeouts is set.
+     */
+    boolean isBounded() {
+        return connectTimeoutMillis > 0 || readTimeoutMillis > 0 || timeoutMillis > 0;
+    }
+
+    /**
+     * @return true if there is a total timeout.
+     */
+    boolean hasTimeout() {
+        return timeoutMillis > 0;
+    }
+
+    /**
+     * @return milliseconds left before the total timeout (at least 1),
+     * or 0 if there is none.
+     * @throws GSATimeoutException if the total timeout has expired
+     */
+    long remainingMillis() throws GSATimeoutException {
+        if (timeoutMillis <= 0) return 0;
+        long remaining = expiresNanos - System.nanoTime();
+        if (remaining <= 0) throw expired();
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining));
+    }
+
+    /**
+     * @return the connect timeout, shortened to the time left.
+     */
+    int connectTimeout() throws GSATimeoutException {
+        return bound(connectTimeoutMillis);
+    }
+
+    /**
+     * @return the read timeout, shortened to the time left.
+     */
+    int readTimeout() throws GSATimeoutException {
+        return bound(readTimeoutMillis);
+    }
+
+    private int bound(long millis) throws GSATimeoutException {
+        long remaining = remainingMillis();
+        if (remaining > 0 && (millis <= 0 || remaining < millis)) millis = remaining;
+        return (int) Math.min(millis, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @throws GSATimeoutException if the total timeout has expired
+     */
+    void check() throws GSATimeoutException {
+        remainingMillis();
+    }
+
+    GSATimeoutException expired() {
+        return new GSATimeoutException("Search did not complete within " + timeoutMillis + "ms");
+    }
+
+    /**
+     * @return the exception reporting a socket timeout
+     */
+    GSATimeoutException timedOut(SocketTimeoutException ste) {
+        if (timeoutMillis > 0 && expiresNanos - System.nanoTime() <= 0) {
+            GSATimeoutException retval = expired();
+            retval.initCause(ste);
+            return retval;
+        }
+        return new GSATimeoutException(ste.getMessage(), ste);
+    }
+
+    /**
+     * wraps the response stream so that reads fail with a
+     * GSATimeoutException once a timeout has expired.
+     */
+    InputStream wrap(InputStream in) {
+        if (!isBounded()) return in;
+        return new FilterInputStream(in) {
+            public int read() throws IOException {
+                check();
+                try {
+                    return super.read();
+                } catch (SocketTimeoutException ste) {
+                    throw timedOut(ste);
+                }
+            }
+            public int read(byte[] b, int off, int len) throws IOException {
+                check();
+                try {
+                    return super.read(b, off, len);
+                } catch (SocketTimeoutException ste) {
+                    throw timedOut(ste);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the GSATimeoutException that caused a failed parse, if any.
+     */
+    static GSATimeoutException find(Throwable t) {
+        for (int depth = 0; t != null && depth < 8; depth++, t = t.getCause()) {
+            if (t instanceof GSATimeoutException) return (GSATimeoutException) t;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,107 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Chooses the endpoint for each search by "power of two choices": two
+ * endpoints are picked at random and the one with the lower load score
+ * (latency average times searches in flight) wins. Ejected endpoints
+ * are only used when every endpoint not yet tried is ejected.
+ * Intended for internal use by GSAClient.
+ */
+class EndpointBalancer {
+
+    private final GSAEndpoint[] endpoints;
+
+    EndpointBalancer(GSAEndpoint[] endpoints) {
+        if (endpoints == null || endpoints.length == 0) {
+            throw new IllegalArgumentException("at least one endpoint is required");
+        }
+        this.endpoints = endpoints.clone();
+    }
+
+    GSAEndpoint[] getEndpoints() {
+        return endpoints.clone();
+    }
+
+    int size() {
+        return endpoints.length;
+    }
+
+    /**
+     * @param tried endpoints already tried for this search (may contain nulls)
+     * @return the endpoint to use next, or null if all have been tried.
+     */
+    GSAEndpoint select(GSAEndpoint[] tried) {
+        if (endpoints.length == 1) {
+            return contains(tried, endpoints[0]) ? null : endpoints[0];
+        }
+        GSAEndpoint first = null;
+        GSAEndpoint second = null;
+        int candidates = 0;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        // reservoir-sample two distinct healthy endpoints
+        for (int i = 0; i < endpoints.length; i++) {
+            GSAEndpoint e = endpoints[i];
+            if (contains(tried, e) || e.isEjected()) continue;
+            candidates++;
+            if (candidates == 1) {
+                first = e;
+            } else if (candidates == 2) {
+                second = e;
+            } else {
+                int slot = random.nextInt(candidates);
+                if (slot == 0) first = e;
+                else if (slot == 1) second = e;
+            }
+        }
+        if (first == null) {
+            return leastRecentlyEjected(tried);
+        }
+        if (second == null || first.score() <= second.score()) return first;
+        return second;
+    }
+
+    /**
+     * all remaining endpoints are ejected: use the one that will be
+     * readmitted first rather than failing the search outright.
+     */
+    private GSAEndpoint leastRecentlyEjected(GSAEndpoint[] tried) {
+        GSAEndpoint retval = null;
+        for (int i = 0; i < endpoints.length; i++) {
+            GSAEndpoint e = endpoints[i];
+            if (contains(tried, e)) continue;
+            if (retval == null || e.ejectedUntilNanos() - retval.ejectedUntilNanos() < 0) retval = e;
+        }
+        return retval;
+    }
+
+    private static boolean contains(GSAEndpoint[] tried, GSAEndpoint e) {
+        for (int i = 0; i < tried.length; i++) {
+            if (tried[i] == e) return true;
+        }
+        return false;
+    }
+}
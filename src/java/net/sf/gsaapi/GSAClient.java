@@ -22,10 +22,33 @@
  ********************************************************************************/
 package net.sf.gsaapi;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.gsaapi.constants.CircuitState;
+import net.sf.gsaapi.constants.ResponsePart;
+import net.sf.gsaapi.constants.SearchPhase;
+import net.sf.gsaapi.http.PooledHttpTransport;
+import net.sf.gsaapi.util.Util;
 
 /**
  * <p/>
@@ -44,6 +67,14 @@ import java.util.ResourceBundle;
  * instance (if used) will be used for all the threads. Thus you
  * must appropriately design the GSAClientDelegate for multi-threaded
  * access.
+ * <p/>
+ * Searches may also be issued without blocking the calling thread:
+ * <pre>
+ * CompletableFuture&lt;GSAResponse&gt; future =
+ *         client.getGSAResponseAsync(query, 2, TimeUnit.SECONDS);
+ * </pre>
+ * The network round trip and the parse then run on the executor set
+ * with {@link #setExecutor(Executor)}.
  * @see GSAQuery
  * @author Amol S Deshmukh adeshmuk .at inxight .dot com
  */
@@ -65,6 +96,33 @@ public class GSAClient {
     private int port;
     private String xmlSystemId = DEFAULT_XML_SYSTEM_ID;
     private GSAClientDelegate delegate;
+    private PooledHttpTransport transport;
+    private Executor executor;
+    private GSAResponseParser responseParser = GSAResponseParser.SAX;
+    private GSAResponseCache responseCache;
+    private volatile GSAMappedResponseCache secondLevelCache;
+    private volatile boolean requestCoalescing;
+    private final ConcurrentHashMap<String, CompletableFuture<GSAResponse>> inFlight =
+            new ConcurrentHashMap<String, CompletableFuture<GSAResponse>>();
+    private final AtomicLong collapsedRequestCount = new AtomicLong();
+    private final EndpointBalancer balancer;
+    private volatile int maxSearchAttempts = DEFAULT_MAX_SEARCH_ATTEMPTS;
+    private volatile int ejectionThreshold = DEFAULT_EJECTION_THRESHOLD;
+    private volatile long ejectionNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_EJECTION_TIME_MILLIS);
+    private final HedgePolicy hedgePolicy = new HedgePolicy();
+    private volatile long connectTimeoutMillis;
+    private volatile long readTimeoutMillis;
+    private volatile long searchTimeoutMillis;
+    private volatile boolean acceptCompression = true;
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+    private volatile int circuitBreakerThreshold;
+    private volatile long circuitOpenNanos;
+    private volatile ConcurrencyLimiter concurrencyLimiter;
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final GSAMetrics metrics = new GSAMetrics();
+    private volatile GSASearchListener[] searchListeners = NO_SEARCH_LISTENERS;
+
+    private static final GSASearchListener[] NO_SEARCH_LISTENERS = new GSASearchListener[0];
 
     /**
      * @param protocol protocol to use to connect to GSA eg. "http"
@@ -73,10 +131,26 @@ public class GSAClient {
      * @param path     path for the search program on GSA eg. "/search"
      */
     public GSAClient(String protocol, String host, int port, String path) {
-        this.protocol = protocol;
-        this.host = host;
-        this.port = port;
-        this.path = path;
+        this(new GSAEndpoint[] {new GSAEndpoint(protocol, host, port, path)});
+    }
+
+    /**
+     * creates a client that spreads the searches over a cluster of
+     * appliances. Each search goes to the less loaded of two randomly
+     * chosen endpoints (see {@link GSAEndpoint}); endpoints that fail
+     * repeatedly are ejected for a while, and a search that fails
+     * before a response is received is retried on another endpoint.
+     * The getHost(), getPort(), getPath() and getProtocol() methods
+     * return the values of the first endpoint.
+     * @param endpoints the appliances of the cluster
+     */
+    public GSAClient(GSAEndpoint[] endpoints) {
+        this.balancer = new EndpointBalancer(endpoints);
+        GSAEndpoint first = endpoints[0];
+        this.protocol = first.getProtocol();
+        this.host = first.getHost();
+        this.port = first.getPort();
+        this.path = first.getPath();
         if (null == xmlSystemId) { 
             this.xmlSystemId = protocol + "://" + host + ":" + port + "/";
         } // else there was an overriding value in META-INF/gsaclient
@@ -128,6 +202,168 @@ public class GSAClient {
         this.delegate = delegate;
     }
 
+    /**
+     * adds a listener to be told of the searches made through
+     * <code>getGSAResponse</code> and <code>getGSAResponseAsync</code>.
+     * Searches already started are not reported to it.
+     * @param listener the listener
+     */
+    public synchronized void addSearchListener(GSASearchListener listener) {
+        if (listener == null) throw new NullPointerException("listener");
+        GSASearchListener[] listeners = new GSASearchListener[searchListeners.length + 1];
+        System.arraycopy(searchListeners, 0, listeners, 0, searchListeners.length);
+        listeners[searchListeners.length] = listener;
+        searchListeners = listeners;
+    }
+
+    /**
+     * removes a listener added by {@link #addSearchListener(GSASearchListener)}.
+     * @param listener the listener
+     */
+    public synchronized void removeSearchListener(GSASearchListener listener) {
+        for (int i = 0; i < searchListeners.length; i++) {
+            if (searchListeners[i] == listener) {
+                GSASearchListener[] listeners = new GSASearchListener[searchListeners.length - 1];
+                System.arraycopy(searchListeners, 0, listeners, 0, i);
+                System.arraycopy(searchListeners, i + 1, listeners, i, listeners.length - i);
+                searchListeners = listeners.length == 0 ? NO_SEARCH_LISTENERS : listeners;
+                return;
+            }
+        }
+    }
+
+    /**
+     * specify a PooledHttpTransport to fetch the search results
+     * over pooled keep-alive connections instead of opening a new
+     * URL connection for every search. The transport may be shared
+     * by several GSAClient instances. A GSAClientDelegate, if set,
+     * takes precedence over the transport.
+     * @param transport the transport or null to connect directly.
+     */
+    public void setTransport(PooledHttpTransport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * returns the transport set by {@link #setTransport(PooledHttpTransport)}
+     * @return the transport or null if none has been set.
+     */
+    public PooledHttpTransport getTransport() {
+        return transport;
+    }
+
+
+    /**
+     * specify the Executor on which the asynchronous methods
+     * (searchAsync, getGSAResponseAsync) fetch and parse the
+     * results. By default every search runs on its own virtual
+     * thread where the JVM supports them, else on a shared pool
+     * of daemon threads.
+     * @param executor the executor or null to use the default.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * returns the Executor used by the asynchronous methods.
+     * @return the executor set on this client or the default one.
+     */
+    public Executor getExecutor() {
+        return executor != null ? executor : GSAExecutors.defaultExecutor();
+    }
+
+    /**
+     * specify the parser used to bind the XML results to
+     * GSAResponse instances. Defaults to {@link GSAResponseParser#SAX}.
+     * @param responseParser the parser or null to use the default.
+     */
+    public void setResponseParser(GSAResponseParser responseParser) {
+        this.responseParser = responseParser == null ? GSAResponseParser.SAX : responseParser;
+    }
+
+    /**
+     * returns the parser used to bind the XML results.
+     * @return the GSAResponseParser in use.
+     */
+    public GSAResponseParser getResponseParser() {
+        return responseParser;
+    }
+
+    /**
+     * specify a cache for the parsed responses. Off by default.
+     * Only the getGSAResponse methods use the cache; the search
+     * methods always fetch from the GSA. Stale and refresh-ahead
+     * responses (see {@link GSAResponseCache#setStaleWhileRevalidate(long, TimeUnit)})
+     * are fetched again on this client's executor.
+     * @param responseCache the cache, or null to disable caching.
+     * @see GSAQuery#setCacheable(boolean)
+     */
+    public void setResponseCache(GSAResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * @return the response cache, or null if caching is disabled.
+     */
+    public GSAResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * specify a second level cache for the raw responses, consulted
+     * when the response cache misses. Off by default. Responses found
+     * there are parsed and put in the response cache; responses fetched
+     * from the GSA are read completely before they are parsed, and kept
+     * in both caches. The client does not close the cache.
+     * @param secondLevelCache the cache, or null to disable it.
+     * @see GSAQuery#setCacheable(boolean)
+     */
+    public void setSecondLevelCache(GSAMappedResponseCache secondLevelCache) {
+        this.secondLevelCache = secondLevelCache;
+    }
+
+    /**
+     * @return the second level cache, or null if it is disabled.
+     */
+    public GSAMappedResponseCache getSecondLevelCache() {
+        return secondLevelCache;
+    }
+
+    /**
+     * share one fetch and parse between identical concurrent calls to
+     * the getGSAResponse methods. A call made while an identical query
+     * (same parameters and response parts) is in flight waits for that
+     * search and gets its response, or its exception, instead of sending
+     * its own request. If the search it waits for is aborted by its own
+     * caller (cancelled or timed out), the waiting call searches again.
+     * Off by default. The shared GSAResponse must be treated as read-only.
+     * @param requestCoalescing true to coalesce identical requests.
+     */
+    public void setRequestCoalescing(boolean requestCoalescing) {
+        this.requestCoalescing = requestCoalescing;
+    }
+
+    public boolean isRequestCoalescing() {
+        return requestCoalescing;
+    }
+
+    /**
+     * @return number of calls that were served by another call's search
+     * instead of sending their own request.
+     */
+    public long getCollapsedRequestCount() {
+        return collapsedRequestCount.get();
+    }
+
+    /**
+     * @return the latency histograms of the phases of the searches this
+     * client has fetched from an appliance.
+     * @see GSAResponse#getTimings()
+     */
+    public GSAMetrics getMetrics() {
+        return metrics;
+    }
 
     /**
      * If a valid query does not result in any results, an
@@ -136,7 +372,7 @@ public class GSAClient {
      * @return List of GSAResponse objects
      */
     public InputStream search(GSAQuery query) throws IOException {
-        return search(query.getValue());
+        return search(query.getValue(), deadline(query));
     }
 
     /**
@@ -156,26 +392,533 @@ public class GSAClient {
      * @return InputStream to the search results page
      */
     public InputStream search(String rawQuery) throws IOException {
+        return search(rawQuery, deadline(null));
+    }
+
+    private InputStream search(String rawQuery, Deadline deadline) throws IOException {
+        boolean breaker = circuitBreakerThreshold > 0;
+        ConcurrencyLimiter limiter = concurrencyLimiter;
+        if (rawQuery == null || (!breaker && limiter == null)) {
+            return send(rawQuery, deadline);
+        }
+        if (breaker && !circuitBreaker.tryAcquire(circuitOpenNanos)) {
+            rejectedCount.incrementAndGet();
+            throw new GSARejectedException("Circuit open: searches are suspended after "
+                    + circuitBreakerThreshold + " consecutive failures");
+        }
+        if (limiter != null && !limiter.tryAcquire()) {
+            if (breaker) circuitBreaker.abandoned();
+            rejectedCount.incrementAndGet();
+            throw new GSARejectedException("Concurrency limit of " + limiter.getLimit() + " searches reached");
+        }
+        long start = System.nanoTime();
+        int outcome = ABANDONED;
+        try {
+            InputStream retval = send(rawQuery, deadline);
+            outcome = SUCCEEDED;
+            return retval;
+        } catch (FileNotFoundException fnfe) {
+            outcome = SUCCEEDED;
+            throw fnfe;
+        } catch (GSATimeoutException gte) {
+            outcome = FAILED;
+            throw gte;
+        } catch (InterruptedIOException iioe) {
+            // aborted by the caller: says nothing about the appliance
+            throw iioe;
+        } catch (IOException ioe) {
+            outcome = FAILED;
+            throw ioe;
+        } finally {
+            if (outcome == SUCCEEDED) {
+                if (breaker) circuitBreaker.succeeded();
+                if (limiter != null) limiter.succeeded(System.nanoTime() - start);
+            } else if (outcome == FAILED) {
+                if (breaker) circuitBreaker.failed(circuitBreakerThreshold);
+                if (limiter != null) limiter.failed();
+            } else {
+                if (breaker) circuitBreaker.abandoned();
+                if (limiter != null) limiter.abandoned();
+            }
+        }
+    }
+
+    private static final int SUCCEEDED = 0;
+    private static final int FAILED = 1;
+    private static final int ABANDONED = 2;
+
+    /**
+     * sends the search to the url or to the endpoints.
+     */
+    private InputStream send(String rawQuery, Deadline deadline) throws IOException {
         InputStream retval = null;
 
         if (rawQuery != null) {
-            String fullUrl = rawQuery;
-            if (rawQuery.indexOf("://") < 0) {
-                // build full url
-                fullUrl = protocol + "://"
-                        + host + ':' + port
-                        + (path.startsWith("/") ? path : ("/" + path))
-                        + (rawQuery.startsWith("?") ? rawQuery : ("?" + rawQuery));
+            if (rawQuery.indexOf("://") >= 0) {
+                try {
+                    return open(rawQuery, deadline);
+                } catch (SocketTimeoutException ste) {
+                    throw deadline.timedOut(ste);
+                }
             }
+            String queryString = rawQuery.startsWith("?") ? rawQuery : ("?" + rawQuery);
+            GSAEndpoint[] tried = new GSAEndpoint[Math.max(1, Math.min(maxSearchAttempts, balancer.size()))];
+            if (isHedging()) {
+                hedgePolicy.searchIssued();
+                retval = hedgedSearch(queryString, tried, deadline);
+            } else {
+                retval = searchEndpoints(queryString, tried, 0, deadline);
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * @return true if searches may be hedged: hedging is on and there is
+     * a second endpoint to hedge to.
+     */
+    private boolean isHedging() {
+        return balancer.size() > 1 && hedgePolicy.isEnabled();
+    }
 
-            if (delegate != null) { // use the delegate to fetch the response
-                retval = delegate.getResponseStream(fullUrl);
+    /**
+     * tries the search on successive endpoints until one answers.
+     * @param tried endpoints already tried in tried[0..attempt-1]
+     * @param attempt index of the next attempt
+     */
+    private InputStream searchEndpoints(String queryString, GSAEndpoint[] tried, int attempt, Deadline deadline)
+            throws IOException {
+        IOException failure = null;
+        for (; attempt < tried.length; attempt++) {
+            GSAEndpoint endpoint = balancer.select(tried);
+            if (endpoint == null) break;
+            tried[attempt] = endpoint;
+            try {
+                return searchEndpoint(endpoint, queryString, deadline);
+            } catch (IOException ioe) {
+                if (!isRetryable(ioe)) throw ioe;
+                failure = ioe;
             }
-            else { // connect to url & fetch response
-                retval = new URL(fullUrl).openStream();
+        }
+        throw failure;
+    }
+
+    /**
+     * sends the search to one endpoint, keeping its statistics.
+     */
+    private InputStream searchEndpoint(GSAEndpoint endpoint, String queryString, Deadline deadline)
+            throws IOException {
+        deadline.check();
+        long start = System.nanoTime();
+        endpoint.requestStarted();
+        try {
+            InputStream retval = open(endpoint.getSearchUrl() + queryString, deadline);
+            long latency = System.nanoTime() - start;
+            endpoint.requestSucceeded(latency);
+            if (isHedging()) hedgePolicy.record(latency);
+            return retval;
+        } catch (FileNotFoundException fnfe) {
+            // the appliance answered: the same query fails everywhere
+            endpoint.requestSucceeded(System.nanoTime() - start);
+            throw fnfe;
+        } catch (SocketTimeoutException ste) {
+            // an unresponsive appliance counts against the endpoint
+            endpoint.requestFailed(ejectionThreshold, ejectionNanos);
+            throw deadline.timedOut(ste);
+        } catch (InterruptedIOException iioe) {
+            endpoint.requestAbandoned();
+            throw iioe;
+        } catch (IOException ioe) {
+            endpoint.requestFailed(ejectionThreshold, ejectionNanos);
+            throw ioe;
+        } catch (RuntimeException re) {
+            endpoint.requestAbandoned();
+            throw re;
+        }
+    }
+
+    /**
+     * whether a failed search may be tried on another endpoint.
+     */
+    private static boolean isRetryable(Throwable t) {
+        return t instanceof IOException
+                && !(t instanceof FileNotFoundException)
+                && !(t instanceof InterruptedIOException);
+    }
+
+    private CompletableFuture<InputStream> searchEndpointAsync(final GSAEndpoint endpoint,
+            final String queryString, final Deadline deadline) {
+        return submit(new SearchTask<InputStream>() {
+            InputStream execute() throws IOException {
+                return searchEndpoint(endpoint, queryString, deadline);
             }
+        }, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * sends the search to one endpoint and, if it has not answered within
+     * the hedge delay, to a second one. The first response wins; the
+     * other search is cancelled and its response (if any) closed.
+     */
+    private InputStream hedgedSearch(String queryString, GSAEndpoint[] tried, Deadline deadline)
+            throws IOException {
+        GSAEndpoint first = balancer.select(tried);
+        tried[0] = first;
+        CompletableFuture<InputStream> primary = searchEndpointAsync(first, queryString, deadline);
+        long delay = hedgePolicy.getHedgeDelayNanos();
+        if (delay < 0) {
+            return await(primary, deadline);
         }
-        return retval;
+        try {
+            return primary.get(delay, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException te) {
+            // no answer yet: hedge
+        } catch (ExecutionException ee) {
+            if (tried.length < 2 || !isRetryable(ee.getCause())) return await(primary);
+            return searchEndpoints(queryString, tried, 1, deadline);
+        } catch (InterruptedException ie) {
+            primary.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the search");
+        }
+        GSAEndpoint[] exclude = {first};
+        GSAEndpoint second = hedgePolicy.tryHedge() ? balancer.select(exclude) : null;
+        if (second == null) {
+            return await(primary, deadline);
+        }
+        CompletableFuture<InputStream> hedge = searchEndpointAsync(second, queryString, deadline);
+        CompletableFuture<InputStream> winner = new CompletableFuture<InputStream>();
+        AtomicInteger failures = new AtomicInteger();
+        race(primary, winner, failures, false);
+        race(hedge, winner, failures, true);
+        try {
+            return await(winner, deadline);
+        } finally {
+            primary.cancel(true);
+            hedge.cancel(true);
+        }
+    }
+
+    private void race(CompletableFuture<InputStream> attempt, final CompletableFuture<InputStream> winner,
+            final AtomicInteger failures, final boolean isHedge) {
+        attempt.whenComplete((istream, failure) -> {
+            if (failure == null) {
+                if (winner.complete(istream)) {
+                    if (isHedge) hedgePolicy.hedgeWon();
+                } else {
+                    try {
+                        istream.close();
+                    } catch (IOException ioe) {
+                    }
+                }
+            } else if (failures.incrementAndGet() == 2) {
+                winner.completeExceptionally(failure);
+            }
+        });
+    }
+
+    /**
+     * fetches the url with the delegate, the transport or a URLConnection.
+     * The delegate is responsible for its own timeouts.
+     * @return the response body, timing its connect, first byte and
+     * transfer phases. Its reads fail with a GSATimeoutException once
+     * the deadline has expired.
+     */
+    private InputStream open(String fullUrl, Deadline deadline) throws IOException {
+        GSATimings timings = new GSATimings();
+        long start = System.nanoTime();
+        InputStream retval;
+        if (delegate != null) { // use the delegate to fetch the response
+            retval = delegate.getResponseStream(fullUrl);
+        }
+        else if (transport != null) { // use pooled keep-alive connections
+            if (!deadline.isBounded()) {
+                retval = transport.get(fullUrl);
+            } else {
+                retval = transport.get(fullUrl, deadline.connectTimeout(), deadline.readTimeout(),
+                        deadline.remainingMillis());
+            }
+            timings.set(SearchPhase.CONNECT, transport.getLastConnectNanos());
+        }
+        else { // connect to url & fetch response
+            URLConnection connection = new URL(fullUrl).openConnection();
+            if (deadline.isBounded()) {
+                int connectTimeout = deadline.connectTimeout();
+                int readTimeout = deadline.readTimeout();
+                if (connectTimeout > 0) connection.setConnectTimeout(connectTimeout);
+                if (readTimeout > 0) connection.setReadTimeout(readTimeout);
+            }
+            if (acceptCompression) {
+                connection.setRequestProperty("Accept-Encoding", Util.ACCEPT_ENCODING);
+            }
+            connection.connect();
+            timings.set(SearchPhase.CONNECT, System.nanoTime() - start);
+            InputStream istream = connection.getInputStream();
+            retval = Util.decodeContent(istream, connection.getContentEncoding());
+        }
+        if (retval == null) return null;
+        timings.set(SearchPhase.FIRST_BYTE,
+                System.nanoTime() - start - timings.get(SearchPhase.CONNECT, TimeUnit.NANOSECONDS));
+        return new TimedInputStream(deadline.wrap(retval), timings);
+    }
+
+    /**
+     * ask the appliance to compress responses with gzip or deflate; they
+     * are decompressed while being parsed. Applies to searches made
+     * without a transport or delegate; see
+     * {@link PooledHttpTransport#setAcceptCompression(boolean)} for the
+     * transport. Enabled by default.
+     * @param acceptCompression false to request uncompressed responses
+     */
+    public void setAcceptCompression(boolean acceptCompression) {
+        this.acceptCompression = acceptCompression;
+    }
+
+    public boolean isAcceptCompression() {
+        return acceptCompression;
+    }
+
+    /**
+     * @return the endpoints of this client; a single endpoint unless the
+     * client was created with {@link #GSAClient(GSAEndpoint[])}.
+     */
+    public GSAEndpoint[] getEndpoints() {
+        return balancer.getEndpoints();
+    }
+
+    /**
+     * maximum number of endpoints a search is tried on when it fails
+     * before a response is received. Searches are never tried twice on
+     * the same endpoint, and 404 responses are not retried.
+     * @param maxSearchAttempts defaults to {@link #DEFAULT_MAX_SEARCH_ATTEMPTS}
+     */
+    public void setMaxSearchAttempts(int maxSearchAttempts) {
+        if (maxSearchAttempts < 1) {
+            throw new IllegalArgumentException("maxSearchAttempts must be positive: " + maxSearchAttempts);
+        }
+        this.maxSearchAttempts = maxSearchAttempts;
+    }
+
+    public int getMaxSearchAttempts() {
+        return maxSearchAttempts;
+    }
+
+    /**
+     * number of consecutive failures after which an endpoint is ejected.
+     * @param ejectionThreshold defaults to {@link #DEFAULT_EJECTION_THRESHOLD}
+     */
+    public void setEjectionThreshold(int ejectionThreshold) {
+        if (ejectionThreshold < 1) {
+            throw new IllegalArgumentException("ejectionThreshold must be positive: " + ejectionThreshold);
+        }
+        this.ejectionThreshold = ejectionThreshold;
+    }
+
+    public int getEjectionThreshold() {
+        return ejectionThreshold;
+    }
+
+    /**
+     * how long an ejected endpoint receives no searches. Afterwards it is
+     * tried again; a single failure then ejects it again, a success
+     * readmits it.
+     * @param ejectionTime defaults to {@link #DEFAULT_EJECTION_TIME_MILLIS}ms
+     * @param unit the unit of the ejectionTime argument
+     */
+    public void setEjectionTime(long ejectionTime, TimeUnit unit) {
+        this.ejectionNanos = unit.toNanos(ejectionTime);
+    }
+
+    public long getEjectionTime(TimeUnit unit) {
+        return unit.convert(ejectionNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * set the time allowed to open a connection to an appliance. A
+     * connection that times out counts as a failure of the endpoint.
+     * Not applied to searches made through a GSAClientDelegate.
+     * @param timeout the timeout, or 0 (the default) for no timeout
+     * @param unit the unit of the timeout argument
+     * @see GSAQuery#setConnectTimeout(long, TimeUnit)
+     */
+    public void setConnectTimeout(long timeout, TimeUnit unit) {
+        connectTimeoutMillis = unit.toMillis(timeout);
+    }
+
+    public long getConnectTimeout(TimeUnit unit) {
+        return unit.convert(connectTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * set the time allowed to wait for data from an appliance, for the
+     * response headers and for each subsequent read of the response.
+     * Not applied to searches made through a GSAClientDelegate.
+     * @param timeout the timeout, or 0 (the default) for no timeout
+     * @param unit the unit of the timeout argument
+     * @see GSAQuery#setReadTimeout(long, TimeUnit)
+     */
+    public void setReadTimeout(long timeout, TimeUnit unit) {
+        readTimeoutMillis = unit.toMillis(timeout);
+    }
+
+    public long getReadTimeout(TimeUnit unit) {
+        return unit.convert(readTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * set the total time allowed for a search: fetching the response
+     * (including retries on other endpoints) and, for the getGSAResponse
+     * methods, parsing it. A search that runs out of time fails with a
+     * {@link GSATimeoutException}, as do connect and read timeouts.
+     * @param timeout the timeout, or 0 (the default) for no timeout
+     * @param unit the unit of the timeout argument
+     * @see GSAQuery#setSearchTimeout(long, TimeUnit)
+     */
+    public void setSearchTimeout(long timeout, TimeUnit unit) {
+        searchTimeoutMillis = unit.toMillis(timeout);
+    }
+
+    public long getSearchTimeout(TimeUnit unit) {
+        return unit.convert(searchTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * fail fast once the appliance looks down: after
+     * <code>failureThreshold</code> consecutive failed searches (errors
+     * and timeouts; not 404s) the circuit opens and searches fail with a
+     * {@link GSARejectedException} without being sent. After the open
+     * time a single trial search is let through, whose success closes the
+     * circuit again. Off by default.
+     * @param failureThreshold consecutive failures that open the circuit,
+     * or 0 to disable the circuit breaker
+     * @param openTime time the circuit stays open before a trial search
+     * @param unit the unit of the openTime argument
+     */
+    public void setCircuitBreaker(int failureThreshold, long openTime, TimeUnit unit) {
+        if (failureThreshold < 0) {
+            throw new IllegalArgumentException("failureThreshold must not be negative: " + failureThreshold);
+        }
+        circuitOpenNanos = unit.toNanos(openTime);
+        circuitBreakerThreshold = failureThreshold;
+    }
+
+    /**
+     * @return the state of the circuit breaker; always
+     * {@link CircuitState#CLOSED} when it is disabled.
+     */
+    public CircuitState getCircuitState() {
+        if (circuitBreakerThreshold <= 0) return CircuitState.CLOSED;
+        return circuitBreaker.getState(circuitOpenNanos);
+    }
+
+    /**
+     * @return number of times the circuit breaker has opened.
+     */
+    public long getCircuitOpenCount() {
+        return circuitBreaker.getOpenCount();
+    }
+
+    /**
+     * limit the number of searches in flight to this client's appliances.
+     * The limit adapts to the observed latency: it grows while the
+     * latency stays steady and shrinks as searches start to queue on the
+     * appliance (or fail). Searches beyond the limit fail fast with a
+     * {@link GSARejectedException} instead of queuing. Cached and
+     * coalesced responses are not counted. Off by default.
+     * @param initialLimit the limit to start from, or 0 to disable the limiter
+     * @param maxLimit the highest the limit may grow to
+     */
+    public void setAdaptiveConcurrency(int initialLimit, int maxLimit) {
+        concurrencyLimiter = initialLimit > 0 ? new ConcurrencyLimiter(initialLimit, maxLimit) : null;
+    }
+
+    /**
+     * @return the current concurrency limit, or 0 if the limiter is disabled.
+     */
+    public int getConcurrencyLimit() {
+        ConcurrencyLimiter limiter = concurrencyLimiter;
+        return limiter != null ? limiter.getLimit() : 0;
+    }
+
+    /**
+     * @return the number of searches in flight counted by the limiter,
+     * or 0 if it is disabled.
+     */
+    public int getConcurrentSearchCount() {
+        ConcurrencyLimiter limiter = concurrencyLimiter;
+        return limiter != null ? limiter.getInFlight() : 0;
+    }
+
+    /**
+     * @return number of searches rejected by the circuit breaker or the
+     * concurrency limiter.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * starts the clock for a search with the timeouts of the query,
+     * falling back to those of this client.
+     * @param query may be null
+     */
+    private Deadline deadline(GSAQuery query) {
+        long connect = connectTimeoutMillis;
+        long read = readTimeoutMillis;
+        long total = searchTimeoutMillis;
+        if (query != null) {
+            long millis;
+            if ((millis = query.getConnectTimeout(TimeUnit.MILLISECONDS)) > 0) connect = millis;
+            if ((millis = query.getReadTimeout(TimeUnit.MILLISECONDS)) > 0) read = millis;
+            if ((millis = query.getSearchTimeout(TimeUnit.MILLISECONDS)) > 0) total = millis;
+        }
+        if (connect <= 0 && read <= 0 && total <= 0) return Deadline.NONE;
+        return new Deadline(connect, read, total);
+    }
+
+    /**
+     * hedge searches on clients with several endpoints: a search that has
+     * not been answered within this percentile of the recent response
+     * latencies is also sent to a second endpoint. The first response
+     * wins and the other search is cancelled. Hedging starts once enough
+     * latencies have been recorded. Off (0) by default.
+     * @param percentile eg. 0.95 to hedge the slowest 5% of searches, or
+     * 0 to disable hedging.
+     * @see #setHedgeBudget(double)
+     */
+    public void setHedgePercentile(double percentile) {
+        hedgePolicy.setPercentile(percentile);
+    }
+
+    public double getHedgePercentile() {
+        return hedgePolicy.getPercentile();
+    }
+
+    /**
+     * caps the extra load added by hedging, as a fraction of the number
+     * of searches (with a small allowance for bursts).
+     * @param budget defaults to {@link #DEFAULT_HEDGE_BUDGET}
+     */
+    public void setHedgeBudget(double budget) {
+        hedgePolicy.setBudget(budget);
+    }
+
+    public double getHedgeBudget() {
+        return hedgePolicy.getBudget();
+    }
+
+    /**
+     * @return number of searches sent to a second endpoint.
+     */
+    public long getHedgeCount() {
+        return hedgePolicy.getHedgeCount();
+    }
+
+    /**
+     * @return number of hedged searches answered first by the second endpoint.
+     */
+    public long getHedgeWinCount() {
+        return hedgePolicy.getHedgeWinCount();
     }
 
     /**
@@ -187,7 +930,7 @@ public class GSAClient {
      * @throws IOException
      */
     public GSAResponse getGSAResponse(GSAQuery query) throws IOException {
-        return getGSAResponse(query.getValue());
+        return getGSAResponse(query, null);
     }
 
     /**
@@ -209,9 +952,416 @@ public class GSAClient {
      * @throws IOException
      */
     public GSAResponse getGSAResponse(String rawQuery) throws IOException {
-        return ResponseBuilder.buildResponse(search(rawQuery), xmlSystemId);
+        return getGSAResponse(rawQuery, null);
     }
 
+    /**
+     * Same as {@link #getGSAResponse(GSAQuery)} but streams the results
+     * to the listener while the response is being parsed. The listener
+     * is called on the calling thread before this method returns.
+     *
+     * @param query The properly configured GSAQuery instance
+     * @param listener notified of each result as soon as it is parsed
+     * @return GSAResponse instance wrapping the search results
+     * @throws IOException
+     */
+    public GSAResponse getGSAResponse(GSAQuery query, GSAResultListener listener) throws IOException {
+        long start = System.nanoTime();
+        String rawQuery = query.getValue();
+        return getGSAResponse(query, rawQuery, query.getResponseParts(), query.isCacheable(), listener, null,
+                deadline(query), System.nanoTime() - start);
+    }
+
+    /**
+     * Same as {@link #getGSAResponse(String)} but streams the results
+     * to the listener while the response is being parsed.
+     *
+     * @param rawQuery raw query string
+     * @param listener notified of each result as soon as it is parsed.
+     * May be null.
+     * @return GSAResponse instance wrapping the search results
+     * @throws IOException
+     * @see #getGSAResponse(GSAQuery, GSAResultListener)
+     */
+    public GSAResponse getGSAResponse(String rawQuery, GSAResultListener listener) throws IOException {
+        return getGSAResponse(null, rawQuery, null, true, listener, null, deadline(null), 0);
+    }
+
+    /**
+     * serves the response, reporting the search to the search listeners.
+     * @param query the query, or null for a raw query string
+     * @param task the asynchronous task running the call, if any
+     * @param queryNanos the time spent building the raw query
+     */
+    private GSAResponse getGSAResponse(GSAQuery query, String rawQuery, ResponsePart[] parts,
+            boolean cacheable, GSAResultListener listener, SearchTask<?> task, Deadline deadline,
+            long queryNanos) throws IOException {
+        GSASearchListener[] listeners = searchListeners;
+        if (listeners.length == 0) {
+            return serveResponse(rawQuery, parts, cacheable, listener, task, deadline, queryNanos, null);
+        }
+        GSASearchEvent event = new GSASearchEvent(listeners, query, rawQuery);
+        event.fireSearchStarted();
+        try {
+            return serveResponse(rawQuery, parts, cacheable, listener, task, deadline, queryNanos, event);
+        } catch (IOException | RuntimeException e) {
+            event.fireSearchFailed(e);
+            throw e;
+        }
+    }
+
+    /**
+     * serves the response from the cache, or fetches and parses it.
+     * @param event the event reported to the search listeners, or null
+     */
+    private GSAResponse serveResponse(String rawQuery, ResponsePart[] parts, boolean cacheable,
+            GSAResultListener listener, SearchTask<?> task, Deadline deadline, long queryNanos,
+            GSASearchEvent event) throws IOException {
+        GSAResponseCache cache = cacheable && rawQuery != null ? responseCache : null;
+        GSAMappedResponseCache store = cacheable && rawQuery != null ? secondLevelCache : null;
+        String key = null;
+        if (cache != null) {
+            key = GSAResponseCache.key(rawQuery, parts);
+            GSAResponseCache.CacheEntry entry = cache.lookup(key, true);
+            if (entry != null) {
+                if (!entry.isFresh(System.nanoTime()) || cache.isDueForRefresh(entry)) {
+                    refresh(rawQuery, parts, cache, key, store, entry, deadline);
+                }
+                replay(entry.response, listener);
+                if (event != null) event.fireCacheHit(entry.response);
+                return entry.response;
+            }
+        }
+        if (store != null) {
+            byte[] xml = store.get(rawQuery);
+            if (xml != null) {
+                GSAResponse retval = responseParser.parse(
+                        new ByteArrayInputStream(xml), xmlSystemId, parts, listener);
+                if (cache != null && retval != null) cache.put(key, retval);
+                if (event != null) event.fireCacheHit(retval);
+                return retval;
+            }
+        }
+        if (!requestCoalescing || rawQuery == null) {
+            GSAResponse retval = fetchResponse(rawQuery, parts, cache, key, store, listener, task, deadline,
+                    queryNanos, event);
+            if (event != null) event.fireParseComplete(retval);
+            return retval;
+        }
+        if (key == null) key = GSAResponseCache.key(rawQuery, parts);
+        while (true) {
+            CompletableFuture<GSAResponse> flight = new CompletableFuture<GSAResponse>();
+            CompletableFuture<GSAResponse> leader = inFlight.putIfAbsent(key, flight);
+            if (leader == null) {
+                GSAResponse retval;
+                try {
+                    retval = fetchResponse(rawQuery, parts, cache, key, store, listener, task, deadline,
+                            queryNanos, event);
+                } catch (Throwable t) {
+                    inFlight.remove(key, flight);
+                    // an abort only concerns this call: the waiters search again
+                    flight.completeExceptionally(task != null && task.isAborted() ? new AbortedFlight() : t);
+                    throw t;
+                }
+                inFlight.remove(key, flight);
+                flight.complete(retval);
+                if (event != null) event.fireParseComplete(retval);
+                return retval;
+            }
+            collapsedRequestCount.incrementAndGet();
+            try {
+                GSAResponse retval = await(leader, deadline);
+                replay(retval, listener);
+                if (event != null) event.fireCacheHit(retval);
+                return retval;
+            } catch (AbortedFlight af) {
+                // the search was aborted by its caller: search again
+            }
+        }
+    }
+
+    /**
+     * fetches a cached response again on the executor, unless it is
+     * already being refreshed. Until the new response is in the cache,
+     * callers keep getting the cached one.
+     * @param deadline the deadline of the call that found the response; the
+     * refresh gets the same timeouts, and at most
+     * {@link #DEFAULT_REFRESH_TIMEOUT_MILLIS} if there is no search timeout.
+     */
+    private void refresh(final String rawQuery, final ResponsePart[] parts, final GSAResponseCache cache,
+            final String key, final GSAMappedResponseCache store, final GSAResponseCache.CacheEntry entry,
+            final Deadline deadline) {
+        if (!cache.startRefresh(entry)) return;
+        try {
+            getExecutor().execute(() -> {
+                try {
+                    fetchResponse(rawQuery, parts, cache, key, store, null, null,
+                            deadline.restart(DEFAULT_REFRESH_TIMEOUT_MILLIS), 0, null);
+                } catch (Throwable t) {
+                    cache.refreshFailed(entry);
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            cache.refreshFailed(entry);
+        }
+    }
+
+    /**
+     * fails the waiters of a coalesced search that was aborted.
+     */
+    private static class AbortedFlight extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        AbortedFlight() {
+            super("Coalesced search aborted");
+        }
+    }
+
+    private GSAResponse fetchResponse(String rawQuery, ResponsePart[] parts, GSAResponseCache cache,
+            String key, GSAMappedResponseCache store, GSAResultListener listener, SearchTask<?> task,
+            Deadline deadline, long queryNanos, GSASearchEvent event) throws IOException {
+        long start = System.nanoTime();
+        InputStream istream = search(rawQuery, deadline);
+        long opened = System.nanoTime();
+        TimedInputStream timed = istream instanceof TimedInputStream ? (TimedInputStream) istream : null;
+        GSATimings timings = timed != null ? timed.getTimings() : null;
+        if (event != null) event.fireResponseReceived(timings);
+        if (task != null && istream != null) istream = task.attach(istream);
+        byte[] xml = null;
+        if (store != null && istream != null) {
+            // keep the raw response for the second level cache
+            ByteArrayOutputStream raw = new ByteArrayOutputStream(16 * 1024);
+            try {
+                byte[] buf = new byte[8192];
+                for (int n; (n = istream.read(buf)) >= 0;) {
+                    raw.write(buf, 0, n);
+                }
+            } finally {
+                istream.close();
+            }
+            xml = raw.toByteArray();
+            istream = new ByteArrayInputStream(xml);
+        }
+        GSAResponse retval;
+        try {
+            retval = responseParser.parse(istream, xmlSystemId, parts, listener);
+        } catch (RuntimeException re) {
+            // the parsers wrap the failures of the stream
+            GSATimeoutException timeout = Deadline.find(re);
+            if (timeout != null) throw timeout;
+            throw re;
+        }
+        if (timings != null && retval != null) {
+            long end = System.nanoTime();
+            timings.set(SearchPhase.QUERY, queryNanos);
+            timings.set(SearchPhase.PARSE, end - opened - timings.get(SearchPhase.TRANSFER, TimeUnit.NANOSECONDS));
+            timings.set(SearchPhase.APPLIANCE, (long) (retval.getSearchTime() * 1000000000L));
+            timings.set(SearchPhase.TOTAL, queryNanos + end - start);
+            retval.setTimings(timings);
+            metrics.record(timings);
+        }
+        if (cache != null && retval != null) cache.put(key, retval);
+        if (xml != null && retval != null) store.put(rawQuery, xml);
+        if (event != null && timed != null) event.setBytes(timed.getBytes());
+        return retval;
+    }
+
+    /**
+     * passes the results of a response that was not parsed for this
+     * call to its listener.
+     */
+    private static void replay(GSAResponse response, GSAResultListener listener) {
+        if (listener == null || response == null) return;
+        List results = response.getResults();
+        for (int i = 0, iSize = results.size(); i < iSize; i++) {
+            listener.resultParsed((GSAResult) results.get(i));
+        }
+    }
+
+
+    /**
+     * Asynchronous form of {@link #search(GSAQuery)}. The InputStream
+     * must be closed by the caller once the future completes.
+     * @param query The properly configured GSAQuery instance
+     * @return future that completes with the InputStream to the results.
+     */
+    public CompletableFuture<InputStream> searchAsync(GSAQuery query) {
+        return searchAsync(query.getValue(), deadline(query));
+    }
+
+    /**
+     * Asynchronous form of {@link #search(String)}. The InputStream
+     * must be closed by the caller once the future completes.
+     * @param rawQuery raw query string
+     * @return future that completes with the InputStream to the results.
+     */
+    public CompletableFuture<InputStream> searchAsync(String rawQuery) {
+        return searchAsync(rawQuery, deadline(null));
+    }
+
+    private CompletableFuture<InputStream> searchAsync(final String rawQuery, final Deadline deadline) {
+        SearchTask<InputStream> task = new SearchTask<InputStream>() {
+            InputStream execute() throws IOException {
+                return search(rawQuery, deadline);
+            }
+        };
+        return submit(task, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Asynchronous form of {@link #getGSAResponse(GSAQuery)}. The fetch
+     * and the parse run on this client's executor.
+     * Cancelling the returned future aborts the search.
+     * @param query The properly configured GSAQuery instance
+     * @return future that completes with the parsed GSAResponse.
+     */
+    public CompletableFuture<GSAResponse> getGSAResponseAsync(GSAQuery query) {
+        return getGSAResponseAsync(query, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Asynchronous form of {@link #getGSAResponse(GSAQuery)} with a
+     * deadline. If the response has not been parsed within the timeout,
+     * the future completes exceptionally with a
+     * java.util.concurrent.TimeoutException and the search is aborted.
+     * @param query The properly configured GSAQuery instance
+     * @param timeout the deadline for this call. Zero means no deadline.
+     * @param unit the unit of the timeout argument
+     * @return future that completes with the parsed GSAResponse.
+     */
+    public CompletableFuture<GSAResponse> getGSAResponseAsync(GSAQuery query, long timeout, TimeUnit unit) {
+        long start = System.nanoTime();
+        String rawQuery = query.getValue();
+        return getGSAResponseAsync(query, rawQuery, query.getResponseParts(), query.isCacheable(),
+                deadline(query), System.nanoTime() - start, timeout, unit);
+    }
+
+    /**
+     * Asynchronous form of {@link #getGSAResponse(String)}.
+     * @param rawQuery raw query string
+     * @return future that completes with the parsed GSAResponse.
+     */
+    public CompletableFuture<GSAResponse> getGSAResponseAsync(String rawQuery) {
+        return getGSAResponseAsync(rawQuery, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Asynchronous form of {@link #getGSAResponse(String)} with a deadline.
+     * @param rawQuery raw query string
+     * @param timeout the deadline for this call. Zero means no deadline.
+     * @param unit the unit of the timeout argument
+     * @return future that completes with the parsed GSAResponse.
+     * @see #getGSAResponseAsync(GSAQuery, long, TimeUnit)
+     */
+    public CompletableFuture<GSAResponse> getGSAResponseAsync(String rawQuery, long timeout, TimeUnit unit) {
+        return getGSAResponseAsync(null, rawQuery, null, true, deadline(null), 0, timeout, unit);
+    }
+
+    private CompletableFuture<GSAResponse> getGSAResponseAsync(final GSAQuery query, final String rawQuery,
+            final ResponsePart[] parts, final boolean cacheable, final Deadline deadline,
+            final long queryNanos, long timeout, TimeUnit unit) {
+        final SearchTask<GSAResponse> task = new SearchTask<GSAResponse>() {
+            GSAResponse execute() throws IOException {
+                return getGSAResponse(query, rawQuery, parts, cacheable, null, this, deadline, queryNanos);
+            }
+        };
+        return submit(task, timeout, unit);
+    }
+
+    /**
+     * Fetches up to <code>numResults</code> results for the query, starting
+     * at the query's scroll-ahead position, as a single GSAResponse.
+     * Since the GSA returns at most {@link GSAQuery#MAX_RESULTS_PER_QUERY}
+     * results per request, the range is split into windows that are
+     * fetched concurrently (at most <code>maxConcurrency</code> at a time)
+     * and merged in rank order. Results repeated at a window boundary are
+     * dropped. The range is capped at {@link GSAQuery#MAX_RESULTS}.
+     * The query itself is not modified.
+     * @param query The properly configured GSAQuery instance
+     * @param numResults number of results to fetch
+     * @param maxConcurrency maximum number of windows fetched at once
+     * @return GSAResponse containing the results of all windows
+     * @throws IOException if fetching any window fails
+     */
+    public GSAResponse getPagedGSAResponse(GSAQuery query, int numResults, int maxConcurrency) throws IOException {
+        return await(getPagedGSAResponseAsync(query, numResults, maxConcurrency));
+    }
+
+    /**
+     * Asynchronous form of {@link #getPagedGSAResponse(GSAQuery, int, int)}.
+     * The windows are fetched on this client's executor. Cancelling the
+     * returned future cancels the windows still in flight.
+     * @param query The properly configured GSAQuery instance
+     * @param numResults number of results to fetch
+     * @param maxConcurrency maximum number of windows fetched at once
+     * @return future that completes with the merged GSAResponse.
+     */
+    public CompletableFuture<GSAResponse> getPagedGSAResponseAsync(GSAQuery query, int numResults, int maxConcurrency) {
+        return new PagedSearch(this, query, numResults, maxConcurrency).start();
+    }
+
+    /**
+     * waits for the future, rethrowing its failure as it would
+     * have been thrown by the synchronous call.
+     */
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ie) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the search");
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * waits for the future, but no longer than the search timeout.
+     */
+    private static <T> T await(CompletableFuture<T> future, Deadline deadline) throws IOException {
+        if (!deadline.hasTimeout()) return await(future);
+        try {
+            return future.get(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException te) {
+            throw deadline.expired();
+        } catch (InterruptedException ie) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the search");
+        } catch (ExecutionException ee) {
+            return await(future);
+        }
+    }
+
+    /**
+     * runs the task on the executor, arming the deadline (if any).
+     * The task is aborted if its future completes by any other
+     * means than the task itself.
+     */
+    private <T> CompletableFuture<T> submit(final SearchTask<T> task, final long timeout, final TimeUnit unit) {
+        final CompletableFuture<T> future = task.future;
+        future.whenComplete((value, failure) -> {
+            if (failure != null) task.abort();
+        });
+        if (timeout > 0) {
+            final ScheduledFuture<?> timer = GSAExecutors.scheduler().schedule(() -> {
+                future.completeExceptionally(new TimeoutException(
+                        "Search did not complete within " + unit.toMillis(timeout) + "ms"));
+            }, timeout, unit);
+            future.whenComplete((value, failure) -> timer.cancel(false));
+        }
+        try {
+            getExecutor().execute(task);
+        } catch (RejectedExecutionException ree) {
+            future.completeExceptionally(ree);
+        }
+        return future;
+    }
 
     /**
      * default port number used by constructor that allows you to skip specifying the port
@@ -228,6 +1378,32 @@ public class GSAClient {
      */
     public static final String DEFAULT_PROTOCOL = "http";
 
+    /**
+     * default number of endpoints a failing search is tried on
+     */
+    public static final int DEFAULT_MAX_SEARCH_ATTEMPTS = 2;
+
+    /**
+     * default number of consecutive failures that eject an endpoint
+     */
+    public static final int DEFAULT_EJECTION_THRESHOLD = 3;
+
+    /**
+     * default time an ejected endpoint receives no searches
+     */
+    public static final long DEFAULT_EJECTION_TIME_MILLIS = 30000;
+
+    /**
+     * default fraction of extra searches hedging may add
+     */
+    public static final double DEFAULT_HEDGE_BUDGET = 0.05;
+
+    /**
+     * time allowed to a background refresh of a cached response when
+     * neither the query nor the client sets a search timeout
+     */
+    public static final long DEFAULT_REFRESH_TIMEOUT_MILLIS = 30000;
+
     /**
      * returns the value for the host parameter passed to the
      * constructor 
@@ -0,0 +1,227 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One search appliance of a cluster served by a GSAClient, together
+ * with the statistics the client keeps about it:
+ * <pre>
+ * GSAClient client = new GSAClient(new GSAEndpoint[] {
+ *         new GSAEndpoint("http", "gsa1.mysite.net", 80, "/search"),
+ *         new GSAEndpoint("http", "gsa2.mysite.net", 80, "/search") });
+ * </pre>
+ * Latencies are measured from sending the request until the response
+ * headers have been received. An endpoint instance should be used by
+ * a single GSAClient.
+ */
+public class GSAEndpoint {
+
+    // weight of the newest sample in the latency average
+    private static final double EWMA_ALPHA = 0.2;
+    // time constant with which an unused endpoint's score decays, so
+    // that an endpoint that was slow once is eventually tried again
+    private static final double SCORE_DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final String protocol;
+    private final String host;
+    private final int port;
+    private final String path;
+    private final String searchUrl;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicLong ejectionCount = new AtomicLong();
+    private int consecutiveFailures;
+    // -1 until the first response has been timed
+    private double latencyEwmaNanos = -1;
+    private long lastSampleNanos;
+    private volatile long ejectedUntilNanos;
+    private volatile boolean ejected;
+
+    /**
+     * @param protocol protocol to use to connect to GSA eg. "http"
+     * @param host     hostname for the GSA eg. "www.mysite.net"
+     * @param port     port at which GSA is serving eg. 3300
+     * @param path     path for the search program on GSA eg. "/search"
+     */
+    public GSAEndpoint(String protocol, String host, int port, String path) {
+        this.protocol = protocol;
+        this.host = host;
+        this.port = port;
+        this.path = path;
+        this.searchUrl = protocol + "://" + host + ':' + port
+                + (path.startsWith("/") ? path : ("/" + path));
+    }
+
+    /**
+     * overloaded constructor that sets the default protocol.
+     * @param host
+     * @param port
+     * @param path
+     */
+    public GSAEndpoint(String host, int port, String path) {
+        this(GSAClient.DEFAULT_PROTOCOL, host, port, path);
+    }
+
+    public String getProtocol() {
+        return protocol;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the url of the search program, without query string.
+     */
+    String getSearchUrl() {
+        return searchUrl;
+    }
+
+    /**
+     * @return number of searches sent to this endpoint.
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return number of searches that failed on this endpoint.
+     */
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    /**
+     * @return number of failures since the last successful search.
+     */
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * @return number of searches waiting for a response from this endpoint.
+     */
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return number of times this endpoint has been ejected.
+     */
+    public long getEjectionCount() {
+        return ejectionCount.get();
+    }
+
+    /**
+     * @return true while this endpoint is ejected because of failures.
+     */
+    public boolean isEjected() {
+        return ejected && ejectedUntilNanos - System.nanoTime() > 0;
+    }
+
+    /**
+     * @param unit unit of the returned value
+     * @return exponentially weighted moving average of the response
+     * latency, or -1 before the first response.
+     */
+    public synchronized double getLatencyAverage(TimeUnit unit) {
+        if (latencyEwmaNanos < 0) return -1;
+        return latencyEwmaNanos / unit.toNanos(1);
+    }
+
+    /**
+     * load score used to choose between endpoints: the average latency,
+     * decayed by the time since it was last measured, weighted by the
+     * number of searches in flight. Endpoints without a latency yet
+     * score 0 so that they are tried.
+     */
+    synchronized double score() {
+        if (latencyEwmaNanos < 0) return 0;
+        double idle = System.nanoTime() - lastSampleNanos;
+        return latencyEwmaNanos * Math.exp(-idle / SCORE_DECAY_NANOS) * (inFlight.get() + 1);
+    }
+
+    long ejectedUntilNanos() {
+        return ejectedUntilNanos;
+    }
+
+    void requestStarted() {
+        requestCount.incrementAndGet();
+        inFlight.incrementAndGet();
+    }
+
+    void requestSucceeded(long latencyNanos) {
+        inFlight.decrementAndGet();
+        synchronized (this) {
+            latencyEwmaNanos = latencyEwmaNanos < 0
+                    ? latencyNanos
+                    : latencyEwmaNanos + EWMA_ALPHA * (latencyNanos - latencyEwmaNanos);
+            lastSampleNanos = System.nanoTime();
+            consecutiveFailures = 0;
+            ejected = false;
+        }
+    }
+
+    /**
+     * a search ended without telling anything about the health of the
+     * endpoint (eg. the caller was interrupted).
+     */
+    void requestAbandoned() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * @param ejectionThreshold consecutive failures that eject the endpoint
+     * @param ejectionNanos how long the endpoint stays ejected
+     */
+    void requestFailed(int ejectionThreshold, long ejectionNanos) {
+        inFlight.decrementAndGet();
+        failureCount.incrementAndGet();
+        synchronized (this) {
+            consecutiveFailures++;
+            if (consecutiveFailures >= ejectionThreshold && !isEjected()) {
+                ejectedUntilNanos = System.nanoTime() + ejectionNanos;
+                ejected = true;
+                ejectionCount.incrementAndGet();
+            }
+        }
+    }
+
+    public String toString() {
+        return searchUrl;
+    }
+}
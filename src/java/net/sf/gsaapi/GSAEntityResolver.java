@@ -0,0 +1,154 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Resolves the external entities (in practice the google.dtd named in
+ * the DOCTYPE of the GSA XML results) without going back to the
+ * appliance. An entity is resolved, in order, from:
+ * <ol>
+ * <li>the in-memory cache, by system id;</li>
+ * <li>the DTDs bundled in META-INF on the classpath, by file name
+ * (google.dtd is bundled);</li>
+ * <li>the network, but only if {@link #setNetworkFetchAllowed(boolean)}
+ * has been enabled; the content is then cached.</li>
+ * </ol>
+ * By default the resolver is strictly offline: entities that cannot be
+ * resolved locally are replaced with empty content, so that parse latency
+ * never includes a second round trip. The SAX response parser uses
+ * {@link #getDefault()}.
+ */
+public class GSAEntityResolver implements EntityResolver {
+
+    private static final GSAEntityResolver DEFAULT = new GSAEntityResolver();
+
+    private static final String BUNDLED_PATH = "META-INF/";
+    private static final byte[] EMPTY = new byte[0];
+    // bundled DTDs by file name; EMPTY marks a name that is not bundled
+    private static final Map<String, byte[]> BUNDLED = new ConcurrentHashMap<String, byte[]>();
+
+    private final Map<String, byte[]> cache = new ConcurrentHashMap<String, byte[]>();
+    private volatile boolean networkFetchAllowed;
+
+    /**
+     * creates a strictly offline resolver.
+     */
+    public GSAEntityResolver() {
+    }
+
+    /**
+     * @return the resolver shared by the SAX response parser.
+     */
+    public static GSAEntityResolver getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * allow entities that cannot be resolved locally to be fetched once
+     * from their system id. Off by default.
+     * @param networkFetchAllowed
+     */
+    public void setNetworkFetchAllowed(boolean networkFetchAllowed) {
+        this.networkFetchAllowed = networkFetchAllowed;
+    }
+
+    public boolean isNetworkFetchAllowed() {
+        return networkFetchAllowed;
+    }
+
+    /**
+     * preloads the cache, for instance with the google.dtd of a specific
+     * appliance.
+     * @param systemId the system id as it appears after resolution
+     * against the document's system id (eg. http://gsa.host.url/google.dtd)
+     * @param content the entity content
+     */
+    public void register(String systemId, byte[] content) {
+        cache.put(systemId, content.clone());
+    }
+
+    /**
+     * removes all cached entities.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    public InputSource resolveEntity(String publicId, String systemId) throws SAXException, IOException {
+        if (systemId == null) return null;
+        byte[] content = cache.get(systemId);
+        if (content == null) {
+            content = loadBundled(systemId);
+            if (content == null && networkFetchAllowed) {
+                content = fetch(systemId);
+                cache.put(systemId, content);
+            }
+        }
+        InputSource retval = new InputSource(new ByteArrayInputStream(content == null ? EMPTY : content));
+        retval.setPublicId(publicId);
+        retval.setSystemId(systemId);
+        return retval;
+    }
+
+    private static byte[] loadBundled(String systemId) throws IOException {
+        String name = systemId.substring(systemId.lastIndexOf('/') + 1);
+        if (name.length() == 0 || !name.endsWith(".dtd")) return null;
+        byte[] retval = BUNDLED.get(name);
+        if (retval == null) {
+            InputStream in = GSAEntityResolver.class.getClassLoader().getResourceAsStream(BUNDLED_PATH + name);
+            retval = in == null ? EMPTY : readFully(in);
+            BUNDLED.put(name, retval);
+        }
+        return retval == EMPTY ? null : retval;
+    }
+
+    private static byte[] fetch(String systemId) throws IOException {
+        return readFully(new URL(systemId).openStream());
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = in.read(buf)) >= 0) {
+                bos.write(buf, 0, n);
+            }
+            return bos.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
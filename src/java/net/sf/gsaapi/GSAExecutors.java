@@ -0,0 +1,95 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared executors used by the asynchronous GSAClient methods.
+ * Intended for internal use only.
+ */
+final class GSAExecutors {
+
+    private GSAExecutors() {}
+
+    /**
+     * returns the executor used when no executor has been set on the
+     * GSAClient. On JVMs that support virtual threads this runs every
+     * search on its own virtual thread; otherwise it is an unbounded
+     * pool of daemon threads.
+     * @return the shared default executor
+     */
+    static Executor defaultExecutor() {
+        return DefaultExecutorHolder.EXECUTOR;
+    }
+
+    /**
+     * returns the single daemon thread used to expire per-call deadlines.
+     * @return the shared scheduler
+     */
+    static ScheduledExecutorService scheduler() {
+        return SchedulerHolder.SCHEDULER;
+    }
+
+    static ThreadFactory daemonThreadFactory(final String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, prefix + "-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    private static Executor createDefaultExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor", new Class[0]);
+            return (ExecutorService) m.invoke(null, new Object[0]);
+        } catch (Exception e) {
+            // no virtual threads on this JVM
+        }
+        return Executors.newCachedThreadPool(daemonThreadFactory("gsa-search"));
+    }
+
+    private static class DefaultExecutorHolder {
+        static final Executor EXECUTOR = createDefaultExecutor();
+    }
+
+    private static class SchedulerHolder {
+        static final ScheduledExecutorService SCHEDULER;
+        static {
+            ScheduledThreadPoolExecutor scheduler =
+                    new ScheduledThreadPoolExecutor(1, daemonThreadFactory("gsa-deadline"));
+            scheduler.setRemoveOnCancelPolicy(true);
+            SCHEDULER = scheduler;
+        }
+    }
+}
@@ -0,0 +1,546 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A second level cache of raw GSP XML responses, kept compressed in a
+ * memory-mapped file rather than on the Java heap:
+ * <pre>
+ * client.setResponseCache(new GSAResponseCache(1000, 5, TimeUnit.MINUTES));
+ * client.setSecondLevelCache(new GSAMappedResponseCache(
+ *         new File("/var/cache/gsa/responses"), 256 * 1024 * 1024, 1, TimeUnit.HOURS));
+ * </pre>
+ * Responses are keyed on the canonical form of the query string (see
+ * {@link GSAResponseCache}). Since the raw response is cached, one
+ * entry serves every set of {@link net.sf.gsaapi.constants.ResponsePart}s;
+ * a hit costs a parse but no request.
+ * <br/>
+ * The file is divided into segments that are written in turn as logs.
+ * When the segment being written is full, the oldest segment is emptied
+ * and written next, dropping all of its entries at once. The file
+ * outlives the process: a cache opened on an existing file with the same
+ * capacity and segment count recovers the entries that have not expired
+ * (expiry uses the wall clock), so a restarted node starts warm. A file
+ * with another layout is cleared.
+ * <br/>
+ * The file is locked while the cache is open, so it cannot be shared by
+ * two caches or two processes. Close the cache to write it out and
+ * release the file; the mapped memory itself is released by the garbage
+ * collector.
+ */
+public class GSAMappedResponseCache implements Closeable {
+
+    public static final int DEFAULT_SEGMENT_COUNT = 16;
+
+    private static final int FILE_MAGIC = 0x47535043;
+    private static final int SEGMENT_MAGIC = 0x47535053;
+    private static final int VERSION = 1;
+    // magic, version, segment count, segment size
+    private static final int FILE_HEADER = 64;
+    // magic, generation
+    private static final int SEGMENT_HEADER = 16;
+    // length, crc of key and payload, expiry millis, key length
+    private static final int RECORD_HEADER = 20;
+    private static final int MIN_SEGMENT_SIZE = 4096;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileLock lock;
+    private final long ttlMillis;
+    private final int segmentSize;
+    private final MappedByteBuffer[] segments;
+    private final long[] generations;
+    private final List<String>[] segmentKeys;
+    // key -> segment index << 32 | offset of the record
+    private final Map<String, Long> index = new HashMap<String, Long>();
+    private int current;
+    private int writeOffset;
+    private long nextGeneration;
+    private boolean closed;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong expirationCount = new AtomicLong();
+
+    /**
+     * opens the cache with {@link #DEFAULT_SEGMENT_COUNT} segments.
+     * @see #GSAMappedResponseCache(File, long, int, long, TimeUnit)
+     */
+    public GSAMappedResponseCache(File file, long capacity, long ttl, TimeUnit unit) throws IOException {
+        this(file, capacity, DEFAULT_SEGMENT_COUNT, ttl, unit);
+    }
+
+    /**
+     * opens the cache, creating the file or recovering the entries
+     * it holds.
+     * @param file the backing file
+     * @param capacity size of the file in bytes
+     * @param segmentCount number of segments; each one holds
+     * capacity / segmentCount bytes, which bounds the size of a single
+     * compressed response.
+     * @param ttl time a response stays valid after it was fetched
+     * @param unit the unit of the ttl argument
+     * @throws IOException if the file cannot be mapped or is locked by
+     * another cache.
+     */
+    @SuppressWarnings("unchecked")
+    public GSAMappedResponseCache(File file, long capacity, int segmentCount, long ttl, TimeUnit unit)
+            throws IOException {
+        if (segmentCount < 2) {
+            throw new IllegalArgumentException("segmentCount must be at least 2: " + segmentCount);
+        }
+        long size = capacity / segmentCount;
+        if (size < MIN_SEGMENT_SIZE || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("capacity / segmentCount must be between "
+                    + MIN_SEGMENT_SIZE + " and " + Integer.MAX_VALUE + ": " + size);
+        }
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("ttl must be positive: " + ttl);
+        }
+        this.file = file;
+        this.ttlMillis = unit.toMillis(ttl);
+        this.segmentSize = (int) size;
+        this.segments = new MappedByteBuffer[segmentCount];
+        this.generations = new long[segmentCount];
+        this.segmentKeys = new List[segmentCount];
+        for (int s = 0; s < segmentCount; s++) {
+            segmentKeys[s] = new ArrayList<String>();
+        }
+        raf = new RandomAccessFile(file, "rw");
+        try {
+            FileLock fileLock;
+            try {
+                fileLock = raf.getChannel().tryLock();
+            } catch (OverlappingFileLockException ofle) {
+                fileLock = null;
+            }
+            if (fileLock == null) {
+                throw new IOException("Cache file in use: " + file);
+            }
+            lock = fileLock;
+            open();
+        } catch (IOException ioe) {
+            raf.close();
+            throw ioe;
+        } catch (RuntimeException re) {
+            raf.close();
+            throw re;
+        }
+    }
+
+    private void open() throws IOException {
+        FileChannel channel = raf.getChannel();
+        long length = FILE_HEADER + (long) segmentSize * segments.length;
+        boolean recover = false;
+        if (raf.length() == length) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, FILE_HEADER);
+            recover = header.getInt(0) == FILE_MAGIC && header.getInt(4) == VERSION
+                    && header.getInt(8) == segments.length && header.getInt(12) == segmentSize;
+        }
+        if (!recover) {
+            raf.setLength(0);
+            raf.setLength(length);
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_HEADER);
+            header.putInt(0, FILE_MAGIC);
+            header.putInt(4, VERSION);
+            header.putInt(8, segments.length);
+            header.putInt(12, segmentSize);
+            header.force();
+        }
+        for (int s = 0; s < segments.length; s++) {
+            segments[s] = channel.map(FileChannel.MapMode.READ_WRITE,
+                    FILE_HEADER + (long) s * segmentSize, segmentSize);
+            if (segments[s].getInt(0) == SEGMENT_MAGIC) {
+                generations[s] = segments[s].getLong(4);
+            } else {
+                reset(s, 0);
+            }
+        }
+        // replay the segments from the oldest, so that newer records win
+        Integer[] order = new Integer[segments.length];
+        for (int s = 0; s < order.length; s++) {
+            order[s] = Integer.valueOf(s);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Long.compare(generations[a.intValue()], generations[b.intValue()]);
+            }
+        });
+        long now = System.currentTimeMillis();
+        int[] ends = new int[segments.length];
+        for (int i = 0; i < order.length; i++) {
+            int s = order[i].intValue();
+            ends[s] = replay(s, now);
+        }
+        // carry on writing the newest segment
+        current = 0;
+        for (int s = 1; s < segments.length; s++) {
+            if (generations[s] > generations[current]) current = s;
+        }
+        writeOffset = ends[current];
+        nextGeneration = generations[current] + 1;
+    }
+
+    /**
+     * indexes the valid records of a segment.
+     * @return the offset following the last valid record.
+     */
+    private int replay(int s, long now) {
+        MappedByteBuffer segment = segments[s];
+        int p = SEGMENT_HEADER;
+        while (p + RECORD_HEADER <= segmentSize) {
+            int len = segment.getInt(p);
+            int keyLen = segment.getInt(p + 16);
+            if (len < RECORD_HEADER || len > segmentSize - p
+                    || keyLen < 0 || keyLen > len - RECORD_HEADER) {
+                break;
+            }
+            byte[] keyBytes = new byte[keyLen];
+            byte[] payload = new byte[len - RECORD_HEADER - keyLen];
+            ByteBuffer view = segment.duplicate();
+            view.position(p + RECORD_HEADER);
+            view.get(keyBytes);
+            view.get(payload);
+            if (segment.getInt(p + 4) != crc(keyBytes, payload)) break;
+            String key = new String(keyBytes, StandardCharsets.UTF_8);
+            if (segment.getLong(p + 8) > now) {
+                index.put(key, Long.valueOf(location(s, p)));
+                segmentKeys[s].add(key);
+            } else {
+                // an expired or invalidated record hides older ones
+                index.remove(key);
+            }
+            p += len;
+        }
+        return p;
+    }
+
+    /**
+     * returns the cached response for the query.
+     * @param rawQuery the query string (as passed to GSAClient)
+     * @return the raw GSP XML, or null if it is not cached or has expired.
+     */
+    public byte[] get(String rawQuery) {
+        String key = GSAResponseCache.canonicalQuery(rawQuery);
+        byte[] payload = null;
+        synchronized (this) {
+            Long location = closed ? null : index.get(key);
+            if (location != null) {
+                MappedByteBuffer segment = segments[segment(location.longValue())];
+                int p = offset(location.longValue());
+                if (segment.getLong(p + 8) > System.currentTimeMillis()) {
+                    int keyLen = segment.getInt(p + 16);
+                    payload = new byte[segment.getInt(p) - RECORD_HEADER - keyLen];
+                    ByteBuffer view = segment.duplicate();
+                    view.position(p + RECORD_HEADER + keyLen);
+                    view.get(payload);
+                } else {
+                    index.remove(key);
+                    expirationCount.incrementAndGet();
+                }
+            }
+        }
+        byte[] retval = payload == null ? null : inflate(payload);
+        if (retval != null) hitCount.incrementAndGet();
+        else missCount.incrementAndGet();
+        return retval;
+    }
+
+    /**
+     * caches a response. Responses that do not fit in a segment once
+     * compressed are not cached.
+     * @param rawQuery the query string (as passed to GSAClient)
+     * @param xml the raw GSP XML
+     */
+    public void put(String rawQuery, byte[] xml) {
+        put(rawQuery, xml, 0, xml.length);
+    }
+
+    /**
+     * caches a response held in part of an array.
+     */
+    public void put(String rawQuery, byte[] xml, int off, int len) {
+        String key = GSAResponseCache.canonicalQuery(rawQuery);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = deflate(xml, off, len);
+        int recordLen = RECORD_HEADER + keyBytes.length + payload.length;
+        if (recordLen > segmentSize - SEGMENT_HEADER) return;
+        int crc = crc(keyBytes, payload);
+        synchronized (this) {
+            if (closed) return;
+            if (recordLen > segmentSize - writeOffset) {
+                current = (current + 1) % segments.length;
+                reset(current, nextGeneration++);
+            }
+            MappedByteBuffer segment = segments[current];
+            int p = writeOffset;
+            segment.putInt(p + 4, crc);
+            segment.putLong(p + 8, System.currentTimeMillis() + ttlMillis);
+            segment.putInt(p + 16, keyBytes.length);
+            ByteBuffer view = segment.duplicate();
+            view.position(p + RECORD_HEADER);
+            view.put(keyBytes);
+            view.put(payload);
+            // end the log after this record before the record is committed
+            if (p + recordLen + 4 <= segmentSize) segment.putInt(p + recordLen, 0);
+            segment.putInt(p, recordLen);
+            writeOffset = p + recordLen;
+            index.put(key, Long.valueOf(location(current, p)));
+            segmentKeys[current].add(key);
+        }
+    }
+
+    /**
+     * empties a segment, dropping the entries it holds.
+     */
+    private void reset(int s, long generation) {
+        MappedByteBuffer segment = segments[s];
+        List<String> keys = segmentKeys[s];
+        for (int i = 0, iSize = keys.size(); i < iSize; i++) {
+            String key = keys.get(i);
+            Long location = index.get(key);
+            if (location != null && segment(location.longValue()) == s) {
+                index.remove(key);
+                evictionCount.incrementAndGet();
+            }
+        }
+        keys.clear();
+        segment.putInt(SEGMENT_HEADER, 0);
+        segment.putInt(0, SEGMENT_MAGIC);
+        segment.putLong(4, generation);
+        generations[s] = generation;
+        writeOffset = SEGMENT_HEADER;
+    }
+
+    /**
+     * removes the response cached for the query.
+     * @param rawQuery the query string (as passed to GSAClient)
+     */
+    public synchronized void invalidate(String rawQuery) {
+        if (closed) return;
+        Long location = index.remove(GSAResponseCache.canonicalQuery(rawQuery));
+        if (location != null) {
+            segments[segment(location.longValue())].putLong(offset(location.longValue()) + 8, 0);
+        }
+    }
+
+    /**
+     * removes all cached responses.
+     */
+    public synchronized void invalidateAll() {
+        if (closed) return;
+        index.clear();
+        for (int s = 0; s < segments.length; s++) {
+            segmentKeys[s].clear();
+            segments[s].putInt(SEGMENT_HEADER, 0);
+        }
+        writeOffset = SEGMENT_HEADER;
+    }
+
+    /**
+     * writes the cached responses out to the file.
+     */
+    public synchronized void flush() {
+        if (closed) return;
+        for (int s = 0; s < segments.length; s++) {
+            segments[s].force();
+        }
+    }
+
+    /**
+     * writes the cached responses out and releases the file. A closed
+     * cache misses every lookup and ignores puts.
+     */
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        flush();
+        closed = true;
+        index.clear();
+        try {
+            lock.release();
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * @return number of cached responses, including expired ones that
+     * have not been looked up since they expired.
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return bytes available for responses in the file.
+     */
+    public long getCapacity() {
+        return (long) segmentSize * segments.length;
+    }
+
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    /**
+     * @param unit the unit of the returned value
+     * @return the time-to-live of the entries
+     */
+    public long getTimeToLive(TimeUnit unit) {
+        return unit.convert(ttlMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return number of entries dropped with the segments that were
+     * emptied to make room for newer ones.
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * @return number of entries removed because they had expired.
+     */
+    public long getExpirationCount() {
+        return expirationCount.get();
+    }
+
+    /**
+     * @return hits / (hits + misses), or 0 before the first lookup.
+     */
+    public double getHitRatio() {
+        long hits = hitCount.get();
+        long lookups = hits + missCount.get();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * clears the statistics.
+     */
+    public void resetStatistics() {
+        hitCount.set(0);
+        missCount.set(0);
+        evictionCount.set(0);
+        expirationCount.set(0);
+    }
+
+    public String toString() {
+        return "GSAMappedResponseCache[file=" + file + ", size=" + size() + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount()
+                + ", expirations=" + getExpirationCount() + "]";
+    }
+
+    private static long location(int segment, int offset) {
+        return ((long) segment << 32) | offset;
+    }
+
+    private static int segment(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offset(long location) {
+        return (int) location;
+    }
+
+    private static int crc(byte[] key, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(key, 0, key.length);
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] deflate(byte[] b, int off, int len) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(b, off, len);
+            deflater.finish();
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(len / 4 + 64);
+            byte[] buf = new byte[8192];
+            while (!deflater.finished()) {
+                bos.write(buf, 0, deflater.deflate(buf));
+            }
+            return bos.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @return the inflated payload, or null if it is corrupt.
+     */
+    private static byte[] inflate(byte[] payload) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(payload);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(payload.length * 4);
+            byte[] buf = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) return null;
+                bos.write(buf, 0, n);
+            }
+            return bos.toByteArray();
+        } catch (DataFormatException dfe) {
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+}
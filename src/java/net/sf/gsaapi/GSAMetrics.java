@@ -0,0 +1,133 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import net.sf.gsaapi.constants.SearchPhase;
+import net.sf.gsaapi.util.LatencyHistogram;
+
+/**
+ * Latency histograms of each {@link SearchPhase} of the searches a
+ * GSAClient fetches from an appliance. Responses served from a cache
+ * are not counted. Recording takes no lock.
+ * <pre>
+ * GSAMetrics metrics = client.getMetrics();
+ * long p99 = metrics.getHistogram(SearchPhase.TOTAL).getPercentile(99, TimeUnit.MILLISECONDS);
+ * metrics.registerMBean("main"); // net.sf.gsaapi:type=GSAClient,name=main
+ * </pre>
+ * @see GSAClient#getMetrics()
+ */
+public class GSAMetrics implements GSAMetricsMXBean {
+
+    private final LatencyHistogram[] histograms;
+
+    /**
+     * constructor is intended for internal use only.
+     */
+    GSAMetrics() {
+        histograms = new LatencyHistogram[SearchPhase.values().length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    void record(GSATimings timings) {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i].recordNanos(timings.getNanos(i));
+        }
+    }
+
+    /**
+     * @return the histogram of the phase.
+     */
+    public LatencyHistogram getHistogram(SearchPhase phase) {
+        return histograms[phase.getIndex()];
+    }
+
+    public long getSearchCount() {
+        return getHistogram(SearchPhase.TOTAL).getCount();
+    }
+
+    public LatencyHistogram.Snapshot getQuery() {
+        return getHistogram(SearchPhase.QUERY).getSnapshot();
+    }
+
+    public LatencyHistogram.Snapshot getConnect() {
+        return getHistogram(SearchPhase.CONNECT).getSnapshot();
+    }
+
+    public LatencyHistogram.Snapshot getFirstByte() {
+        return getHistogram(SearchPhase.FIRST_BYTE).getSnapshot();
+    }
+
+    public LatencyHistogram.Snapshot getTransfer() {
+        return getHistogram(SearchPhase.TRANSFER).getSnapshot();
+    }
+
+    public LatencyHistogram.Snapshot getParse() {
+        return getHistogram(SearchPhase.PARSE).getSnapshot();
+    }
+
+    public LatencyHistogram.Snapshot getAppliance() {
+        return getHistogram(SearchPhase.APPLIANCE).getSnapshot();
+    }
+
+    public LatencyHistogram.Snapshot getTotal() {
+        return getHistogram(SearchPhase.TOTAL).getSnapshot();
+    }
+
+    public void reset() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i].reset();
+        }
+    }
+
+    /**
+     * registers these metrics with the platform MBeanServer.
+     * @param name distinguishes the clients of an application
+     * @return the name of the MBean:
+     * <code>net.sf.gsaapi:type=GSAClient,name=</code><i>name</i>
+     * @throws JMException if the name is taken or invalid
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName retval = new ObjectName("net.sf.gsaapi:type=GSAClient,name=" + name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, retval);
+        return retval;
+    }
+
+    /**
+     * @return the statistics of each phase.
+     */
+    public String toString() {
+        StringBuffer sb = new StringBuffer();
+        SearchPhase[] phases = SearchPhase.values();
+        for (int i = 0; i < phases.length; i++) {
+            sb.append(phases[i]).append(": ").append(histograms[i]).append('\n');
+        }
+        return sb.toString();
+    }
+}
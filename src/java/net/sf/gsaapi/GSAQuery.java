@@ -25,10 +25,12 @@ package net.sf.gsaapi;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 import net.sf.gsaapi.constants.Access;
 import net.sf.gsaapi.constants.Filter;
 import net.sf.gsaapi.constants.OutputFormat;
+import net.sf.gsaapi.constants.ResponsePart;
 import net.sf.gsaapi.constants.SearchScope;
 import net.sf.gsaapi.util.Util;
 
@@ -77,6 +79,16 @@ public class GSAQuery {
 
     private GSAQueryTerm queryTerm;
 
+    private ResponsePart[] responseParts;
+
+    private boolean cacheable = true;
+
+    private long connectTimeoutMillis;
+
+    private long readTimeoutMillis;
+
+    private long searchTimeoutMillis;
+
     /**
      * create an instance of GSAQuery.
      */
@@ -448,6 +460,138 @@ public class GSAQuery {
         query.setProxyreload(force);
     }
 
+    /**
+     * Restrict the parts of the response that are bound to the
+     * GSAResponse. Elements of the other parts are skipped while parsing,
+     * and the corresponding getters return null or empty values. This
+     * does not change the request sent to the GSA.
+     * <pre>
+     * query.setResponseParts(new ResponsePart[] {
+     *         ResponsePart.TITLE, ResponsePart.METAS });
+     * </pre>
+     * 
+     * @param parts
+     *            the {@link ResponsePart}s to bind, or null to bind the
+     *            complete response (the default).
+     */
+    public void setResponseParts(ResponsePart[] parts) {
+        this.responseParts = parts == null ? null : parts.clone();
+    }
+
+    /**
+     * @return the parts set by {@link #setResponseParts(ResponsePart[])},
+     *         or null if the complete response is bound.
+     */
+    public ResponsePart[] getResponseParts() {
+        return responseParts == null ? null : responseParts.clone();
+    }
+
+    /**
+     * Allow the response to this query to be served from, and stored
+     * in, the response cache of the client (if it has one). Queries are
+     * cacheable by default.
+     * 
+     * @param cacheable
+     *            false to always fetch this query from the GSA.
+     * @see GSAClient#setResponseCache(GSAResponseCache)
+     */
+    public void setCacheable(boolean cacheable) {
+        this.cacheable = cacheable;
+    }
+
+    /**
+     * @return whether the response to this query may be cached.
+     */
+    public boolean isCacheable() {
+        return cacheable;
+    }
+
+    /**
+     * Override the connect timeout of the client for this query.
+     * 
+     * @param timeout
+     *            the timeout, or 0 to use the client's setting.
+     * @param unit
+     *            the unit of the timeout argument
+     * @see GSAClient#setConnectTimeout(long, TimeUnit)
+     */
+    public void setConnectTimeout(long timeout, TimeUnit unit) {
+        this.connectTimeoutMillis = unit.toMillis(timeout);
+    }
+
+    public long getConnectTimeout(TimeUnit unit) {
+        return unit.convert(connectTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Override the read timeout of the client for this query.
+     * 
+     * @param timeout
+     *            the timeout, or 0 to use the client's setting.
+     * @param unit
+     *            the unit of the timeout argument
+     * @see GSAClient#setReadTimeout(long, TimeUnit)
+     */
+    public void setReadTimeout(long timeout, TimeUnit unit) {
+        this.readTimeoutMillis = unit.toMillis(timeout);
+    }
+
+    public long getReadTimeout(TimeUnit unit) {
+        return unit.convert(readTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Override the search timeout of the client for this query: the
+     * time allowed to fetch and parse the response.
+     * 
+     * @param timeout
+     *            the timeout, or 0 to use the client's setting.
+     * @param unit
+     *            the unit of the timeout argument
+     * @see GSAClient#setSearchTimeout(long, TimeUnit)
+     */
+    public void setSearchTimeout(long timeout, TimeUnit unit) {
+        this.searchTimeoutMillis = unit.toMillis(timeout);
+    }
+
+    public long getSearchTimeout(TimeUnit unit) {
+        return unit.convert(searchTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * returns a copy of this GSAQuery that can be modified
+     * independently of this instance.
+     * @return the copy
+     */
+    GSAQuery copy() {
+        GSAQuery retval = new GSAQuery();
+        retval.query = query.copy();
+        retval.queryTerm = queryTerm;
+        retval.responseParts = responseParts;
+        retval.cacheable = cacheable;
+        retval.connectTimeoutMillis = connectTimeoutMillis;
+        retval.readTimeoutMillis = readTimeoutMillis;
+        retval.searchTimeoutMillis = searchTimeoutMillis;
+        return retval;
+    }
+
+    /**
+     * the (0-based) index of the first result requested.
+     * @return the value set by {@link #setScrollAhead(int)}
+     */
+    int getScrollAhead() {
+        return (int) query.getStart();
+    }
+
+    /**
+     * the number of results requested.
+     * @return the value set by {@link #setMaxResults(int)}, or 0 if
+     * the appliance default applies.
+     */
+    int getMaxResults() {
+        return query.getNum();
+    }
+
     /**
      * return the HTTP GET query string.
      * 
@@ -0,0 +1,41 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a search fails fast without being sent to the appliance,
+ * because the circuit breaker of the client is open or the adaptive
+ * concurrency limit has been reached.
+ * @see GSAClient#setCircuitBreaker(int, long, java.util.concurrent.TimeUnit)
+ * @see GSAClient#setAdaptiveConcurrency(int, int)
+ */
+public class GSARejectedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public GSARejectedException(String message) {
+        super(message);
+    }
+}
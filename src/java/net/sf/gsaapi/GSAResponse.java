@@ -49,6 +49,7 @@ public class GSAResponse {
     private List oneboxResponses = new ArrayList();
     private List keymatchResults = new ArrayList();
     private GSADynamicNavigationResponse navigationResponse = new GSADynamicNavigationResponse();
+    private GSATimings timings;
 
     /**
      * constructor is intended for internal use only.
@@ -253,6 +254,21 @@ public class GSAResponse {
         this.navigationResponse = navigationResponse;
     }
 
+    /**
+     * how long each phase of the search that fetched this response took.
+     * A response served from a cache keeps the timings of the search
+     * that fetched it.
+     * @return the timings, or null if the response was not fetched from
+     * an appliance by a GSAClient (e.g. merged by a paged search)
+     */
+    public GSATimings getTimings() {
+        return timings;
+    }
+
+    void setTimings(GSATimings timings) {
+        this.timings = timings;
+    }
+
     /**
      * to aid in debugging
      * @return String indicating the value of internal fields.
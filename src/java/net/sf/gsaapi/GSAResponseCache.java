@@ -0,0 +1,439 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.gsaapi.constants.ResponsePart;
+
+/**
+ * An in-process cache of parsed responses, for use by a GSAClient:
+ * <pre>
+ * client.setResponseCache(new GSAResponseCache(1000, 5, TimeUnit.MINUTES));
+ * </pre>
+ * Responses are keyed on the canonical form of the query string (the
+ * parameters sorted by name) together with the requested
+ * {@link ResponsePart}s, so that a cache hit costs neither a request
+ * nor a parse. Entries expire after the time-to-live; when the cache is
+ * full the least recently used entry is evicted.
+ * <br/>
+ * With {@link #setStaleWhileRevalidate(long, TimeUnit)} a GSAClient keeps
+ * serving an expired response for a grace period while it fetches a new
+ * one in the background, and with {@link #setRefreshAhead(double, int)}
+ * it refreshes popular responses before they expire.
+ * <br/>
+ * Cached GSAResponse instances are shared by every caller that hits
+ * them and must be treated as read-only. A cache should not be shared
+ * by clients that talk to different appliances.
+ * Queries can opt out with {@link GSAQuery#setCacheable(boolean)}.
+ */
+public class GSAResponseCache {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, CacheEntry> entries;
+    private volatile long graceNanos;
+    private volatile double refreshAheadFraction;
+    private volatile int refreshAheadMinHits;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong expirationCount = new AtomicLong();
+    private final AtomicLong staleHitCount = new AtomicLong();
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final AtomicLong refreshFailureCount = new AtomicLong();
+
+    /**
+     * @param maxEntries maximum number of responses kept
+     * @param ttl time a response stays valid after it was fetched
+     * @param unit the unit of the ttl argument
+     */
+    public GSAResponseCache(int maxEntries, long ttl, TimeUnit unit) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("ttl must be positive: " + ttl);
+        }
+        this.maxEntries = maxEntries;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                if (size() > GSAResponseCache.this.maxEntries) {
+                    evictionCount.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * returns the cached response for the query.
+     * @param rawQuery the query string (as passed to GSAClient)
+     * @param parts the requested parts, or null for the complete response
+     * @return the response, or null if it is not cached or has expired.
+     */
+    public GSAResponse get(String rawQuery, ResponsePart[] parts) {
+        return get(key(rawQuery, parts));
+    }
+
+    GSAResponse get(String key) {
+        CacheEntry entry = lookup(key, false);
+        return entry == null ? null : entry.response;
+    }
+
+    /**
+     * looks up the entry for a key.
+     * @param allowStale whether an expired entry still within the grace
+     * period is returned
+     * @return the entry, or null if there is no usable entry.
+     */
+    CacheEntry lookup(String key, boolean allowStale) {
+        CacheEntry retval = null;
+        long now = System.nanoTime();
+        synchronized (entries) {
+            CacheEntry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.expiresNanos + graceNanos - now > 0) {
+                    if (allowStale || entry.isFresh(now)) retval = entry;
+                } else {
+                    entries.remove(key);
+                    expirationCount.incrementAndGet();
+                }
+            }
+        }
+        if (retval == null) {
+            missCount.incrementAndGet();
+        } else if (retval.isFresh(now)) {
+            hitCount.incrementAndGet();
+            retval.hits.incrementAndGet();
+        } else {
+            staleHitCount.incrementAndGet();
+        }
+        return retval;
+    }
+
+    /**
+     * whether a fresh entry is popular and old enough to be refreshed
+     * ahead of its expiry.
+     */
+    boolean isDueForRefresh(CacheEntry entry) {
+        double fraction = refreshAheadFraction;
+        if (fraction <= 0 || entry.hits.get() < refreshAheadMinHits) return false;
+        long age = System.nanoTime() - (entry.expiresNanos - ttlNanos);
+        return age >= (long) (ttlNanos * fraction);
+    }
+
+    /**
+     * claims the refresh of an entry.
+     * @return false if the entry is already being refreshed.
+     */
+    boolean startRefresh(CacheEntry entry) {
+        if (!entry.refreshing.compareAndSet(false, true)) return false;
+        refreshCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * releases the refresh of an entry that could not be refreshed, so
+     * that a later hit tries again.
+     */
+    void refreshFailed(CacheEntry entry) {
+        refreshFailureCount.incrementAndGet();
+        entry.refreshing.set(false);
+    }
+
+    /**
+     * caches a response.
+     * @param rawQuery the query string (as passed to GSAClient)
+     * @param parts the parts bound in the response, or null for all
+     * @param response the parsed response
+     */
+    public void put(String rawQuery, ResponsePart[] parts, GSAResponse response) {
+        put(key(rawQuery, parts), response);
+    }
+
+    void put(String key, GSAResponse response) {
+        CacheEntry entry = new CacheEntry(response, System.nanoTime() + ttlNanos);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * removes the responses cached for the query, whatever parts they
+     * were bound with.
+     * @param rawQuery the query string (as passed to GSAClient)
+     */
+    public void invalidate(String rawQuery) {
+        String prefix = canonicalQuery(rawQuery) + KEY_SEPARATOR;
+        synchronized (entries) {
+            for (Iterator<String> it = entries.keySet().iterator(); it.hasNext();) {
+                if (it.next().startsWith(prefix)) it.remove();
+            }
+        }
+    }
+
+    /**
+     * lets a GSAClient serve a response that has expired for up to the
+     * grace period, while it fetches the new response in the background.
+     * Off (zero) by default. Entries are kept for the time-to-live plus
+     * the grace period.
+     * @param grace how long after expiry a response may still be served
+     * @param unit the unit of the grace argument
+     */
+    public void setStaleWhileRevalidate(long grace, TimeUnit unit) {
+        if (grace < 0) {
+            throw new IllegalArgumentException("grace must not be negative: " + grace);
+        }
+        this.graceNanos = unit.toNanos(grace);
+    }
+
+    /**
+     * @param unit the unit of the returned value
+     * @return the grace period during which expired responses are served
+     */
+    public long getStaleWhileRevalidate(TimeUnit unit) {
+        return unit.convert(graceNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * lets a GSAClient refresh popular responses in the background before
+     * they expire, so that they never go stale. A response is refreshed on
+     * the first hit after <code>fraction</code> of its time-to-live has
+     * passed, provided it has been hit at least <code>minHits</code> times.
+     * Off by default.
+     * @param fraction between 0 and 1, or 0 to disable refresh-ahead
+     * @param minHits hits a response needs before it is refreshed
+     */
+    public void setRefreshAhead(double fraction, int minHits) {
+        if (!(fraction >= 0 && fraction < 1)) {
+            throw new IllegalArgumentException("fraction must be in [0, 1): " + fraction);
+        }
+        if (minHits < 0) {
+            throw new IllegalArgumentException("minHits must not be negative: " + minHits);
+        }
+        this.refreshAheadFraction = fraction;
+        this.refreshAheadMinHits = minHits;
+    }
+
+    /**
+     * @return the fraction of the time-to-live after which popular
+     * responses are refreshed, or 0 if refresh-ahead is off.
+     */
+    public double getRefreshAheadFraction() {
+        return refreshAheadFraction;
+    }
+
+    public int getRefreshAheadMinHits() {
+        return refreshAheadMinHits;
+    }
+
+    /**
+     * removes all cached responses.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * @return number of cached responses, including expired ones that
+     * have not been looked up since they expired.
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @param unit the unit of the returned value
+     * @return the time-to-live of the entries
+     */
+    public long getTimeToLive(TimeUnit unit) {
+        return unit.convert(ttlNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return number of entries removed to make room for newer ones.
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * @return number of entries removed because they had expired.
+     */
+    public long getExpirationCount() {
+        return expirationCount.get();
+    }
+
+    /**
+     * @return number of expired responses served during their grace period.
+     */
+    public long getStaleHitCount() {
+        return staleHitCount.get();
+    }
+
+    /**
+     * @return number of background refreshes started, for stale or
+     * refresh-ahead responses.
+     */
+    public long getRefreshCount() {
+        return refreshCount.get();
+    }
+
+    /**
+     * @return number of background refreshes that failed.
+     */
+    public long getRefreshFailureCount() {
+        return refreshFailureCount.get();
+    }
+
+    /**
+     * @return hits / (hits + misses), or 0 before the first lookup.
+     */
+    public double getHitRatio() {
+        long hits = hitCount.get();
+        long lookups = hits + missCount.get();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * clears the statistics.
+     */
+    public void resetStatistics() {
+        hitCount.set(0);
+        missCount.set(0);
+        evictionCount.set(0);
+        expirationCount.set(0);
+        staleHitCount.set(0);
+        refreshCount.set(0);
+        refreshFailureCount.set(0);
+    }
+
+    public String toString() {
+        return "GSAResponseCache[size=" + size() + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount()
+                + ", expirations=" + getExpirationCount() + ", staleHits=" + getStaleHitCount()
+                + ", refreshes=" + getRefreshCount() + "]";
+    }
+
+    /**
+     * the cache key of a query: its canonical form followed by the
+     * bit mask of the requested parts.
+     */
+    static String key(String rawQuery, ResponsePart[] parts) {
+        return canonicalQuery(rawQuery) + KEY_SEPARATOR + Integer.toHexString(ResponsePart.mask(parts));
+    }
+
+    /**
+     * returns the query string with its parameters sorted by name, so
+     * that queries that differ only in parameter order share an entry.
+     * Repeated parameters keep their relative order. A leading '?' and
+     * empty parameters are dropped; anything before the '?' of a full
+     * url is kept as is.
+     * @param rawQuery the query string or full url
+     * @return the canonical form
+     */
+    static String canonicalQuery(String rawQuery) {
+        String prefix = "";
+        String params = rawQuery;
+        int q = rawQuery.indexOf('?');
+        if (q >= 0) {
+            prefix = rawQuery.substring(0, q + 1);
+            params = rawQuery.substring(q + 1);
+        }
+        List<String> list = new ArrayList<String>();
+        int from = 0;
+        while (from <= params.length()) {
+            int amp = params.indexOf('&', from);
+            if (amp < 0) amp = params.length();
+            if (amp > from) list.add(params.substring(from, amp));
+            from = amp + 1;
+        }
+        Collections.sort(list, PARAM_NAME_ORDER);
+        StringBuffer sb = new StringBuffer(rawQuery.length() + 1);
+        sb.append(prefix.length() > 1 ? prefix : "");
+        for (int i = 0, iSize = list.size(); i < iSize; i++) {
+            if (i > 0) sb.append('&');
+            sb.append(list.get(i));
+        }
+        return sb.toString();
+    }
+
+    private static final char KEY_SEPARATOR = '#';
+
+    // compares "name=value" parameters by name only; the sort is stable
+    private static final Comparator<String> PARAM_NAME_ORDER = new Comparator<String>() {
+        public int compare(String a, String b) {
+            return name(a).compareTo(name(b));
+        }
+        private String name(String param) {
+            int eq = param.indexOf('=');
+            return eq < 0 ? param : param.substring(0, eq);
+        }
+    };
+
+    static class CacheEntry {
+        final GSAResponse response;
+        final long expiresNanos;
+        final AtomicInteger hits = new AtomicInteger();
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        CacheEntry(GSAResponse response, long expiresNanos) {
+            this.response = response;
+            this.expiresNanos = expiresNanos;
+        }
+
+        boolean isFresh(long now) {
+            return expiresNanos - now > 0;
+        }
+    }
+}
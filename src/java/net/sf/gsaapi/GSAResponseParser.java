@@ -0,0 +1,102 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.InputStream;
+
+import net.sf.gsaapi.constants.ResponsePart;
+
+/**
+ * Binds the GSA XML results to a GSAResponse. GSAClient uses
+ * {@link #SAX} unless another parser has been set with
+ * {@link GSAClient#setResponseParser(GSAResponseParser)}:
+ * <pre>
+ * client.setResponseParser(GSAResponseParser.STAX);
+ * </pre>
+ * Implementations must be safe for use by multiple threads.
+ */
+public interface GSAResponseParser {
+
+    /**
+     * The default parser, based on the JAXP SAX parser.
+     */
+    public static final GSAResponseParser SAX = new GSAResponseParser() {
+        public GSAResponse parse(InputStream istream, String xmlSystemId,
+                ResponsePart[] parts, GSAResultListener listener) {
+            return ResponseBuilder.buildResponse(istream, xmlSystemId, parts, listener);
+        }
+        public String toString() {
+            return "SAX";
+        }
+    };
+
+    /**
+     * A parser based on the javax.xml.stream (StAX) pull parser. It
+     * produces the same GSAResponse as {@link #SAX}. It never loads the
+     * external DTD of a document.
+     */
+    public static final GSAResponseParser STAX = new GSAResponseParser() {
+        public GSAResponse parse(InputStream istream, String xmlSystemId,
+                ResponsePart[] parts, GSAResultListener listener) {
+            return StaxResponseBuilder.buildResponse(istream, xmlSystemId, parts, listener);
+        }
+        public String toString() {
+            return "StAX";
+        }
+    };
+
+    /**
+     * A scanner written for GSA XML results, which works directly on
+     * the UTF-8 bytes of the document. It produces the same GSAResponse
+     * as {@link #SAX}, handing the document over to the SAX parser when
+     * it meets anything it does not handle itself (another encoding, a
+     * DTD internal subset, entities other than the predefined ones or
+     * malformed markup). The document is read completely before it is
+     * bound, so the listener is only notified once the response has
+     * been read.
+     */
+    public static final GSAResponseParser SCANNER = new GSAResponseParser() {
+        public GSAResponse parse(InputStream istream, String xmlSystemId,
+                ResponsePart[] parts, GSAResultListener listener) {
+            return ScanningResponseBuilder.buildResponse(istream, xmlSystemId, parts, listener);
+        }
+        public String toString() {
+            return "scanner";
+        }
+    };
+
+    /**
+     * Parses the response and closes the stream. Errors are
+     * reported as RuntimeExceptions.
+     * @param istream the GSA XML results
+     * @param xmlSystemId system id used to resolve relative references
+     * in the document (such as the DTD)
+     * @param parts the parts of the response to bind, or null for the
+     * complete response. Parsers may bind more than was asked for.
+     * @param listener if not null, notified of each result as soon as it
+     * has been parsed
+     * @return the GSAResponse instance
+     */
+    public GSAResponse parse(InputStream istream, String xmlSystemId,
+            ResponsePart[] parts, GSAResultListener listener);
+}
@@ -22,7 +22,8 @@
  ********************************************************************************/
 package net.sf.gsaapi;
 
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.Map;
 
 import net.sf.gsaapi.util.Util;
@@ -40,8 +41,9 @@ public class GSAResult {
     private String escapedUrl;
     private String title;
     private int rating;
-    private Map metas;
-    private Map fields;
+    // null until the first entry is added
+    private CompactMap metas;
+    private CompactMap fields;
     private String summary;
     private String language;
     
@@ -53,8 +55,6 @@ public class GSAResult {
      * constructor is intended for internal use only.
      */
     public GSAResult() {
-        metas = new HashMap();
-        fields = new HashMap();
     }
 
     /**
@@ -80,7 +80,10 @@ public class GSAResult {
      * @param metas
      */
     public void setMetas(Map metas) {
-        this.metas.putAll(metas);
+        for (Iterator it = metas.entrySet().iterator(); it.hasNext();) {
+            Map.Entry e = (Map.Entry) it.next();
+            addMeta((String) e.getKey(), (String) e.getValue());
+        }
     }
 
     /**
@@ -89,7 +92,8 @@ public class GSAResult {
      * @param value meta field value.
      */
     public void addMeta(String key, String value) {
-        this.metas.put(key, value);
+        if (metas == null) metas = new CompactMap();
+        metas.add(key, value);
     }
 
     /**
@@ -98,7 +102,10 @@ public class GSAResult {
      * @param fields Map of fields and their values.
      */
     public void setFields(Map fields) {
-        this.fields.putAll(fields);
+        for (Iterator it = fields.entrySet().iterator(); it.hasNext();) {
+            Map.Entry e = (Map.Entry) it.next();
+            addField((String) e.getKey(), (String) e.getValue());
+        }
     }
 
     /**
@@ -107,7 +114,8 @@ public class GSAResult {
      * @param value field value.
      */
     public void addField(String key, String value) {
-        this.fields.put(key, value);
+        if (fields == null) fields = new CompactMap();
+        fields.add(key, value);
     }
 
     /**
@@ -174,10 +182,11 @@ public class GSAResult {
      * This is returned only if the query specifically indicated
      * that the meta information should be returned and if the
      * result actually had any meta information associated with it.
+     * The map is a live read-only view, in document order: copy it
+     * (e.g. into a HashMap) to modify it.
      */
     public Map getMetas() {
-        Map retval = new HashMap(metas);
-        return retval;
+        return metas == null ? Collections.EMPTY_MAP : metas;
     }
     
     /**
@@ -186,7 +195,7 @@ public class GSAResult {
      * @return returns the value of the meta field specified by the name.
      */
     public String getMeta(String name) {
-        return Util.getString(metas.get(name), null, false);
+        return metas == null ? null : Util.getString(metas.get(name), null, false);
     }
 
     /**
@@ -196,10 +205,11 @@ public class GSAResult {
      * This is returned only if the
      * result actually had any additional fields
      * associated with it.
+     * The map is a live read-only view, in document order: copy it
+     * (e.g. into a HashMap) to modify it.
      */
     public Map getFields() {
-        Map retval = new HashMap(fields);
-        return retval;
+        return fields == null ? Collections.EMPTY_MAP : fields;
     }
     
     /**
@@ -208,7 +218,7 @@ public class GSAResult {
      * @return returns the value of the "additional" field specified by the name
      */
     public String getField(String name) {
-        return Util.getString(fields.get(name), null, false);
+        return fields == null ? null : Util.getString(fields.get(name), null, false);
     }
 
     /**
@@ -333,8 +343,8 @@ public class GSAResult {
         buffer.append(", escapedUrl = ").append(escapedUrl);
         buffer.append(", title = ").append(title);
         buffer.append(", rating = ").append(rating);
-        buffer.append(", metas = ").append(metas);
-        buffer.append(", fields = ").append(fields);
+        buffer.append(", metas = ").append(getMetas());
+        buffer.append(", fields = ").append(getFields());
         buffer.append(", summary = ").append(summary);
         buffer.append(", language = ").append(language);
         buffer.append(", cacheDocId = ").append(cacheDocId);
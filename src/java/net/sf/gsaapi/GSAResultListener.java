@@ -0,0 +1,49 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+/**
+ * GSAResultListener allows processing the results of a search
+ * while the response is still being parsed. Each GSAResult is passed
+ * to the listener as soon as its &lt;R&gt; element has been read, so the
+ * first results can be rendered before the rest of the page has
+ * arrived from the GSA. Typical usage:
+ * <pre>
+ * client.getGSAResponse(query, new GSAResultListener() {
+ *     public void resultParsed(GSAResult result) {
+ *         render(result);
+ *     }
+ * });
+ * </pre>
+ * The listener is called on the thread that parses the response.
+ * An exception thrown by the listener aborts the parse.
+ */
+public interface GSAResultListener {
+
+    /**
+     * Called once for every result, in rank order.
+     * @param result the result that has just been parsed. The same
+     * instance is also added to the results of the GSAResponse.
+     */
+    public void resultParsed(GSAResult result);
+}
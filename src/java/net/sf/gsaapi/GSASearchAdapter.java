@@ -0,0 +1,45 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+/**
+ * A GSASearchListener that ignores every event, to be extended by
+ * listeners interested in only some of them.
+ */
+public abstract class GSASearchAdapter implements GSASearchListener {
+
+    public void searchStarted(GSASearchEvent event) {
+    }
+
+    public void cacheHit(GSASearchEvent event) {
+    }
+
+    public void responseReceived(GSASearchEvent event) {
+    }
+
+    public void parseComplete(GSASearchEvent event) {
+    }
+
+    public void searchFailed(GSASearchEvent event) {
+    }
+}
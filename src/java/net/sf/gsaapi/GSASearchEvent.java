@@ -0,0 +1,190 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A search observed by {@link GSASearchListener}s. The event is created
+ * when the search starts and filled in as it progresses.
+ */
+public class GSASearchEvent {
+
+    private final GSASearchListener[] listeners;
+    private final GSAQuery query;
+    private final String rawQuery;
+    private final long startNanos = System.nanoTime();
+    private GSATimings timings;
+    private long bytes;
+    private GSAResponse response;
+    private Exception exception;
+    private Map attributes;
+
+    /**
+     * constructor is intended for internal use only.
+     */
+    GSASearchEvent(GSASearchListener[] listeners, GSAQuery query, String rawQuery) {
+        this.listeners = listeners;
+        this.query = query;
+        this.rawQuery = rawQuery;
+    }
+
+    /**
+     * @return the query searched for, or null for a search made with a
+     * raw query string.
+     */
+    public GSAQuery getQuery() {
+        return query;
+    }
+
+    /**
+     * @return the query string sent to the appliance.
+     */
+    public String getRawQuery() {
+        return rawQuery;
+    }
+
+    /**
+     * @return the System.nanoTime() at which the search started.
+     */
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * @return the timings of the fetch, or null before a response has
+     * been received. For a cache hit, the timings of the search that
+     * fetched the response, if any.
+     * @see GSAResponse#getTimings()
+     */
+    public GSATimings getTimings() {
+        return timings;
+    }
+
+    /**
+     * @return the number of bytes of XML read from the appliance, after
+     * decompression; 0 unless the response was fetched by this search.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the response, or null until it has been parsed or found in
+     * a cache.
+     */
+    public GSAResponse getResponse() {
+        return response;
+    }
+
+    /**
+     * @return the number of results of the response, or 0 if there is no
+     * response.
+     */
+    public int getResultCount() {
+        return response == null ? 0 : response.getResults().size();
+    }
+
+    /**
+     * @return the exception the search failed with, or null.
+     */
+    public Exception getException() {
+        return exception;
+    }
+
+    /**
+     * @return the value a listener stored for the key, or null.
+     */
+    public Object getAttribute(Object key) {
+        return attributes == null ? null : attributes.get(key);
+    }
+
+    /**
+     * stores a value with the event, such as the span tracing the search,
+     * for the later calls of a listener.
+     */
+    public void setAttribute(Object key, Object value) {
+        if (attributes == null) attributes = new HashMap();
+        attributes.put(key, value);
+    }
+
+    void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    void fireSearchStarted() {
+        fire(STARTED);
+    }
+
+    void fireCacheHit(GSAResponse response) {
+        this.response = response;
+        if (response != null) this.timings = response.getTimings();
+        fire(CACHE_HIT);
+    }
+
+    void fireResponseReceived(GSATimings timings) {
+        this.timings = timings;
+        fire(RECEIVED);
+    }
+
+    void fireParseComplete(GSAResponse response) {
+        this.response = response;
+        fire(PARSED);
+    }
+
+    void fireSearchFailed(Exception exception) {
+        this.exception = exception;
+        fire(FAILED);
+    }
+
+    private static final int STARTED = 0;
+    private static final int CACHE_HIT = 1;
+    private static final int RECEIVED = 2;
+    private static final int PARSED = 3;
+    private static final int FAILED = 4;
+
+    /**
+     * calls every listener, ignoring their exceptions: observing a search
+     * must not fail it, nor keep the other listeners from seeing it.
+     */
+    private void fire(int type) {
+        for (int i = 0; i < listeners.length; i++) {
+            try {
+                switch (type) {
+                case STARTED: listeners[i].searchStarted(this); break;
+                case CACHE_HIT: listeners[i].cacheHit(this); break;
+                case RECEIVED: listeners[i].responseReceived(this); break;
+                case PARSED: listeners[i].parseComplete(this); break;
+                default: listeners[i].searchFailed(this); break;
+                }
+            } catch (RuntimeException ignored) {
+            }
+        }
+    }
+
+    public String toString() {
+        return "GSASearchEvent[" + rawQuery + ", results=" + getResultCount() + ", bytes=" + bytes
+                + (exception == null ? "" : ", " + exception) + (timings == null ? "" : ", " + timings) + "]";
+    }
+}
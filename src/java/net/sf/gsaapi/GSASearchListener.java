@@ -0,0 +1,78 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+/**
+ * GSASearchListener observes the searches of a GSAClient, e.g. to feed
+ * metrics or tracing backends. Each search made through
+ * <code>getGSAResponse</code> or <code>getGSAResponseAsync</code> starts
+ * with {@link #searchStarted} and ends with exactly one of
+ * {@link #cacheHit}, {@link #parseComplete} or {@link #searchFailed};
+ * a search fetched from the appliance also gets
+ * {@link #responseReceived} in between. Typical usage:
+ * <pre>
+ * client.addSearchListener(new GSASearchAdapter() {
+ *     public void parseComplete(GSASearchEvent event) {
+ *         timer.record(event.getTimings().get(SearchPhase.TOTAL, TimeUnit.NANOSECONDS));
+ *     }
+ * });
+ * </pre>
+ * The same event instance is passed to every call for a search, and is
+ * filled in as the search progresses. Listeners are called on the
+ * thread making the search, in the order they were added. A
+ * RuntimeException thrown by a listener is ignored, so that observing a
+ * search cannot fail it.
+ * When no listener is registered, searches create no events.
+ * @see GSAClient#addSearchListener(GSASearchListener)
+ * @see GSASearchAdapter
+ */
+public interface GSASearchListener {
+
+    /**
+     * Called when the search starts, once its query string is built.
+     */
+    public void searchStarted(GSASearchEvent event);
+
+    /**
+     * Called when the search is answered without a fetch of its own: from
+     * the response cache, the second level cache, or by an identical
+     * search that was in flight.
+     */
+    public void cacheHit(GSASearchEvent event);
+
+    /**
+     * Called when the appliance has answered, before the body is read.
+     * The timings of the connect and first byte phases are set.
+     */
+    public void responseReceived(GSASearchEvent event);
+
+    /**
+     * Called when the body has been read and parsed.
+     */
+    public void parseComplete(GSASearchEvent event);
+
+    /**
+     * Called when the search throws an exception.
+     */
+    public void searchFailed(GSASearchEvent event);
+}
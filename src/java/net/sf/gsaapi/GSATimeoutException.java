@@ -0,0 +1,46 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Thrown when a search exceeds one of its timeouts: connecting to the
+ * appliance, waiting for data from it, or completing the whole search
+ * (including parsing the response) within the search timeout.
+ * @see GSAClient#setSearchTimeout(long, java.util.concurrent.TimeUnit)
+ * @see GSAQuery#setSearchTimeout(long, java.util.concurrent.TimeUnit)
+ */
+public class GSATimeoutException extends InterruptedIOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public GSATimeoutException(String message) {
+        super(message);
+    }
+
+    public GSATimeoutException(String message, Throwable cause) {
+        super(message);
+        initCause(cause);
+    }
+}
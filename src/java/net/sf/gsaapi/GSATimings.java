@@ -0,0 +1,79 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.util.concurrent.TimeUnit;
+
+import net.sf.gsaapi.constants.SearchPhase;
+
+/**
+ * The time spent in each {@link SearchPhase} of the search that
+ * fetched a response.
+ * @see GSAResponse#getTimings()
+ */
+public class GSATimings {
+
+    private static final int PHASES = SearchPhase.values().length;
+
+    private final long[] nanos = new long[PHASES];
+
+    /**
+     * constructor is intended for internal use only.
+     */
+    GSATimings() {
+    }
+
+    /**
+     * @param phase the phase
+     * @param unit the unit of the returned time
+     * @return the time spent in the phase.
+     */
+    public long get(SearchPhase phase, TimeUnit unit) {
+        return unit.convert(nanos[phase.getIndex()], TimeUnit.NANOSECONDS);
+    }
+
+    void set(SearchPhase phase, long nanos) {
+        this.nanos[phase.getIndex()] = nanos;
+    }
+
+    void add(SearchPhase phase, long nanos) {
+        this.nanos[phase.getIndex()] += nanos;
+    }
+
+    long getNanos(int index) {
+        return nanos[index];
+    }
+
+    /**
+     * @return the phases and their times in milliseconds.
+     */
+    public String toString() {
+        StringBuffer sb = new StringBuffer();
+        SearchPhase[] phases = SearchPhase.values();
+        for (int i = 0; i < phases.length; i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(phases[i]).append('=').append(nanos[i] / 1000 / 1000.0).append("ms");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,176 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Decides when a search is hedged, ie. duplicated to a second endpoint
+ * because it has not been answered within a percentile of the recent
+ * response latencies. Hedges are paid for from a budget: every search
+ * earns <code>budget</code> tokens (up to a small burst) and every hedge
+ * spends one, so hedging adds at most that fraction of extra load.
+ * <br/>
+ * Searches take no lock: the tokens are counted in millionths in an
+ * AtomicLong, and the latencies are kept in stripes of a ring, each
+ * written by the threads whose id maps to it. The percentile is
+ * recomputed by one thread at a time, every few recorded latencies.
+ * Intended for internal use by GSAClient.
+ */
+class HedgePolicy {
+
+    private static final int STRIPES = 8;
+    private static final int STRIPE_SIZE = 128;
+    // no hedging until this many latencies have been recorded
+    private static final int MIN_SAMPLES = 20;
+    private static final int RECOMPUTE_INTERVAL = 32;
+    private static final long TOKEN = 1000000;
+    private static final long MAX_TOKENS = 10 * TOKEN;
+
+    private final AtomicLongArray samples = new AtomicLongArray(STRIPES * STRIPE_SIZE);
+    private final AtomicIntegerArray cursors = new AtomicIntegerArray(STRIPES);
+    private final AtomicLong recorded = new AtomicLong();
+    // the value of recorded when the delay was last computed
+    private final AtomicLong computedAt = new AtomicLong();
+    private volatile long delayNanos = -1;
+
+    private volatile double percentile;
+    private volatile double budget = GSAClient.DEFAULT_HEDGE_BUDGET;
+    private volatile long budgetTokens = (long) (GSAClient.DEFAULT_HEDGE_BUDGET * TOKEN);
+    private final AtomicLong tokens = new AtomicLong();
+
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private final AtomicLong hedgeWinCount = new AtomicLong();
+
+    void setPercentile(double percentile) {
+        if (percentile < 0 || percentile >= 1) {
+            throw new IllegalArgumentException("percentile must be in [0, 1): " + percentile);
+        }
+        this.percentile = percentile;
+        delayNanos = -1;
+    }
+
+    double getPercentile() {
+        return percentile;
+    }
+
+    void setBudget(double budget) {
+        if (budget < 0) {
+            throw new IllegalArgumentException("budget must not be negative: " + budget);
+        }
+        this.budget = budget;
+        this.budgetTokens = (long) (budget * TOKEN);
+    }
+
+    double getBudget() {
+        return budget;
+    }
+
+    boolean isEnabled() {
+        return percentile > 0;
+    }
+
+    /**
+     * records the latency of a search.
+     */
+    void record(long latencyNanos) {
+        int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1));
+        int cursor = cursors.getAndIncrement(stripe) & (STRIPE_SIZE - 1);
+        samples.set(stripe * STRIPE_SIZE + cursor, latencyNanos);
+        recorded.incrementAndGet();
+    }
+
+    /**
+     * @return how long to wait before hedging, or -1 if searches should
+     * not be hedged (disabled, or too few latencies recorded yet).
+     */
+    long getHedgeDelayNanos() {
+        double percentile = this.percentile;
+        long count = recorded.get();
+        if (percentile <= 0 || count < MIN_SAMPLES) return -1;
+        long at = computedAt.get();
+        long retval = delayNanos;
+        if ((retval < 0 || count - at >= RECOMPUTE_INTERVAL) && computedAt.compareAndSet(at, count)) {
+            retval = computeDelay(percentile);
+            delayNanos = retval;
+        }
+        return retval;
+    }
+
+    private long computeDelay(double percentile) {
+        long[] sorted = new long[samples.length()];
+        int n = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            // the cursor keeps counting, and goes negative once it wraps
+            int cursor = cursors.get(stripe);
+            int filled = cursor < 0 || cursor >= STRIPE_SIZE ? STRIPE_SIZE : cursor;
+            for (int i = 0; i < filled; i++) {
+                sorted[n++] = samples.get(stripe * STRIPE_SIZE + i);
+            }
+        }
+        if (n == 0) return -1;
+        Arrays.sort(sorted, 0, n);
+        int index = (int) Math.ceil(percentile * n) - 1;
+        return sorted[Math.max(0, Math.min(n - 1, index))];
+    }
+
+    /**
+     * credits the budget for a search.
+     */
+    void searchIssued() {
+        long credit = budgetTokens;
+        long t;
+        do {
+            t = tokens.get();
+            if (t >= MAX_TOKENS) return;
+        } while (!tokens.compareAndSet(t, Math.min(MAX_TOKENS, t + credit)));
+    }
+
+    /**
+     * @return true if the budget allows a hedge; the hedge is then counted.
+     */
+    boolean tryHedge() {
+        long t;
+        do {
+            t = tokens.get();
+            if (t < TOKEN) return false;
+        } while (!tokens.compareAndSet(t, t - TOKEN));
+        hedgeCount.incrementAndGet();
+        return true;
+    }
+
+    void hedgeWon() {
+        hedgeWinCount.incrementAndGet();
+    }
+
+    long getHedgeCount() {
+        return hedgeCount.get();
+    }
+
+    long getHedgeWinCount() {
+        return hedgeWinCount.get();
+    }
+}
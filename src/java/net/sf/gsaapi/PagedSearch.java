@@ -0,0 +1,192 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches a deep result range as a set of <code>start</code>/<code>num</code>
+ * windows of at most {@link GSAQuery#MAX_RESULTS_PER_QUERY} results each,
+ * with at most <code>maxConcurrency</code> windows in flight at a time,
+ * and merges the windows into a single GSAResponse in rank order.
+ * Intended for internal use by GSAClient.
+ */
+class PagedSearch {
+
+    private final GSAClient client;
+    private final GSAQuery[] windows;
+    private final GSAResponse[] pages;
+    private final CompletableFuture<GSAResponse>[] inFlight;
+    private final AtomicInteger nextWindow = new AtomicInteger();
+    private final AtomicInteger workers = new AtomicInteger();
+    private final int maxConcurrency;
+    // index of the first window known to lie beyond the last result; only
+    // an empty window or one without a next link ends the range, as the
+    // appliance may return a short window (e.g. after duplicate filtering)
+    // while more results follow
+    private volatile int endWindow;
+
+    final CompletableFuture<GSAResponse> future = new CompletableFuture<GSAResponse>();
+
+    PagedSearch(GSAClient client, GSAQuery query, int numResults, int maxConcurrency) {
+        if (numResults < 1) {
+            throw new IllegalArgumentException("numResults must be positive: " + numResults);
+        }
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be positive: " + maxConcurrency);
+        }
+        this.client = client;
+        this.maxConcurrency = maxConcurrency;
+        int start = query.getScrollAhead();
+        int limit = Math.min(start + numResults, GSAQuery.MAX_RESULTS);
+        List<GSAQuery> list = new ArrayList<GSAQuery>();
+        for (int first = start; first < limit; first += GSAQuery.MAX_RESULTS_PER_QUERY) {
+            GSAQuery window = query.copy();
+            window.setScrollAhead(first);
+            window.setMaxResults(Math.min(GSAQuery.MAX_RESULTS_PER_QUERY, limit - first));
+            list.add(window);
+        }
+        windows = list.toArray(new GSAQuery[list.size()]);
+        pages = new GSAResponse[windows.length];
+        inFlight = newFutureArray(windows.length);
+        endWindow = windows.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CompletableFuture<GSAResponse>[] newFutureArray(int length) {
+        return new CompletableFuture[length];
+    }
+
+    /**
+     * starts fetching the windows.
+     * @return the future for the merged response.
+     */
+    CompletableFuture<GSAResponse> start() {
+        future.whenComplete((value, failure) -> {
+            if (failure != null) cancelInFlight();
+        });
+        int n = Math.max(1, Math.min(maxConcurrency, windows.length));
+        workers.set(n);
+        for (int i = 0; i < n; i++) {
+            fetchNext();
+        }
+        return future;
+    }
+
+    private void fetchNext() {
+        final int i = nextWindow.getAndIncrement();
+        if (i >= endWindow || future.isDone()) {
+            if (workers.decrementAndGet() == 0 && !future.isDone()) {
+                future.complete(merge(pages));
+            }
+            return;
+        }
+        CompletableFuture<GSAResponse> page = client.getGSAResponseAsync(windows[i]);
+        inFlight[i] = page;
+        page.whenComplete((response, failure) -> {
+            inFlight[i] = null;
+            if (failure != null) {
+                future.completeExceptionally(failure);
+                return;
+            }
+            pages[i] = response;
+            if (response.getResults().isEmpty()) {
+                lowerEndWindow(i);
+            } else if (response.getNextResponseUrl() == null) {
+                lowerEndWindow(i + 1);
+            }
+            fetchNext();
+        });
+    }
+
+    private synchronized void lowerEndWindow(int end) {
+        if (end < endWindow) endWindow = end;
+    }
+
+    private void cancelInFlight() {
+        for (int i = 0; i < inFlight.length; i++) {
+            CompletableFuture<GSAResponse> page = inFlight[i];
+            if (page != null) page.cancel(true);
+        }
+    }
+
+    /**
+     * merges the pages in order. The header (query, params, spelling,
+     * keymatches, OneBox and navigation) is taken from the first page.
+     * A result whose url has already been seen on an earlier page (as
+     * happens when the index changes between window fetches) is dropped.
+     * @param pages responses in window order; windows that were not
+     * fetched are null and skipped.
+     * @return the merged response
+     */
+    static GSAResponse merge(GSAResponse[] pages) {
+        GSAResponse first = null;
+        GSAResponse last = null;
+        double searchTime = 0;
+        List results = new ArrayList();
+        Set seen = new HashSet();
+        for (int p = 0; p < pages.length; p++) {
+            GSAResponse page = pages[p];
+            if (page == null) continue;
+            if (first == null) first = page;
+            last = page;
+            searchTime = Math.max(searchTime, page.getSearchTime());
+            List pageResults = page.getResults();
+            for (int i = 0, iSize = pageResults.size(); i < iSize; i++) {
+                GSAResult result = (GSAResult) pageResults.get(i);
+                String key = result.getUrl() != null ? result.getUrl() : result.getEscapedUrl();
+                if (key == null || seen.add(key)) {
+                    results.add(result);
+                }
+            }
+        }
+        GSAResponse merged = new GSAResponse();
+        if (first == null) return merged;
+        merged.setSearchTime(searchTime);
+        merged.setQuery(first.getQuery());
+        merged.setParams(first.getParams());
+        merged.setNumResults(first.getNumResults());
+        merged.setFiltered(first.isFiltered());
+        merged.setSpelling(first.getSpelling());
+        List synonyms = first.getSynonymsWithMarkup();
+        for (int i = 0, iSize = synonyms.size(); i < iSize; i++) {
+            merged.addSynonymWithMarkup((String) synonyms.get(i));
+        }
+        merged.setKeymatchResults(first.getKeymatchResults());
+        merged.setOneBoxResponses(first.getOneBoxResponses());
+        merged.setNavigationResponse(first.getNavigationResponse());
+        merged.setPreviousResponseUrl(first.getPreviousResponseUrl());
+        merged.setNextResponseUrl(last.getNextResponseUrl());
+        merged.setResults(results);
+        merged.setStartIndex(first.getStartIndex());
+        merged.setEndIndex(results.isEmpty()
+                ? first.getEndIndex()
+                : first.getStartIndex() + results.size() - 1);
+        return merged;
+    }
+}
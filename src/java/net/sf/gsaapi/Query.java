@@ -99,6 +99,45 @@ class Query {
     }
 
 
+    /**
+     * returns a copy of this Query that can be modified
+     * independently of this instance.
+     */
+    Query copy() {
+        Query retval = new Query();
+        retval.as_dt = as_dt;
+        retval.as_epq = as_epq;
+        retval.as_eq = as_eq;
+        retval.as_lq = as_lq;
+        retval.as_occt = as_occt;
+        retval.as_oq = as_oq;
+        retval.as_q = as_q;
+        retval.q = q;
+        retval.as_sitesearch = as_sitesearch;
+        retval.sitesearch = sitesearch;
+        retval.sites = sites;
+        retval.client = client;
+        retval.output = output;
+        retval.proxycustom = proxycustom;
+        retval.proxyreload = proxyreload;
+        retval.proxystylesheet = proxystylesheet;
+        retval.access = access;
+        retval.filter = filter;
+        retval.lr = lr;
+        retval.ie = ie;
+        retval.oe = oe;
+        retval.start = start;
+        retval.num = num;
+        retval.numgm = numgm;
+        retval.getfields = getfields;
+        retval.partialfields = new HashMap(partialfields);
+        retval.partialFieldsOr = partialFieldsOr;
+        retval.requiredfields = new HashMap(requiredfields);
+        retval.requiredFieldsOr = requiredFieldsOr;
+        retval.sort = sort;
+        return retval;
+    }
+
     void setAccess(char access) {
         this.access = access;
     }
@@ -247,6 +286,14 @@ class Query {
         this.start = start;
     }
 
+    long getStart() {
+        return start;
+    }
+
+    int getNum() {
+        return num;
+    }
+
     /**
      * Generates the URL string for getting results from the
      * GSA using current state of this object.
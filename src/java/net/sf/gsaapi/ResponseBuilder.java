@@ -28,17 +28,26 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
 import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
+import net.sf.gsaapi.constants.ResponsePart;
+import net.sf.gsaapi.util.SymbolTable;
+
 /**
  * This is the default response builder that the GSAClient will 
  * use in binding the XML response to Java objects.
+ * The same handler also binds the events read by the StAX parser
+ * (see {@link StaxResponseBuilder}).
  * @author Amol S Deshmukh adeshmuk .at inxight .dot com
  */
 public class ResponseBuilder extends DefaultHandler {
@@ -48,6 +57,17 @@ public class ResponseBuilder extends DefaultHandler {
         saxfactory.setValidating(false);
     }
 
+    // idle handlers, each with its own parser, reused across documents
+    private static final Queue IDLE_HANDLERS = new ConcurrentLinkedQueue();
+    private static final AtomicInteger idleHandlerCount = new AtomicInteger();
+    private static final int MAX_IDLE_HANDLERS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    // larger content buffers are not kept by idle handlers
+    private static final int MAX_IDLE_BUFFER = 16 * 1024;
+    // meta, field, param and navigation attribute names, shared across documents
+    static final SymbolTable NAMES = new SymbolTable(1024);
+
+    private SAXParser parser;
+
     private GSASpelling spelling;
     private GSASuggestion currSuggestion;
     private GSAResponse response;
@@ -74,7 +94,25 @@ public class ResponseBuilder extends DefaultHandler {
     private boolean inNavigationResponse = false;
     private boolean inNavigationResult  = false;
 
-    private ResponseBuilder() {}
+    private GSAResultListener resultListener;
+
+    // bit mask of the ResponseParts to bind
+    private int parts = ResponsePart.ALL;
+    // depth inside an element that is being skipped, 0 when binding
+    int skipDepth = 0;
+
+    ResponseBuilder() {}
+
+    void setResultListener(GSAResultListener resultListener) {
+        this.resultListener = resultListener;
+    }
+
+    /**
+     * @param parts the parts to bind, or null for all parts.
+     */
+    void setResponseParts(ResponsePart[] parts) {
+        this.parts = ResponsePart.mask(parts);
+    }
 
     /**
      * intended for internal use by GSAClient.
@@ -83,16 +121,43 @@ public class ResponseBuilder extends DefaultHandler {
      * @return  the GSAResponse instance
      */
     static GSAResponse buildResponse(InputStream istream, String xmlSystemId) {
+        return buildResponse(istream, xmlSystemId, null, null);
+    }
+
+    /**
+     * intended for internal use by GSAClient.
+     * @param istream
+     * @param xmlSystemId
+     * @param resultListener if not null, notified of each result as
+     * soon as it has been parsed.
+     * @return  the GSAResponse instance
+     */
+    static GSAResponse buildResponse(InputStream istream, String xmlSystemId, GSAResultListener resultListener) {
+        return buildResponse(istream, xmlSystemId, null, resultListener);
+    }
+
+    /**
+     * intended for internal use by GSAClient.
+     * @param istream
+     * @param xmlSystemId
+     * @param parts the parts of the response to bind, or null for all.
+     * @param resultListener if not null, notified of each result as
+     * soon as it has been parsed.
+     * @return  the GSAResponse instance
+     */
+    static GSAResponse buildResponse(InputStream istream, String xmlSystemId,
+            ResponsePart[] parts, GSAResultListener resultListener) {
         GSAResponse response = null;
-        ResponseBuilder handler = new ResponseBuilder();
+        ResponseBuilder handler = null;
+        boolean reusable = false;
 
         try {
-            SAXParser parser = null;
-            synchronized (saxfactory) {
-                parser = saxfactory.newSAXParser();
-            }
-            parser.parse(istream, handler, xmlSystemId);
+            handler = acquireHandler();
+            handler.setResultListener(resultListener);
+            handler.setResponseParts(parts);
+            handler.parser.parse(istream, handler, xmlSystemId);
             response = handler.getGSAResponse();
+            reusable = true;
         } catch (Exception e) {
             throw new RuntimeException(e);
         } finally {
@@ -100,10 +165,77 @@ public class ResponseBuilder extends DefaultHandler {
                 if (istream != null) istream.close();
             } catch (IOException ioe) {
             }
+            // a parser that failed mid-document is not trusted for reuse
+            if (reusable) releaseHandler(handler);
         }
         return response;
     }
 
+    /**
+     * takes an idle handler (and its parser) from the pool, or creates
+     * one. Parser creation is the only step serialized on the factory.
+     */
+    private static ResponseBuilder acquireHandler() throws Exception {
+        ResponseBuilder retval = (ResponseBuilder) IDLE_HANDLERS.poll();
+        if (retval != null) {
+            idleHandlerCount.decrementAndGet();
+            return retval;
+        }
+        retval = new ResponseBuilder();
+        synchronized (saxfactory) {
+            retval.parser = saxfactory.newSAXParser();
+        }
+        return retval;
+    }
+
+    private static void releaseHandler(ResponseBuilder handler) {
+        handler.reset();
+        handler.parser.reset();
+        if (idleHandlerCount.incrementAndGet() <= MAX_IDLE_HANDLERS) {
+            IDLE_HANDLERS.offer(handler);
+        } else {
+            idleHandlerCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * drops all state of the last document, so that the handler can be
+     * reused and does not keep the last response reachable.
+     */
+    void reset() {
+        resultListener = null;
+        parts = ResponsePart.ALL;
+        response = null;
+        spelling = null;
+        currSuggestion = null;
+        currResult = null;
+        currOneBoxResponse = null;
+        currOneBoxResult = null;
+        currFieldName = null;
+        currKeymatch = null;
+        resultsList = null;
+        currNavigationAttribute = null;
+        navigationResponse = null;
+        navgationResultList = null;
+        if (contentBuff != null && contentBuff.capacity() > MAX_IDLE_BUFFER) {
+            contentBuff = null;
+        }
+        resetFlags();
+    }
+
+    private void resetFlags() {
+        skipDepth = 0;
+        inSpelling = false;
+        inSynonyms = false;
+        inResult = false;
+        inResponse = false;
+        inOneBoxResult = false;
+        inOneBoxResponse = false;
+        inKeymatchResults = false;
+        inNavigationResponse = false;
+        inNavigationResult = false;
+    }
+
     /**
      * returns the last built response. This is simply a convenience
      * method to avoid having to build the same response over and over.
@@ -115,13 +247,24 @@ public class ResponseBuilder extends DefaultHandler {
         return response;
     }
 
+    /**
+     * overridden resolveEntity from DefaultHandler. External entities
+     * (the google.dtd) are resolved locally by
+     * {@link GSAEntityResolver#getDefault()}.
+     */
+    public InputSource resolveEntity(String publicId, String systemId) throws IOException, SAXException {
+        return GSAEntityResolver.getDefault().resolveEntity(publicId, systemId);
+    }
+
     /**
      * overridden startDocument from DefaultHandler
      */
     public void startDocument() throws SAXException {
         super.startDocument();
+        resetFlags();
         response = new GSAResponse();
-        contentBuff = new StringBuffer();
+        if (contentBuff == null) contentBuff = new StringBuffer();
+        else clearContent();
         resultsList = new ArrayList();
         currResult = new GSAResult();
         currOneBoxResponse = new GSAOneBoxResponse();
@@ -137,7 +280,26 @@ public class ResponseBuilder extends DefaultHandler {
      * overridden startElement from DefaultHandler
      */
     public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
-        int tag = getTagIndex(qName);
+        if (skipDepth > 0) {
+            skipDepth++;
+            return;
+        }
+        startElement(getTagIndex(qName), attributes);
+    }
+
+    /**
+     * binds the start of an element whose name has already been
+     * resolved to its tag index.
+     */
+    void startElement(int tag, Attributes attributes) {
+        if (skipDepth > 0) {
+            skipDepth++;
+            return;
+        }
+        if (isSkipped(tag)) {
+            skipDepth = 1;
+            return;
+        }
         inResponse = inResponse || (tag == RES); // inside response element
         inResult = inResponse && (inResult || (tag == R)); // inside results element
         inNavigationResponse = inNavigationResponse || (tag == PARM); // inside PARM element i.e Navigation Response
@@ -160,12 +322,12 @@ public class ResponseBuilder extends DefaultHandler {
             currResult.setMimeType(mimeType);
             break;
         case PARAM:
-            String name = attributes.getValue("name");
+            String name = NAMES.intern(attributes.getValue("name"));
             String value = attributes.getValue("value");
             response.putParam(name, value);
             break;
         case FIELD:
-            currFieldName = attributes.getValue("name");
+            currFieldName = NAMES.intern(attributes.getValue("name"));
             break;
         case C:
             if (inResult) {
@@ -181,12 +343,12 @@ public class ResponseBuilder extends DefaultHandler {
             }
             break;
         case FS: 
-            String fieldName = attributes.getValue("NAME");
+            String fieldName = NAMES.intern(attributes.getValue("NAME"));
             String fieldValue = attributes.getValue("VALUE");
             currResult.addField(fieldName, fieldValue);
             break;
         case MT:
-            String metaName = attributes.getValue("N");
+            String metaName = NAMES.intern(attributes.getValue("N"));
             String metaValue = attributes.getValue("V");
             currResult.addMeta(metaName, metaValue);
             break;
@@ -219,7 +381,7 @@ public class ResponseBuilder extends DefaultHandler {
             break;
 
         case PMT:
-            String attrName = attributes.getValue("NM");
+            String attrName = NAMES.intern(attributes.getValue("NM"));
             String attrLabel = attributes.getValue("DN");
             String attrType = attributes.getValue("T");
             currNavigationAttribute.setName(attrName);
@@ -251,14 +413,38 @@ public class ResponseBuilder extends DefaultHandler {
      */
     public void characters(char[] ch, int start, int length)
             throws SAXException {
+        if (skipDepth > 0) return;
         contentBuff.append(ch, start, length);
     }
 
+    /**
+     * appends already decoded text to the content of the current element.
+     */
+    void characters(CharSequence text) {
+        if (skipDepth > 0) return;
+        contentBuff.append(text);
+    }
+
     /**
      * overridden endElement from DefaultHandler
      */
     public void endElement(String uri, String localName, String qName) throws SAXException {
-        int tag = getTagIndex(qName);
+        if (skipDepth > 0) {
+            skipDepth--;
+            return;
+        }
+        endElement(getTagIndex(qName));
+    }
+
+    /**
+     * binds the end of an element whose name has already been
+     * resolved to its tag index.
+     */
+    void endElement(int tag) {
+        if (skipDepth > 0) {
+            skipDepth--;
+            return;
+        }
         if (inOneBoxResult) {
             doOneBoxResult(tag);
         } else if (inOneBoxResponse) {
@@ -282,6 +468,55 @@ public class ResponseBuilder extends DefaultHandler {
         }
     }
     
+    /**
+     * whether the element, and everything inside it, is left unbound.
+     */
+    private boolean isSkipped(int tag) {
+        if (parts == ResponsePart.ALL) return false;
+        int part;
+        switch (tag) {
+        case T:
+            part = ResponsePart.TITLE.getValue();
+            break;
+        case S:
+            part = ResponsePart.SUMMARY.getValue();
+            break;
+        case MT:
+            part = ResponsePart.METAS.getValue();
+            break;
+        case FS:
+            part = ResponsePart.FIELDS.getValue();
+            break;
+        case C:
+            part = ResponsePart.CACHE.getValue();
+            break;
+        case LANG:
+            part = ResponsePart.LANGUAGE.getValue();
+            break;
+        case OBRES:
+            part = ResponsePart.ONEBOX.getValue();
+            break;
+        case GM:
+            part = ResponsePart.KEYMATCHES.getValue();
+            break;
+        case SPELLING:
+            part = ResponsePart.SPELLING.getValue();
+            break;
+        case SYNONYMS:
+            part = ResponsePart.SYNONYMS.getValue();
+            break;
+        case PARM:
+            part = ResponsePart.NAVIGATION.getValue();
+            break;
+        case PARAM:
+            part = ResponsePart.PARAMS.getValue();
+            break;
+        default:
+            return false;
+        }
+        return (parts & part) == 0;
+    }
+
     private void clearContent() {
         if (contentBuff.length() > 0) contentBuff.delete(0, contentBuff.length());
     }
@@ -325,6 +560,7 @@ public class ResponseBuilder extends DefaultHandler {
         switch (tag) {
         case R:
             resultsList.add(currResult);
+            if (resultListener != null) resultListener.resultParsed(currResult);
             currResult = new GSAResult();
             inResult = false;
             break;
@@ -447,6 +683,120 @@ public class ResponseBuilder extends DefaultHandler {
         return retval;
     }
 
+    /**
+     * same as getTagIndex(String) for a name given as (ASCII) bytes,
+     * without creating a String. Must be kept in line with INDEX_MAP.
+     * @return the tag index, or -1 for an unknown name
+     */
+    static int getTagIndex(byte[] b, int off, int len) {
+        switch (len) {
+        case 1:
+            switch (b[off]) {
+            case 'Q': return Q;
+            case 'M': return M;
+            case 'R': return R;
+            case 'U': return U;
+            case 'T': return T;
+            case 'S': return S;
+            case 'C': return C;
+            }
+            return -1;
+        case 2:
+            switch ((b[off] << 8) | b[off + 1]) {
+            case 'T' << 8 | 'M': return TM;
+            case 'F' << 8 | 'I': return FI;
+            case 'N' << 8 | 'B': return NB;
+            case 'P' << 8 | 'U': return PU;
+            case 'N' << 8 | 'U': return NU;
+            case 'U' << 8 | 'E': return UE;
+            case 'R' << 8 | 'K': return RK;
+            case 'F' << 8 | 'S': return FS;
+            case 'M' << 8 | 'T': return MT;
+            case 'G' << 8 | 'M': return GM;
+            case 'G' << 8 | 'L': return GL;
+            case 'G' << 8 | 'D': return GD;
+            case 'P' << 8 | 'C': return PC;
+            case 'P' << 8 | 'V': return PV;
+            }
+            return -1;
+        case 3:
+            switch (b[off]) {
+            case 'G': return matches(b, off, GSP_BYTES) ? GSP : -1;
+            case 'R': return matches(b, off, RES_BYTES) ? RES : -1;
+            case 'P': return matches(b, off, PMT_BYTES) ? PMT : -1;
+            }
+            return -1;
+        case 4:
+            switch (b[off]) {
+            case 'L': return matches(b, off, LANG_BYTES) ? LANG : -1;
+            case 'P': return matches(b, off, PARM_BYTES) ? PARM : -1;
+            }
+            return -1;
+        case 5:
+            switch (b[off]) {
+            case 'P': return matches(b, off, PARAM_BYTES) ? PARAM : -1;
+            case 'O': return matches(b, off, OBRES_BYTES) ? OBRES : -1;
+            case 'F': return matches(b, off, FIELD_BYTES) ? FIELD : -1;
+            }
+            return -1;
+        case 7:
+            if (matches(b, off, URLTEXT_BYTES)) return URLTEXT;
+            return matches(b, off, URLLINK_BYTES) ? URLLINK : -1;
+        case 8:
+            switch (b[off]) {
+            case 'p': return matches(b, off, PROVIDER_BYTES) ? PROVIDER : -1;
+            case 'S':
+                if (matches(b, off, SPELLING_BYTES)) return SPELLING;
+                return matches(b, off, SYNONYMS_BYTES) ? SYNONYMS : -1;
+            }
+            return -1;
+        case 10:
+            switch (b[off]) {
+            case 'S': return matches(b, off, SUGGESTION_BYTES) ? SUGGESTION : -1;
+            case 'O': return matches(b, off, ONE_SYNONYM_BYTES) ? ONE_SYNONYM : -1;
+            }
+            return -1;
+        case 12:
+            return matches(b, off, IMAGE_SOURCE_BYTES) ? IMAGE_SOURCE : -1;
+        case 13:
+            return matches(b, off, MODULE_RESULT_BYTES) ? MODULE_RESULT : -1;
+        }
+        return -1;
+    }
+
+    private static boolean matches(byte[] b, int off, byte[] name) {
+        for (int i = 0; i < name.length; i++) {
+            if (b[off + i] != name[i]) return false;
+        }
+        return true;
+    }
+
+    private static byte[] ascii(String name) {
+        byte[] retval = new byte[name.length()];
+        for (int i = 0; i < retval.length; i++) {
+            retval[i] = (byte) name.charAt(i);
+        }
+        return retval;
+    }
+
+    private static final byte[] GSP_BYTES = ascii("GSP");
+    private static final byte[] RES_BYTES = ascii("RES");
+    private static final byte[] PMT_BYTES = ascii("PMT");
+    private static final byte[] LANG_BYTES = ascii("LANG");
+    private static final byte[] PARM_BYTES = ascii("PARM");
+    private static final byte[] PARAM_BYTES = ascii("PARAM");
+    private static final byte[] OBRES_BYTES = ascii("OBRES");
+    private static final byte[] FIELD_BYTES = ascii("Field");
+    private static final byte[] URLTEXT_BYTES = ascii("urlText");
+    private static final byte[] URLLINK_BYTES = ascii("urlLink");
+    private static final byte[] PROVIDER_BYTES = ascii("provider");
+    private static final byte[] SPELLING_BYTES = ascii("Spelling");
+    private static final byte[] SYNONYMS_BYTES = ascii("Synonyms");
+    private static final byte[] SUGGESTION_BYTES = ascii("Suggestion");
+    private static final byte[] ONE_SYNONYM_BYTES = ascii("OneSynonym");
+    private static final byte[] IMAGE_SOURCE_BYTES = ascii("IMAGE_SOURCE");
+    private static final byte[] MODULE_RESULT_BYTES = ascii("MODULE_RESULT");
+
 
     private static final int GSP = 1;
     private static final int TM = 2;
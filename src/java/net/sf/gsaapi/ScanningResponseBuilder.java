@@ -0,0 +1,566 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+
+import net.sf.gsaapi.constants.ResponsePart;
+
+/**
+ * A scanner specialized for GSA XML results. It works directly on the
+ * UTF-8 bytes of the document: element names are resolved to tag
+ * indexes with a switch over the bytes (see
+ * {@link ResponseBuilder#getTagIndex(byte[], int, int)}), attribute
+ * values are only decoded when the {@link ResponseBuilder} asks for them
+ * and text is only decoded when it ends up in the content of an element.
+ * The events are fed to a ResponseBuilder, so the document is bound
+ * exactly as by the SAX parser.
+ * <br/>
+ * Anything the scanner does not expect (another encoding, a DTD internal
+ * subset, an entity other than the predefined ones, malformed markup)
+ * makes it give up and parse the document again with the SAX parser,
+ * which then binds it or reports the error.
+ * <br/>
+ * The document is read completely before it is scanned, so a result
+ * listener is only notified once the whole response has been read.
+ * Intended for internal use; see {@link GSAResponseParser#SCANNER}.
+ */
+class ScanningResponseBuilder {
+
+    // documents handed over to the SAX parser, for the tests
+    static final AtomicLong fallbackCount = new AtomicLong();
+
+    private static final int INITIAL_BUFFER = 16 * 1024;
+    // larger buffers are not kept for the next document of the thread
+    private static final int MAX_KEPT_BUFFER = 256 * 1024;
+    private static final ThreadLocal BUFFERS = new ThreadLocal();
+    private static final int MAX_DEPTH = 64;
+
+    private final byte[] buf;
+    private final int len;
+    private final ResponseBuilder handler;
+    private final StringBuilder text = new StringBuilder(256);
+    private final ByteAttributes attributes = new ByteAttributes();
+    // offsets and lengths of the names of the open elements
+    private final int[] openNames = new int[2 * MAX_DEPTH];
+    private int depth;
+    private int pos;
+
+    private ScanningResponseBuilder(byte[] buf, int len, ResponseBuilder handler) {
+        this.buf = buf;
+        this.len = len;
+        this.handler = handler;
+    }
+
+    /**
+     * @param istream
+     * @param xmlSystemId
+     * @param parts the parts of the response to bind, or null for all.
+     * @param resultListener if not null, notified of each result once
+     * the response has been read.
+     * @return the GSAResponse instance
+     */
+    static GSAResponse buildResponse(InputStream istream, String xmlSystemId,
+            ResponsePart[] parts, GSAResultListener resultListener) {
+        byte[] buf;
+        int len;
+        try {
+            buf = (byte[]) BUFFERS.get();
+            if (buf == null) buf = new byte[INITIAL_BUFFER];
+            len = 0;
+            for (int n; (n = istream.read(buf, len, buf.length - len)) >= 0;) {
+                len += n;
+                if (len == buf.length) {
+                    byte[] larger = new byte[buf.length * 2];
+                    System.arraycopy(buf, 0, larger, 0, len);
+                    buf = larger;
+                }
+            }
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+        } finally {
+            try {
+                if (istream != null) istream.close();
+            } catch (IOException ioe) {
+            }
+        }
+        // the buffer is taken from the thread while in use
+        BUFFERS.set(null);
+        try {
+            ResponseBuilder handler = new ResponseBuilder();
+            handler.setResponseParts(parts);
+            GSAResponse response;
+            try {
+                response = new ScanningResponseBuilder(buf, len, handler).scan();
+            } catch (Unexpected u) {
+                fallbackCount.incrementAndGet();
+                return ResponseBuilder.buildResponse(
+                        new ByteArrayInputStream(buf, 0, len), xmlSystemId, parts, resultListener);
+            } catch (SAXException se) {
+                throw new RuntimeException(se);
+            }
+            if (resultListener != null) {
+                List results = response.getResults();
+                for (int i = 0, iSize = results.size(); i < iSize; i++) {
+                    resultListener.resultParsed((GSAResult) results.get(i));
+                }
+            }
+            return response;
+        } finally {
+            if (buf.length <= MAX_KEPT_BUFFER) BUFFERS.set(buf);
+        }
+    }
+
+    /**
+     * thrown to hand the document over to the SAX parser.
+     */
+    private static class Unexpected extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Unexpected() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final Unexpected UNEXPECTED = new Unexpected();
+
+    private GSAResponse scan() throws SAXException {
+        handler.startDocument();
+        // a UTF-8 byte order mark
+        if (len >= 3 && (buf[0] & 0xff) == 0xef && (buf[1] & 0xff) == 0xbb && (buf[2] & 0xff) == 0xbf) {
+            pos = 3;
+        }
+        if (startsWith("<?xml")) {
+            declaration();
+        }
+        boolean rootSeen = false;
+        // start of the text since the last markup
+        int textStart = pos;
+        while (pos < len) {
+            if (buf[pos] != '<') {
+                pos++;
+                continue;
+            }
+            int textEnd = pos;
+            if (depth == 0 && !isWhitespace(textStart, textEnd)) throw UNEXPECTED;
+            byte next = pos + 1 < len ? buf[pos + 1] : 0;
+            if (next == '/') {
+                if (textEnd > textStart) characters(textStart, textEnd);
+                endTag();
+            } else if (next == '?') {
+                if (textEnd > textStart) characters(textStart, textEnd);
+                pos = indexOf("?>", pos + 2) + 2;
+            } else if (next == '!') {
+                if (textEnd > textStart) characters(textStart, textEnd);
+                if (startsWith("<!--")) {
+                    pos = indexOf("-->", pos + 4) + 3;
+                } else if (startsWith("<![CDATA[") && depth > 0) {
+                    int end = indexOf("]]>", pos + 9);
+                    if (handler.skipDepth == 0) {
+                        text.setLength(0);
+                        decode(pos + 9, end, false, false);
+                        handler.characters(text);
+                    }
+                    pos = end + 3;
+                } else if (startsWith("<!DOCTYPE") && !rootSeen) {
+                    doctype();
+                } else {
+                    throw UNEXPECTED;
+                }
+            } else {
+                // text followed by a start tag is never bound
+                if (depth == 0) {
+                    if (rootSeen) throw UNEXPECTED;
+                    rootSeen = true;
+                }
+                startTag();
+            }
+            textStart = pos;
+        }
+        if (!rootSeen || depth != 0 || !isWhitespace(textStart, len)) throw UNEXPECTED;
+        handler.endDocument();
+        return handler.getGSAResponse();
+    }
+
+    /**
+     * checks the XML declaration for an encoding other than UTF-8.
+     */
+    private void declaration() {
+        int end = indexOf("?>", pos);
+        int encoding = indexOf("encoding", pos, end);
+        if (encoding >= 0) {
+            int i = encoding + 8;
+            while (i < end && (isSpace(buf[i]) || buf[i] == '=')) i++;
+            if (i >= end || (buf[i] != '"' && buf[i] != '\'')) throw UNEXPECTED;
+            byte quote = buf[i++];
+            int valueStart = i;
+            while (i < end && buf[i] != quote) i++;
+            String name = new String(buf, valueStart, i - valueStart, StandardCharsets.ISO_8859_1);
+            if (!"UTF-8".equalsIgnoreCase(name) && !"UTF8".equalsIgnoreCase(name)) throw UNEXPECTED;
+        }
+        pos = end + 2;
+    }
+
+    /**
+     * skips a document type declaration without an internal subset.
+     */
+    private void doctype() {
+        int i = pos + 9;
+        byte quote = 0;
+        for (; i < len; i++) {
+            byte b = buf[i];
+            if (quote != 0) {
+                if (b == quote) quote = 0;
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '[') {
+                throw UNEXPECTED;
+            } else if (b == '>') {
+                pos = i + 1;
+                return;
+            }
+        }
+        throw UNEXPECTED;
+    }
+
+    private void startTag() {
+        int nameStart = pos + 1;
+        int i = nameStart;
+        while (i < len && !isNameEnd(buf[i])) i++;
+        int nameLen = i - nameStart;
+        if (nameLen == 0 || i >= len) throw UNEXPECTED;
+        attributes.clear();
+        boolean empty = false;
+        while (true) {
+            int spaceStart = i;
+            while (i < len && isSpace(buf[i])) i++;
+            if (i >= len) throw UNEXPECTED;
+            byte b = buf[i];
+            if (b == '>') {
+                i++;
+                break;
+            }
+            if (b == '/') {
+                if (i + 1 >= len || buf[i + 1] != '>') throw UNEXPECTED;
+                i += 2;
+                empty = true;
+                break;
+            }
+            // attributes are separated by whitespace
+            if (i == spaceStart) throw UNEXPECTED;
+            int attrStart = i;
+            while (i < len && !isNameEnd(buf[i])) i++;
+            int attrLen = i - attrStart;
+            while (i < len && isSpace(buf[i])) i++;
+            if (attrLen == 0 || i >= len || buf[i] != '=') throw UNEXPECTED;
+            i++;
+            while (i < len && isSpace(buf[i])) i++;
+            if (i >= len || (buf[i] != '"' && buf[i] != '\'')) throw UNEXPECTED;
+            byte quote = buf[i++];
+            int valueStart = i;
+            while (i < len && buf[i] != quote) {
+                if (buf[i] == '<') throw UNEXPECTED;
+                i++;
+            }
+            if (i >= len) throw UNEXPECTED;
+            attributes.add(attrStart, attrLen, valueStart, i - valueStart);
+            i++;
+        }
+        pos = i;
+        int tag = handler.skipDepth > 0 ? -1 : ResponseBuilder.getTagIndex(buf, nameStart, nameLen);
+        handler.startElement(tag, attributes);
+        if (empty) {
+            handler.endElement(tag);
+        } else {
+            if (depth == MAX_DEPTH) throw UNEXPECTED;
+            openNames[2 * depth] = nameStart;
+            openNames[2 * depth + 1] = nameLen;
+            depth++;
+        }
+    }
+
+    private void endTag() {
+        int nameStart = pos + 2;
+        int i = nameStart;
+        while (i < len && !isNameEnd(buf[i])) i++;
+        int nameLen = i - nameStart;
+        while (i < len && isSpace(buf[i])) i++;
+        if (i >= len || buf[i] != '>' || depth == 0) throw UNEXPECTED;
+        depth--;
+        int openStart = openNames[2 * depth];
+        if (openNames[2 * depth + 1] != nameLen) throw UNEXPECTED;
+        for (int k = 0; k < nameLen; k++) {
+            if (buf[openStart + k] != buf[nameStart + k]) throw UNEXPECTED;
+        }
+        pos = i + 1;
+        int tag = handler.skipDepth > 0 ? -1 : ResponseBuilder.getTagIndex(buf, nameStart, nameLen);
+        handler.endElement(tag);
+    }
+
+    /**
+     * decodes text that ends the content of an element.
+     */
+    private void characters(int start, int end) {
+        if (handler.skipDepth > 0) return;
+        text.setLength(0);
+        decode(start, end, true, false);
+        handler.characters(text);
+    }
+
+    /**
+     * decodes UTF-8 bytes into <code>text</code>, normalizing line ends.
+     * @param references whether character and entity references are expanded
+     * @param attribute whether whitespace is normalized as in an attribute value
+     */
+    private void decode(int start, int end, boolean references, boolean attribute) {
+        StringBuilder out = text;
+        for (int i = start; i < end; i++) {
+            int b = buf[i];
+            if (b >= 0) {
+                if (b >= 0x20 && b != '&') {
+                    out.append((char) b);
+                } else if (b == '&' && references) {
+                    i = reference(i, end);
+                } else if (b == '\r') {
+                    if (i + 1 < end && buf[i + 1] == '\n') i++;
+                    out.append(attribute ? ' ' : '\n');
+                } else if (b == '\n' || b == '\t') {
+                    out.append(attribute ? ' ' : (char) b);
+                } else if (b == '&') {
+                    out.append('&');
+                } else {
+                    throw UNEXPECTED;
+                }
+                continue;
+            }
+            // multi-byte sequence
+            b &= 0xff;
+            int cp;
+            int extra;
+            if ((b & 0xe0) == 0xc0) {
+                cp = b & 0x1f;
+                extra = 1;
+            } else if ((b & 0xf0) == 0xe0) {
+                cp = b & 0x0f;
+                extra = 2;
+            } else if ((b & 0xf8) == 0xf0) {
+                cp = b & 0x07;
+                extra = 3;
+            } else {
+                throw UNEXPECTED;
+            }
+            if (i + extra >= end) throw UNEXPECTED;
+            for (int k = 0; k < extra; k++) {
+                int c = buf[++i] & 0xff;
+                if ((c & 0xc0) != 0x80) throw UNEXPECTED;
+                cp = (cp << 6) | (c & 0x3f);
+            }
+            if ((extra == 1 && cp < 0x80) || (extra == 2 && cp < 0x800) || (extra == 3 && cp < 0x10000)
+                    || !isXmlChar(cp)) {
+                throw UNEXPECTED;
+            }
+            out.appendCodePoint(cp);
+        }
+    }
+
+    /**
+     * expands the reference starting at <code>amp</code>.
+     * @return the index of the terminating ';'
+     */
+    private int reference(int amp, int end) {
+        int semi = amp + 1;
+        while (semi < end && semi - amp <= 10 && buf[semi] != ';') semi++;
+        if (semi >= end || buf[semi] != ';') throw UNEXPECTED;
+        int nameStart = amp + 1;
+        int nameLen = semi - nameStart;
+        if (nameLen > 1 && buf[nameStart] == '#') {
+            int cp = 0;
+            boolean hex = buf[nameStart + 1] == 'x';
+            int i = nameStart + (hex ? 2 : 1);
+            if (i == semi) throw UNEXPECTED;
+            for (; i < semi; i++) {
+                int d = Character.digit((char) buf[i], hex ? 16 : 10);
+                if (d < 0) throw UNEXPECTED;
+                cp = cp * (hex ? 16 : 10) + d;
+                if (cp > 0x10ffff) throw UNEXPECTED;
+            }
+            if (!isXmlChar(cp) && cp != '\t' && cp != '\n' && cp != '\r') throw UNEXPECTED;
+            text.appendCodePoint(cp);
+            return semi;
+        }
+        char c;
+        if (nameLen == 2 && buf[nameStart] == 'l' && buf[nameStart + 1] == 't') c = '<';
+        else if (nameLen == 2 && buf[nameStart] == 'g' && buf[nameStart + 1] == 't') c = '>';
+        else if (nameLen == 3 && buf[nameStart] == 'a' && buf[nameStart + 1] == 'm' && buf[nameStart + 2] == 'p') c = '&';
+        else if (nameLen == 4 && buf[nameStart] == 'q' && buf[nameStart + 1] == 'u'
+                && buf[nameStart + 2] == 'o' && buf[nameStart + 3] == 't') c = '"';
+        else if (nameLen == 4 && buf[nameStart] == 'a' && buf[nameStart + 1] == 'p'
+                && buf[nameStart + 2] == 'o' && buf[nameStart + 3] == 's') c = '\'';
+        else throw UNEXPECTED;
+        text.append(c);
+        return semi;
+    }
+
+    private static boolean isXmlChar(int cp) {
+        return (cp >= 0x20 && cp <= 0xd7ff) || (cp >= 0xe000 && cp <= 0xfffd) || (cp >= 0x10000 && cp <= 0x10ffff);
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\n' || b == '\t' || b == '\r';
+    }
+
+    private static boolean isNameEnd(byte b) {
+        return b == '>' || b == '/' || b == '=' || isSpace(b);
+    }
+
+    private boolean isWhitespace(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!isSpace(buf[i])) return false;
+        }
+        return true;
+    }
+
+    private boolean startsWith(String s) {
+        if (pos + s.length() > len) return false;
+        for (int i = 0; i < s.length(); i++) {
+            if (buf[pos + i] != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private int indexOf(String s, int from) {
+        int retval = indexOf(s, from, len);
+        if (retval < 0) throw UNEXPECTED;
+        return retval;
+    }
+
+    private int indexOf(String s, int from, int to) {
+        char first = s.charAt(0);
+        outer:
+        for (int i = from, last = to - s.length(); i <= last; i++) {
+            if (buf[i] != first) continue;
+            for (int k = 1; k < s.length(); k++) {
+                if (buf[i + k] != s.charAt(k)) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * the attributes of the current start tag, as offsets into the
+     * document. Values are decoded when asked for.
+     */
+    private class ByteAttributes implements Attributes {
+        private int[] offsets = new int[4 * 8];
+        private int count;
+
+        void clear() {
+            count = 0;
+        }
+
+        void add(int nameStart, int nameLen, int valueStart, int valueLen) {
+            if (4 * count == offsets.length) {
+                int[] larger = new int[offsets.length * 2];
+                System.arraycopy(offsets, 0, larger, 0, offsets.length);
+                offsets = larger;
+            }
+            int k = 4 * count++;
+            offsets[k] = nameStart;
+            offsets[k + 1] = nameLen;
+            offsets[k + 2] = valueStart;
+            offsets[k + 3] = valueLen;
+        }
+
+        public int getLength() {
+            return count;
+        }
+
+        public String getURI(int index) {
+            return "";
+        }
+
+        public String getLocalName(int index) {
+            return getQName(index);
+        }
+
+        public String getQName(int index) {
+            if (index < 0 || index >= count) return null;
+            return new String(buf, offsets[4 * index], offsets[4 * index + 1],
+                    StandardCharsets.UTF_8);
+        }
+
+        public String getType(int index) {
+            return index < 0 || index >= count ? null : "CDATA";
+        }
+
+        public String getValue(int index) {
+            if (index < 0 || index >= count) return null;
+            int start = offsets[4 * index + 2];
+            text.setLength(0);
+            decode(start, start + offsets[4 * index + 3], true, true);
+            return text.toString();
+        }
+
+        public int getIndex(String uri, String localName) {
+            return getIndex(localName);
+        }
+
+        public int getIndex(String qName) {
+            outer:
+            for (int i = 0; i < count; i++) {
+                int start = offsets[4 * i];
+                if (offsets[4 * i + 1] != qName.length()) continue;
+                for (int k = 0; k < qName.length(); k++) {
+                    if (buf[start + k] != qName.charAt(k)) continue outer;
+                }
+                return i;
+            }
+            return -1;
+        }
+
+        public String getType(String uri, String localName) {
+            return getType(localName);
+        }
+
+        public String getType(String qName) {
+            return getType(getIndex(qName));
+        }
+
+        public String getValue(String uri, String localName) {
+            return getValue(localName);
+        }
+
+        public String getValue(String qName) {
+            return getValue(getIndex(qName));
+        }
+    }
+}
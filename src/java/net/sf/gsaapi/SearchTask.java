@@ -0,0 +1,113 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A search running on behalf of one of the asynchronous GSAClient
+ * methods. Completing the future by other means (cancellation or an
+ * expired deadline) aborts the task: the running thread is interrupted
+ * and the next read from the response stream fails, which stops the
+ * parse and releases the connection.
+ * Intended for internal use only.
+ */
+abstract class SearchTask<T> implements Runnable {
+
+    final CompletableFuture<T> future = new CompletableFuture<T>();
+    private Thread runner;
+    private volatile boolean aborted;
+
+    /**
+     * performs the search on the calling thread.
+     * @return the value to complete the future with.
+     */
+    abstract T execute() throws Exception;
+
+    public void run() {
+        synchronized (this) {
+            if (aborted || future.isDone()) return;
+            runner = Thread.currentThread();
+        }
+        try {
+            T value = execute();
+            if (!future.complete(value) && value instanceof Closeable) {
+                // cancelled or timed out while running: nobody will read it
+                ((Closeable) value).close();
+            }
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        } finally {
+            synchronized (this) {
+                runner = null;
+                // clear an interrupt delivered by abort() after the search completed
+                if (aborted) Thread.interrupted();
+            }
+        }
+    }
+
+    /**
+     * wraps the response stream so that reads fail once the task
+     * has been aborted.
+     * @param in the stream just opened by the task
+     * @return the stream to read the response from
+     * @throws IOException if the task has already been aborted
+     */
+    InputStream attach(InputStream in) throws IOException {
+        checkAborted(in);
+        return new FilterInputStream(in) {
+            public int read() throws IOException {
+                checkAborted(null);
+                return super.read();
+            }
+            public int read(byte[] b, int off, int len) throws IOException {
+                checkAborted(null);
+                return super.read(b, off, len);
+            }
+        };
+    }
+
+    private void checkAborted(InputStream toClose) throws IOException {
+        if (aborted) {
+            if (toClose != null) toClose.close();
+            throw new InterruptedIOException("Search aborted");
+        }
+    }
+
+    boolean isAborted() {
+        return aborted;
+    }
+
+    void abort() {
+        synchronized (this) {
+            if (aborted) return;
+            aborted = true;
+            if (runner != null) runner.interrupt();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.xml.sax.Attributes;
+
+import net.sf.gsaapi.constants.ResponsePart;
+
+/**
+ * Reads the GSA XML results with a StAX XMLStreamReader and feeds the
+ * events to a {@link ResponseBuilder}, so that both parsers bind the
+ * document in exactly the same way.
+ * Intended for internal use; see {@link GSAResponseParser#STAX}.
+ */
+class StaxResponseBuilder {
+
+    private static final XMLInputFactory staxfactory = XMLInputFactory.newInstance();
+    static {
+        staxfactory.setProperty(XMLInputFactory.IS_VALIDATING, Boolean.FALSE);
+        staxfactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+        staxfactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+        staxfactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        staxfactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    }
+
+    private StaxResponseBuilder() {}
+
+    /**
+     * @param istream
+     * @param xmlSystemId
+     * @param parts the parts of the response to bind, or null for all.
+     * @param resultListener if not null, notified of each result as
+     * soon as it has been parsed.
+     * @return the GSAResponse instance
+     */
+    static GSAResponse buildResponse(InputStream istream, String xmlSystemId,
+            ResponsePart[] parts, GSAResultListener resultListener) {
+        GSAResponse response = null;
+        ResponseBuilder handler = new ResponseBuilder();
+        handler.setResultListener(resultListener);
+        handler.setResponseParts(parts);
+        XMLStreamReader reader = null;
+        try {
+            reader = staxfactory.createXMLStreamReader(xmlSystemId, istream);
+            ReaderAttributes attributes = new ReaderAttributes(reader);
+            handler.startDocument();
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (handler.skipDepth > 0) {
+                    // inside an unrequested part: only track the depth,
+                    // without materializing names or text
+                    if (event == XMLStreamConstants.START_ELEMENT) handler.skipDepth++;
+                    else if (event == XMLStreamConstants.END_ELEMENT) handler.skipDepth--;
+                    continue;
+                }
+                switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    String startName = reader.getLocalName();
+                    handler.startElement(null, startName, startName, attributes);
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    handler.characters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    String endName = reader.getLocalName();
+                    handler.endElement(null, endName, endName);
+                    break;
+                }
+            }
+            handler.endDocument();
+            response = handler.getGSAResponse();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            try {
+                if (reader != null) reader.close();
+            } catch (Exception e) {
+            }
+            try {
+                if (istream != null) istream.close();
+            } catch (IOException ioe) {
+            }
+        }
+        return response;
+    }
+
+    /**
+     * SAX Attributes view of the attributes of the current
+     * START_ELEMENT of the reader.
+     */
+    private static class ReaderAttributes implements Attributes {
+        private final XMLStreamReader reader;
+
+        ReaderAttributes(XMLStreamReader reader) {
+            this.reader = reader;
+        }
+
+        public int getLength() {
+            return reader.getAttributeCount();
+        }
+
+        public String getURI(int index) {
+            String uri = reader.getAttributeNamespace(index);
+            return uri == null ? "" : uri;
+        }
+
+        public String getLocalName(int index) {
+            return reader.getAttributeLocalName(index);
+        }
+
+        public String getQName(int index) {
+            return reader.getAttributeLocalName(index);
+        }
+
+        public String getType(int index) {
+            return reader.getAttributeType(index);
+        }
+
+        public String getValue(int index) {
+            return reader.getAttributeValue(index);
+        }
+
+        public int getIndex(String uri, String localName) {
+            return getIndex(localName);
+        }
+
+        public int getIndex(String qName) {
+            for (int i = 0, iSize = reader.getAttributeCount(); i < iSize; i++) {
+                if (qName.equals(reader.getAttributeLocalName(i))) return i;
+            }
+            return -1;
+        }
+
+        public String getType(String uri, String localName) {
+            return getType(localName);
+        }
+
+        public String getType(String qName) {
+            int index = getIndex(qName);
+            return index < 0 ? null : getType(index);
+        }
+
+        public String getValue(String uri, String localName) {
+            return getValue(localName);
+        }
+
+        public String getValue(String qName) {
+            int index = getIndex(qName);
+            return index < 0 ? null : getValue(index);
+        }
+    }
+}
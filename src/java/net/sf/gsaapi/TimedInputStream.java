@@ -0,0 +1,88 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import net.sf.gsaapi.constants.SearchPhase;
+
+/**
+ * A response body that adds the time spent in its reads to the TRANSFER
+ * phase of its timings, and counts the bytes read. It wraps the body
+ * as the parser reads it, after any decompression, so the time spent
+ * inflating a compressed body counts as TRANSFER rather than PARSE.
+ * Intended for internal use by GSAClient.
+ */
+class TimedInputStream extends FilterInputStream {
+
+    private final GSATimings timings;
+    private long bytes;
+
+    TimedInputStream(InputStream in, GSATimings timings) {
+        super(in);
+        this.timings = timings;
+    }
+
+    GSATimings getTimings() {
+        return timings;
+    }
+
+    long getBytes() {
+        return bytes;
+    }
+
+    public int read() throws IOException {
+        long start = System.nanoTime();
+        try {
+            int retval = in.read();
+            if (retval >= 0) bytes++;
+            return retval;
+        } finally {
+            timings.add(SearchPhase.TRANSFER, System.nanoTime() - start);
+        }
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        try {
+            int retval = in.read(b, off, len);
+            if (retval > 0) bytes += retval;
+            return retval;
+        } finally {
+            timings.add(SearchPhase.TRANSFER, System.nanoTime() - start);
+        }
+    }
+
+    public long skip(long n) throws IOException {
+        long start = System.nanoTime();
+        try {
+            long retval = in.skip(n);
+            bytes += retval;
+            return retval;
+        } finally {
+            timings.add(SearchPhase.TRANSFER, System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi.constants;
+
+/**
+ * This class is a Java2 style enumeration implementation.
+ * Each value is a state of the circuit breaker of a GSAClient (see
+ * {@link net.sf.gsaapi.GSAClient#setCircuitBreaker(int, long, java.util.concurrent.TimeUnit)}).
+ */
+public final class CircuitState {
+
+    /**
+     * searches are sent to the appliance
+     */
+    public static final CircuitState CLOSED = new CircuitState("closed");
+
+    /**
+     * searches fail fast without being sent
+     */
+    public static final CircuitState OPEN = new CircuitState("open");
+
+    /**
+     * a single trial search is let through; its outcome closes or
+     * re-opens the circuit
+     */
+    public static final CircuitState HALF_OPEN = new CircuitState("half-open");
+
+    private String value;
+
+    private CircuitState(String value) {
+        this.value = value;
+    }
+
+    public int hashCode() {
+        return value.hashCode();
+    }
+
+    public boolean equals(Object o) {
+        boolean retval = false;
+        if (o != null && o instanceof CircuitState) {
+            CircuitState other = (CircuitState) o;
+            retval = other.value.equals(this.value);
+        }
+        return retval;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String toString() {
+        return value;
+    }
+}
@@ -0,0 +1,141 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi.constants;
+
+/**
+ * This class is a Java2 style enumeration implementation.
+ * Each value names an optional part of the GSA XML results. A query can
+ * be restricted to the parts the caller actually reads (see
+ * {@link net.sf.gsaapi.GSAQuery#setResponseParts(ResponsePart[])}); the
+ * response parser then skips the elements of the other parts instead of
+ * binding them. The header (search time, query, result counts and
+ * previous/next urls) and the url, mime type, indentation and rating of
+ * each result are always bound.
+ */
+public final class ResponsePart {
+
+    /**
+     * the title of each result
+     */
+    public static final ResponsePart TITLE = new ResponsePart(0x1);
+
+    /**
+     * the snippet of each result
+     */
+    public static final ResponsePart SUMMARY = new ResponsePart(0x2);
+
+    /**
+     * the meta tags (MT) of each result
+     */
+    public static final ResponsePart METAS = new ResponsePart(0x4);
+
+    /**
+     * the FS fields (such as the date) of each result
+     */
+    public static final ResponsePart FIELDS = new ResponsePart(0x8);
+
+    /**
+     * the cached document information of each result
+     */
+    public static final ResponsePart CACHE = new ResponsePart(0x10);
+
+    /**
+     * the language of each result
+     */
+    public static final ResponsePart LANGUAGE = new ResponsePart(0x20);
+
+    /**
+     * the OneBox modules
+     */
+    public static final ResponsePart ONEBOX = new ResponsePart(0x40);
+
+    /**
+     * the keymatches
+     */
+    public static final ResponsePart KEYMATCHES = new ResponsePart(0x80);
+
+    /**
+     * the spelling suggestions
+     */
+    public static final ResponsePart SPELLING = new ResponsePart(0x100);
+
+    /**
+     * the synonyms
+     */
+    public static final ResponsePart SYNONYMS = new ResponsePart(0x200);
+
+    /**
+     * the dynamic navigation attributes
+     */
+    public static final ResponsePart NAVIGATION = new ResponsePart(0x400);
+
+    /**
+     * the echoed search request parameters
+     */
+    public static final ResponsePart PARAMS = new ResponsePart(0x800);
+
+    /**
+     * bit mask with the bits of all parts set.
+     */
+    public static final int ALL = 0xfff;
+
+    private int value;
+
+    private ResponsePart(int value) {
+        this.value = value;
+    }
+
+    public int hashCode() {
+        return value;
+    }
+
+    public boolean equals(Object o) {
+        boolean retval = false;
+        if (o != null && o instanceof ResponsePart) {
+            ResponsePart other = (ResponsePart) o;
+            retval = other.value == this.value;
+        }
+        return retval;
+    }
+
+    /**
+     * @return the bit of this part in a mask.
+     */
+    public int getValue() {
+        return value;
+    }
+
+    /**
+     * combines parts into a bit mask.
+     * @param parts the parts, or null for all parts.
+     * @return the bit mask; {@link #ALL} if parts is null.
+     */
+    public static int mask(ResponsePart[] parts) {
+        if (parts == null) return ALL;
+        int retval = 0;
+        for (int i = 0; i < parts.length; i++) {
+            retval |= parts[i].getValue();
+        }
+        return retval;
+    }
+}
@@ -0,0 +1,101 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi.constants;
+
+/**
+ * This class is a Java2 style enumeration implementation.
+ * Each value names a phase of a search made by a GSAClient, as timed
+ * by {@link net.sf.gsaapi.GSATimings} and aggregated by
+ * {@link net.sf.gsaapi.GSAMetrics}.
+ */
+public final class SearchPhase {
+
+    /**
+     * building the query string from a GSAQuery
+     */
+    public static final SearchPhase QUERY = new SearchPhase(0, "query");
+
+    /**
+     * opening the connection to the appliance; near zero for a reused
+     * keep-alive connection
+     */
+    public static final SearchPhase CONNECT = new SearchPhase(1, "connect");
+
+    /**
+     * sending the request and waiting for the response headers
+     */
+    public static final SearchPhase FIRST_BYTE = new SearchPhase(2, "firstByte");
+
+    /**
+     * reading the response body while it is parsed: the waits for the
+     * appliance and, for a compressed response, the time spent inflating
+     * it, since the body is timed as the parser reads it
+     */
+    public static final SearchPhase TRANSFER = new SearchPhase(3, "transfer");
+
+    /**
+     * parsing and binding the response, without the reads of the body
+     * (which include its decompression)
+     */
+    public static final SearchPhase PARSE = new SearchPhase(4, "parse");
+
+    /**
+     * the search time reported by the appliance (the TM element)
+     */
+    public static final SearchPhase APPLIANCE = new SearchPhase(5, "appliance");
+
+    /**
+     * the whole call, including retries on other endpoints
+     */
+    public static final SearchPhase TOTAL = new SearchPhase(6, "total");
+
+    private static final SearchPhase[] VALUES = {
+        QUERY, CONNECT, FIRST_BYTE, TRANSFER, PARSE, APPLIANCE, TOTAL
+    };
+
+    private final int index;
+    private final String name;
+
+    private SearchPhase(int index, String name) {
+        this.index = index;
+        this.name = name;
+    }
+
+    /**
+     * @return the position of this phase in {@link #values()}.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * @return all phases, in order.
+     */
+    public static SearchPhase[] values() {
+        return VALUES.clone();
+    }
+}
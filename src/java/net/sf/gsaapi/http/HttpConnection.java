@@ -0,0 +1,241 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi.http;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * A single HTTP/1.1 connection to an appliance. Instances are
+ * owned by a {@link PooledHttpTransport} and are used by one
+ * request at a time.
+ */
+class HttpConnection {
+
+    private final String hostKey;
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private long lastUsed;
+    private boolean reused;
+
+    /**
+     * @param connectTimeoutMillis zero for no timeout
+     * @param sslSocketFactory the factory of https sockets; null for the
+     * default
+     */
+    HttpConnection(String protocol, String host, int port, String hostKey, int connectTimeoutMillis,
+            SSLSocketFactory sslSocketFactory) throws IOException {
+        this.hostKey = hostKey;
+        Socket plain = new Socket();
+        try {
+            plain.setTcpNoDelay(true);
+            plain.setKeepAlive(true);
+            plain.connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+            if ("https".equalsIgnoreCase(protocol)) {
+                SSLSocketFactory factory = sslSocketFactory != null
+                        ? sslSocketFactory : (SSLSocketFactory) SSLSocketFactory.getDefault();
+                SSLSocket ssl = (SSLSocket) factory.createSocket(plain, host, port, true);
+                // verify the host name, as HttpsURLConnection does
+                SSLParameters params = ssl.getSSLParameters();
+                params.setEndpointIdentificationAlgorithm("HTTPS");
+                ssl.setSSLParameters(params);
+                // the handshake is part of opening the connection
+                plain.setSoTimeout(connectTimeoutMillis);
+                ssl.startHandshake();
+                plain.setSoTimeout(0);
+                this.socket = ssl;
+            } else {
+                this.socket = plain;
+            }
+            this.in = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+            this.out = new BufferedOutputStream(socket.getOutputStream(), 1024);
+        } catch (IOException ioe) {
+            closeQuietly(plain);
+            throw ioe;
+        }
+        this.lastUsed = System.currentTimeMillis();
+    }
+
+    String getHostKey() {
+        return hostKey;
+    }
+
+    InputStream getInputStream() {
+        return in;
+    }
+
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * true if this connection has already served at least one
+     * response. A reused connection may have been closed by the
+     * appliance while it was idle.
+     */
+    boolean isReused() {
+        return reused;
+    }
+
+    /**
+     * bounds each subsequent read from the socket.
+     * @param readTimeoutMillis zero for no timeout
+     */
+    void setReadTimeout(int readTimeoutMillis) throws IOException {
+        socket.setSoTimeout(readTimeoutMillis);
+    }
+
+    void markReleased() {
+        lastUsed = System.currentTimeMillis();
+        reused = true;
+    }
+
+    /**
+     * writes a GET request for the specified request target.
+     * @param target path and query string eg. "/search?q=x"
+     * @param hostHeader value for the Host header
+     * @param acceptEncoding value for the Accept-Encoding header, may be null
+     */
+    void writeGet(String target, String hostHeader, String acceptEncoding) throws IOException {
+        StringBuffer sbuf = new StringBuffer(target.length() + 128);
+        sbuf.append("GET ").append(target).append(" HTTP/1.1\r\n");
+        sbuf.append("Host: ").append(hostHeader).append("\r\n");
+        sbuf.append("User-Agent: ").append(USER_AGENT).append("\r\n");
+        sbuf.append("Accept: */*\r\n");
+        if (acceptEncoding != null) {
+            sbuf.append("Accept-Encoding: ").append(acceptEncoding).append("\r\n");
+        }
+        sbuf.append("Connection: keep-alive\r\n");
+        sbuf.append("\r\n");
+        out.write(sbuf.toString().getBytes("ISO-8859-1"));
+        out.flush();
+    }
+
+    /**
+     * reads the status line and headers of the response.
+     * Header names are lower-cased.
+     * @return the response head
+     */
+    ResponseHead readHead() throws IOException {
+        String statusLine = readLine();
+        if (statusLine == null) {
+            throw new IOException("Connection closed by server before response");
+        }
+        // eg. "HTTP/1.1 200 OK"
+        int sp1 = statusLine.indexOf(' ');
+        if (!statusLine.startsWith("HTTP/") || sp1 < 0) {
+            throw new IOException("Malformed HTTP status line: " + statusLine);
+        }
+        int sp2 = statusLine.indexOf(' ', sp1 + 1);
+        String code = sp2 < 0 ? statusLine.substring(sp1 + 1) : statusLine.substring(sp1 + 1, sp2);
+        ResponseHead head = new ResponseHead();
+        head.version = statusLine.substring(0, sp1);
+        try {
+            head.status = Integer.parseInt(code.trim());
+        } catch (NumberFormatException nfe) {
+            throw new IOException("Malformed HTTP status line: " + statusLine);
+        }
+        for (String line = readLine(); line != null && line.length() > 0; line = readLine()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                head.headers.put(
+                        line.substring(0, colon).trim().toLowerCase(),
+                        line.substring(colon + 1).trim());
+            }
+        }
+        return head;
+    }
+
+    /**
+     * reads a CRLF (or LF) terminated line as ISO-8859-1.
+     * @return the line without the terminator, or null at end of stream.
+     */
+    String readLine() throws IOException {
+        return readLine(in);
+    }
+
+    static String readLine(InputStream in) throws IOException {
+        StringBuffer sbuf = new StringBuffer(64);
+        int c;
+        while ((c = in.read()) >= 0) {
+            if (c == '\n') {
+                int len = sbuf.length();
+                if (len > 0 && sbuf.charAt(len - 1) == '\r') sbuf.setLength(len - 1);
+                return sbuf.toString();
+            }
+            sbuf.append((char) c);
+        }
+        return sbuf.length() > 0 ? sbuf.toString() : null;
+    }
+
+    void close() {
+        closeQuietly(socket);
+    }
+
+    private static void closeQuietly(Socket s) {
+        try {
+            s.close();
+        } catch (IOException ioe) {
+        }
+    }
+
+    /**
+     * status line and headers of a response.
+     */
+    static class ResponseHead {
+        String version;
+        int status;
+        Map<String, String> headers = new HashMap<String, String>();
+
+        String getHeader(String name) {
+            return headers.get(name);
+        }
+
+        /**
+         * true if the server allows the connection to be reused
+         * after this response.
+         */
+        boolean isKeepAlive() {
+            String connection = getHeader("connection");
+            if ("HTTP/1.0".equals(version)) {
+                return connection != null && "keep-alive".equalsIgnoreCase(connection);
+            }
+            return connection == null || !"close".equalsIgnoreCase(connection);
+        }
+    }
+
+    static final String USER_AGENT = "gsa-japi";
+    private static final int BUFFER_SIZE = 8192;
+}
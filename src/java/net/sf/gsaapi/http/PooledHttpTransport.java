@@ -0,0 +1,527 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi.http;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLSocketFactory;
+
+import net.sf.gsaapi.util.Util;
+
+/**
+ * <p/>
+ * A keep-alive HTTP transport with a bounded connection pool per
+ * appliance (protocol, host and port). Use it as an alternative to a
+ * {@link net.sf.gsaapi.GSAClientDelegate} when the GSAClient should
+ * manage its own sockets:
+ * <pre>
+ * PooledHttpTransport transport = new PooledHttpTransport();
+ * transport.setMaxConnectionsPerHost(16);
+ * GSAClient client = new GSAClient("www.mygsa.net");
+ * client.setTransport(transport);
+ * </pre>
+ * At most <code>maxConnectionsPerHost</code> connections are open to a
+ * host at any time. When all of them are in use, further requests wait
+ * (in arrival order) for up to <code>maxWaitMillis</code> before failing
+ * with an IOException. Connections that have been idle for longer than
+ * <code>idleTimeoutMillis</code> are closed rather than reused.
+ * <br/>
+ * A connection is returned to the pool once the response stream has been
+ * read to the end (or closed), so callers must always close the
+ * InputStream returned by {@link #get(String)}.
+ * <br/>
+ * A single instance may be shared by any number of threads and
+ * GSAClient instances.
+ */
+public class PooledHttpTransport {
+
+    /**
+     * default maximum number of connections per appliance.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 8;
+
+    /**
+     * default time (in milliseconds) after which idle connections are closed.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 30000;
+
+    /**
+     * default time (in milliseconds) a request waits for a free connection.
+     */
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 10000;
+
+    private final ConcurrentHashMap<String, HostPool> pools = new ConcurrentHashMap<String, HostPool>();
+    private final AtomicLong connectionsCreated = new AtomicLong();
+    private final AtomicLong connectionsReused = new AtomicLong();
+
+    private volatile int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+    private volatile long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+    private volatile long maxWaitMillis = DEFAULT_MAX_WAIT_MILLIS;
+    private volatile boolean acceptCompression = true;
+    private volatile SSLSocketFactory sslSocketFactory;
+    private volatile boolean closed;
+    private final ThreadLocal<long[]> connectNanos = new ThreadLocal<long[]>() {
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    /**
+     * create a transport with the default pool settings.
+     */
+    public PooledHttpTransport() {
+    }
+
+    /**
+     * @param maxConnectionsPerHost maximum connections open to one appliance
+     * @param idleTimeoutMillis time after which an idle connection is closed
+     * @param maxWaitMillis time a request waits for a connection when the
+     * pool is exhausted
+     */
+    public PooledHttpTransport(int maxConnectionsPerHost, long idleTimeoutMillis, long maxWaitMillis) {
+        setMaxConnectionsPerHost(maxConnectionsPerHost);
+        setIdleTimeoutMillis(idleTimeoutMillis);
+        setMaxWaitMillis(maxWaitMillis);
+    }
+
+    /**
+     * set the maximum number of connections that may be open to a single
+     * appliance. Takes effect for hosts that have not been contacted yet.
+     * @param maxConnectionsPerHost a positive number
+     */
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        if (maxConnectionsPerHost < 1) {
+            throw new IllegalArgumentException("maxConnectionsPerHost must be positive: " + maxConnectionsPerHost);
+        }
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    /**
+     * set the time after which an idle pooled connection is closed.
+     * @param idleTimeoutMillis time in milliseconds
+     */
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    /**
+     * set the time a request waits for a free connection when all
+     * connections to the appliance are in use.
+     * @param maxWaitMillis time in milliseconds
+     */
+    public void setMaxWaitMillis(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    /**
+     * ask the appliance to compress responses with gzip or deflate. The
+     * response is decompressed while it is read, so the stream returned
+     * by {@link #get(String)} always yields the uncompressed body.
+     * Enabled by default.
+     * @param acceptCompression false to request uncompressed responses
+     */
+    public void setAcceptCompression(boolean acceptCompression) {
+        this.acceptCompression = acceptCompression;
+    }
+
+    public boolean isAcceptCompression() {
+        return acceptCompression;
+    }
+
+    /**
+     * set the factory of the sockets of https connections, e.g. to trust
+     * the certificate of an appliance that is not signed by a known
+     * authority. The host name of the appliance is verified against its
+     * certificate in any case.
+     * @param sslSocketFactory the factory, or null for the default one
+     */
+    public void setSSLSocketFactory(SSLSocketFactory sslSocketFactory) {
+        this.sslSocketFactory = sslSocketFactory;
+    }
+
+    public SSLSocketFactory getSSLSocketFactory() {
+        return sslSocketFactory;
+    }
+
+    /**
+     * issue a GET request for the url and return the response body.
+     * Non-2xx responses are reported as IOExceptions, as with
+     * <code>URL.openStream()</code>; redirects are followed.
+     * @param requestUrl absolute http or https url
+     * @return InputStream to the response body. The stream must be closed.
+     * @throws IOException
+     */
+    public InputStream get(String requestUrl) throws IOException {
+        return get(requestUrl, 0, 0, 0);
+    }
+
+    /**
+     * issue a GET request for the url, with timeouts. Expired timeouts
+     * are reported as java.net.SocketTimeoutExceptions, both by this
+     * method and by reads from the returned stream.
+     * @param requestUrl absolute http or https url
+     * @param connectTimeoutMillis time allowed to open a connection; 0 for no timeout
+     * @param readTimeoutMillis time allowed for each read; 0 for no timeout
+     * @param timeoutMillis time allowed for the whole request, including
+     * reading the response body; 0 for no timeout
+     * @return InputStream to the response body. The stream must be closed.
+     * @throws IOException
+     * @see #get(String)
+     */
+    public InputStream get(String requestUrl, int connectTimeoutMillis, int readTimeoutMillis, long timeoutMillis)
+            throws IOException {
+        long deadline = timeoutMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0;
+        long[] connectNanos = this.connectNanos.get();
+        connectNanos[0] = 0;
+        String url = requestUrl;
+        for (int redirects = 0; ; redirects++) {
+            URL target = new URL(url);
+            HttpConnection.ResponseHead head;
+            HostPool pool = getPool(target);
+            long connectStart = System.nanoTime();
+            HttpConnection connection = pool.acquire(connectTimeoutMillis, deadline);
+            connectNanos[0] += System.nanoTime() - connectStart;
+            try {
+                head = exchange(pool, connection, target, readTimeoutMillis, deadline);
+            } catch (SocketTimeoutException ste) {
+                pool.discard(connection);
+                throw ste;
+            } catch (IOException ioe) {
+                if (!connection.isReused()) {
+                    pool.discard(connection);
+                    throw ioe;
+                }
+                // the appliance closed the idle connection; retry once on a fresh one
+                connectStart = System.nanoTime();
+                connection = pool.reopen(connection, connectTimeoutMillis, deadline);
+                connectNanos[0] += System.nanoTime() - connectStart;
+                try {
+                    head = exchange(pool, connection, target, readTimeoutMillis, deadline);
+                } catch (IOException ioe2) {
+                    pool.discard(connection);
+                    throw ioe2;
+                }
+            }
+            ResponseBodyInputStream body;
+            try {
+                body = new ResponseBodyInputStream(pool, connection, head, readTimeoutMillis, deadline);
+            } catch (IOException ioe) {
+                pool.discard(connection);
+                throw ioe;
+            }
+            int status = head.status;
+            if (status >= 200 && status < 300) {
+                return Util.decodeContent(body, head.getHeader("content-encoding"));
+            }
+            String location = head.getHeader("location");
+            body.close();
+            if (status >= 300 && status < 400 && location != null && redirects < MAX_REDIRECTS) {
+                url = new URL(target, location).toExternalForm();
+                continue;
+            }
+            if (status == 404 || status == 410) {
+                throw new FileNotFoundException(url);
+            }
+            throw new IOException("Server returned HTTP response code: " + status + " for URL: " + url);
+        }
+    }
+
+    /**
+     * @return the nanoseconds the last request issued by the calling
+     * thread spent acquiring pooled connections or opening new ones,
+     * including any wait for a free connection.
+     */
+    public long getLastConnectNanos() {
+        return connectNanos.get()[0];
+    }
+
+    /**
+     * closes connections that have been idle for longer than the idle
+     * timeout. Idle connections are also evicted lazily whenever a
+     * connection is acquired, so calling this is optional.
+     */
+    public void evictIdleConnections() {
+        for (Iterator<HostPool> i = pools.values().iterator(); i.hasNext();) {
+            i.next().evictIdle();
+        }
+    }
+
+    /**
+     * closes all idle connections and rejects further requests.
+     * Connections that are in use are closed as they are returned.
+     */
+    public void close() {
+        closed = true;
+        for (Iterator<HostPool> i = pools.values().iterator(); i.hasNext();) {
+            i.next().closeIdle();
+        }
+    }
+
+    /**
+     * @return number of connections opened by this transport so far.
+     */
+    public long getConnectionsCreated() {
+        return connectionsCreated.get();
+    }
+
+    /**
+     * @return number of requests that were served on a reused connection.
+     */
+    public long getConnectionsReused() {
+        return connectionsReused.get();
+    }
+
+    /**
+     * @return number of idle connections currently held across all hosts.
+     */
+    public int getIdleConnections() {
+        int retval = 0;
+        for (Iterator<HostPool> i = pools.values().iterator(); i.hasNext();) {
+            retval += i.next().idleCount();
+        }
+        return retval;
+    }
+
+    /**
+     * @return number of connections currently in use across all hosts.
+     */
+    public int getLeasedConnections() {
+        int retval = 0;
+        for (Iterator<HostPool> i = pools.values().iterator(); i.hasNext();) {
+            retval += i.next().leasedCount();
+        }
+        return retval;
+    }
+
+    private HttpConnection.ResponseHead exchange(HostPool pool, HttpConnection connection, URL target,
+            int readTimeoutMillis, long deadline) throws IOException {
+        connection.setReadTimeout(timeout(readTimeoutMillis, deadline));
+        String file = target.getFile();
+        connection.writeGet(file.length() == 0 ? "/" : file, pool.hostHeader,
+                acceptCompression ? Util.ACCEPT_ENCODING : null);
+        return connection.readHead();
+    }
+
+    /**
+     * @param timeoutMillis a connect or read timeout; 0 for none
+     * @param deadline System.nanoTime() at which the request expires; 0 for none
+     * @return the timeout shortened to the time left before the deadline
+     * @throws SocketTimeoutException if the deadline has passed
+     */
+    static int timeout(int timeoutMillis, long deadline) throws SocketTimeoutException {
+        if (deadline == 0) return timeoutMillis;
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) throw new SocketTimeoutException("Request timed out");
+        int remainingMillis = (int) Math.min(Integer.MAX_VALUE, Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+        return timeoutMillis > 0 && timeoutMillis < remainingMillis ? timeoutMillis : remainingMillis;
+    }
+
+    private HostPool getPool(URL url) throws IOException {
+        if (closed) throw new IOException("Transport is closed");
+        String protocol = url.getProtocol().toLowerCase();
+        if (!"http".equals(protocol) && !"https".equals(protocol)) {
+            throw new MalformedURLException("Unsupported protocol: " + protocol);
+        }
+        int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+        String key = protocol + "://" + url.getHost().toLowerCase() + ":" + port;
+        HostPool pool = pools.get(key);
+        if (pool == null) {
+            HostPool created = new HostPool(key, protocol, url.getHost(), port,
+                    url.getPort() < 0 ? url.getHost() : url.getHost() + ":" + port);
+            pool = pools.putIfAbsent(key, created);
+            if (pool == null) pool = created;
+        }
+        return pool;
+    }
+
+    /**
+     * connections to a single appliance. Capacity is bounded by a fair
+     * semaphore so that waiting requests are served in arrival order.
+     */
+    class HostPool {
+        final String key;
+        final String protocol;
+        final String host;
+        final int port;
+        final String hostHeader;
+        private final int capacity;
+        private final Semaphore permits;
+        private final ArrayDeque<HttpConnection> idle = new ArrayDeque<HttpConnection>();
+
+        HostPool(String key, String protocol, String host, int port, String hostHeader) {
+            this.key = key;
+            this.protocol = protocol;
+            this.host = host;
+            this.port = port;
+            this.hostHeader = hostHeader;
+            this.capacity = maxConnectionsPerHost;
+            this.permits = new Semaphore(capacity, true);
+        }
+
+        /**
+         * returns an idle connection if one is available, else
+         * opens a new one. Blocks while the pool is exhausted.
+         */
+        HttpConnection acquire(int connectTimeoutMillis, long deadline) throws IOException {
+            try {
+                long wait = deadline != 0 ? Math.min(maxWaitMillis, timeout(0, deadline)) : maxWaitMillis;
+                if (!permits.tryAcquire(wait, TimeUnit.MILLISECONDS)) {
+                    if (wait < maxWaitMillis) {
+                        throw new SocketTimeoutException("Request timed out waiting for a connection to " + key);
+                    }
+                    throw new IOException("Timed out after " + maxWaitMillis
+                            + "ms waiting for a connection to " + key);
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for a connection to " + key);
+            }
+            HttpConnection connection = pollIdle();
+            if (connection != null) {
+                connectionsReused.incrementAndGet();
+                return connection;
+            }
+            return open(connectTimeoutMillis, deadline);
+        }
+
+        /**
+         * replaces a stale connection with a new one, keeping
+         * the permit held for the stale connection.
+         */
+        HttpConnection reopen(HttpConnection stale, int connectTimeoutMillis, long deadline) throws IOException {
+            stale.close();
+            return open(connectTimeoutMillis, deadline);
+        }
+
+        private HttpConnection open(int connectTimeoutMillis, long deadline) throws IOException {
+            try {
+                HttpConnection connection = new HttpConnection(protocol, host, port, key,
+                        timeout(connectTimeoutMillis, deadline), sslSocketFactory);
+                connectionsCreated.incrementAndGet();
+                return connection;
+            } catch (IOException ioe) {
+                permits.release();
+                throw ioe;
+            } catch (RuntimeException re) {
+                permits.release();
+                throw re;
+            }
+        }
+
+        /**
+         * returns a connection whose response has been fully read.
+         */
+        void release(HttpConnection connection) {
+            connection.markReleased();
+            boolean keep = !closed;
+            if (keep) {
+                synchronized (idle) {
+                    idle.addFirst(connection);
+                }
+            } else {
+                connection.close();
+            }
+            permits.release();
+            evictIdle();
+        }
+
+        /**
+         * closes a connection that cannot be reused.
+         */
+        void discard(HttpConnection connection) {
+            connection.close();
+            permits.release();
+        }
+
+        private HttpConnection pollIdle() {
+            long now = System.currentTimeMillis();
+            synchronized (idle) {
+                HttpConnection connection;
+                while ((connection = idle.pollFirst()) != null) {
+                    if (now - connection.getLastUsed() < idleTimeoutMillis) {
+                        return connection;
+                    }
+                    connection.close();
+                }
+            }
+            return null;
+        }
+
+        void evictIdle() {
+            long now = System.currentTimeMillis();
+            synchronized (idle) {
+                // the deque is ordered most-recently-used first
+                HttpConnection oldest;
+                while ((oldest = idle.peekLast()) != null
+                        && now - oldest.getLastUsed() >= idleTimeoutMillis) {
+                    idle.pollLast().close();
+                }
+            }
+        }
+
+        void closeIdle() {
+            synchronized (idle) {
+                HttpConnection connection;
+                while ((connection = idle.pollFirst()) != null) {
+                    connection.close();
+                }
+            }
+        }
+
+        int idleCount() {
+            synchronized (idle) {
+                return idle.size();
+            }
+        }
+
+        int leasedCount() {
+            return capacity - permits.availablePermits();
+        }
+    }
+
+    private static final int MAX_REDIRECTS = 5;
+}
@@ -0,0 +1,204 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * InputStream over the body of a single HTTP response. Understands
+ * Content-Length and chunked framing (and read-until-close when neither
+ * is present). Once the body has been consumed, the underlying connection
+ * is handed back to the pool so that it can be reused by the next request.
+ */
+class ResponseBodyInputStream extends InputStream {
+
+    private static final int FIXED = 0;
+    private static final int CHUNKED = 1;
+    private static final int UNTIL_CLOSE = 2;
+
+    private final PooledHttpTransport.HostPool pool;
+    private final HttpConnection connection;
+    private final InputStream in;
+    private final int framing;
+    private final boolean keepAlive;
+    private final int readTimeoutMillis;
+    private final long deadline;
+
+    private long remaining; // bytes left in the body (FIXED) or current chunk (CHUNKED)
+    private boolean eof;
+    private boolean released;
+
+    /**
+     * @param readTimeoutMillis time allowed for each read; 0 for none
+     * @param deadline System.nanoTime() by which the body must have
+     * been read; 0 for none
+     */
+    ResponseBodyInputStream(PooledHttpTransport.HostPool pool, HttpConnection connection,
+            HttpConnection.ResponseHead head, int readTimeoutMillis, long deadline) throws IOException {
+        this.pool = pool;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.deadline = deadline;
+        this.connection = connection;
+        this.in = connection.getInputStream();
+        String transferEncoding = head.getHeader("transfer-encoding");
+        String contentLength = head.getHeader("content-length");
+        if (transferEncoding != null && transferEncoding.toLowerCase().indexOf("chunked") >= 0) {
+            framing = CHUNKED;
+            remaining = 0;
+        } else if (contentLength != null) {
+            framing = FIXED;
+            try {
+                remaining = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException nfe) {
+                throw new IOException("Invalid Content-Length: " + contentLength);
+            }
+        } else {
+            framing = UNTIL_CLOSE;
+        }
+        keepAlive = framing != UNTIL_CLOSE && head.isKeepAlive();
+        if (framing == FIXED && remaining == 0) {
+            finish();
+        }
+    }
+
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        int n = read(one, 0, 1);
+        return n < 0 ? -1 : (one[0] & 0xff);
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (eof) return -1;
+        if (released) throw new IOException("Stream closed");
+        if (len == 0) return 0;
+        int n;
+        try {
+            if (deadline != 0) {
+                connection.setReadTimeout(PooledHttpTransport.timeout(readTimeoutMillis, deadline));
+            }
+            if (framing == UNTIL_CLOSE) {
+                n = in.read(b, off, len);
+                if (n < 0) finish();
+                return n;
+            }
+            if (framing == CHUNKED && remaining == 0) {
+                remaining = nextChunkSize();
+                if (remaining == 0) {
+                    skipTrailers();
+                    finish();
+                    return -1;
+                }
+            }
+            n = in.read(b, off, (int) Math.min(len, remaining));
+        } catch (IOException ioe) {
+            discard();
+            throw ioe;
+        }
+        if (n < 0) {
+            discard();
+            throw new IOException("Premature end of response body");
+        }
+        remaining -= n;
+        if (framing == FIXED && remaining == 0) {
+            finish();
+        } else if (framing == CHUNKED && remaining == 0) {
+            readChunkTerminator();
+        }
+        return n;
+    }
+
+    public int available() throws IOException {
+        if (eof || released) return 0;
+        int avail = in.available();
+        return framing == UNTIL_CLOSE ? avail : (int) Math.min(avail, remaining);
+    }
+
+    /**
+     * closing the stream before the body has been fully read drains
+     * a small remainder so that the connection can still be reused;
+     * larger remainders cause the connection to be discarded.
+     */
+    public void close() throws IOException {
+        if (released) return;
+        if (!eof && framing != UNTIL_CLOSE) {
+            byte[] skip = new byte[512];
+            long drained = 0;
+            try {
+                int n;
+                while (!eof && drained < MAX_DRAIN && (n = read(skip, 0, skip.length)) >= 0) {
+                    drained += n;
+                }
+            } catch (IOException ioe) {
+                // connection already discarded by read()
+            }
+        }
+        if (!eof) discard();
+    }
+
+    private long nextChunkSize() throws IOException {
+        String line = HttpConnection.readLine(in);
+        if (line == null) throw new IOException("Premature end of chunked response body");
+        int ext = line.indexOf(';');
+        String hex = (ext >= 0 ? line.substring(0, ext) : line).trim();
+        try {
+            return Long.parseLong(hex, 16);
+        } catch (NumberFormatException nfe) {
+            throw new IOException("Invalid chunk size: " + line);
+        }
+    }
+
+    private void readChunkTerminator() throws IOException {
+        String line = HttpConnection.readLine(in);
+        if (line == null || line.length() != 0) {
+            discard();
+            throw new IOException("Malformed chunked response body");
+        }
+    }
+
+    private void skipTrailers() throws IOException {
+        String line;
+        do {
+            line = HttpConnection.readLine(in);
+        } while (line != null && line.length() > 0);
+    }
+
+    private void finish() {
+        eof = true;
+        if (!released) {
+            released = true;
+            if (keepAlive) pool.release(connection);
+            else pool.discard(connection);
+        }
+    }
+
+    private void discard() {
+        eof = true;
+        if (!released) {
+            released = true;
+            pool.discard(connection);
+        }
+    }
+
+    private static final long MAX_DRAIN = 64 * 1024;
+}
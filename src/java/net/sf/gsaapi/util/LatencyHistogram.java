@@ -0,0 +1,233 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations that can be recorded from many threads
+ * without locking, in the manner of an HdrHistogram: values are counted
+ * in buckets that are linear within each power of two, so that any
+ * recorded value is reported within 1/64 (1.6%) of its actual value,
+ * from a nanosecond up to 2^40 nanoseconds (about 18 minutes). Longer
+ * values are counted as 2^40 nanoseconds.
+ * <br/>
+ * Recording is an atomic increment of one bucket and of the totals.
+ * Reads are not snapshots: a percentile read while values are recorded
+ * may count some of them and not others.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 6;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_BITS = 40;
+    private static final long MAX_NANOS = (1L << MAX_BITS) - 1;
+    private static final int BUCKETS = SUB_COUNT + (MAX_BITS - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * records a duration.
+     * @param duration the duration; negative durations count as 0
+     * @param unit the unit of the duration
+     */
+    public void record(long duration, TimeUnit unit) {
+        recordNanos(unit.toNanos(duration));
+    }
+
+    /**
+     * records a duration in nanoseconds.
+     */
+    public void recordNanos(long nanos) {
+        if (nanos < 0) nanos = 0;
+        if (nanos > MAX_NANOS) nanos = MAX_NANOS;
+        counts.incrementAndGet(bucket(nanos));
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+        for (long current; nanos > (current = max.get());) {
+            if (max.compareAndSet(current, nanos)) break;
+        }
+    }
+
+    /**
+     * @return the number of recorded durations.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the mean of the recorded durations, or 0 if there are none.
+     */
+    public double getMean(TimeUnit unit) {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n / unit.toNanos(1);
+    }
+
+    /**
+     * @return the longest recorded duration.
+     */
+    public long getMax(TimeUnit unit) {
+        return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param percentile between 0 and 100, e.g. 99.9
+     * @param unit the unit of the returned value
+     * @return the duration that <code>percentile</code>% of the recorded
+     * durations do not exceed (within the precision of the histogram),
+     * or 0 if there are none.
+     */
+    public long getPercentile(double percentile, TimeUnit unit) {
+        return unit.convert(percentileNanos(percentile), TimeUnit.NANOSECONDS);
+    }
+
+    private long percentileNanos(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highest(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * forgets all recorded durations. Durations recorded while the
+     * histogram is being reset may be partly kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * @return the count, mean, median, 90th, 99th and 99.9th percentiles
+     * and maximum, in milliseconds.
+     */
+    public Snapshot getSnapshot() {
+        return new Snapshot(getCount(), millis(getMean(TimeUnit.NANOSECONDS)),
+                millis(percentileNanos(50)), millis(percentileNanos(90)),
+                millis(percentileNanos(99)), millis(percentileNanos(99.9)),
+                millis(max.get()));
+    }
+
+    private static double millis(double nanos) {
+        return nanos / 1000000;
+    }
+
+    static int bucket(long nanos) {
+        if (nanos < SUB_COUNT) return (int) nanos;
+        int top = 63 - Long.numberOfLeadingZeros(nanos);
+        int shift = top - SUB_BITS;
+        return SUB_COUNT + shift * SUB_COUNT + (int) ((nanos >>> shift) - SUB_COUNT);
+    }
+
+    /**
+     * @return the largest value counted in a bucket.
+     */
+    static long highest(int bucket) {
+        if (bucket < SUB_COUNT) return bucket;
+        int shift = (bucket - SUB_COUNT) / SUB_COUNT;
+        long sub = SUB_COUNT + (bucket - SUB_COUNT) % SUB_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    public String toString() {
+        return getSnapshot().toString();
+    }
+
+    /**
+     * the statistics of a histogram at one point in time, in
+     * milliseconds. Exposed as composite data by the GSAMetrics MXBean.
+     */
+    public static class Snapshot {
+
+        private final long count;
+        private final double mean;
+        private final double p50;
+        private final double p90;
+        private final double p99;
+        private final double p999;
+        private final double max;
+
+        Snapshot(long count, double mean, double p50, double p90, double p99, double p999, double max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanMillis() {
+            return mean;
+        }
+
+        public double getP50Millis() {
+            return p50;
+        }
+
+        public double getP90Millis() {
+            return p90;
+        }
+
+        public double getP99Millis() {
+            return p99;
+        }
+
+        public double getP999Millis() {
+            return p999;
+        }
+
+        public double getMaxMillis() {
+            return max;
+        }
+
+        public String toString() {
+            return "count=" + count + " mean=" + mean + "ms p50=" + p50 + "ms p90=" + p90
+                    + "ms p99=" + p99 + "ms p99.9=" + p999 + "ms max=" + max + "ms";
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi.util;
+
+/**
+ * A bounded table of canonical Strings, used to share one instance of
+ * names that repeat in every response (meta names, field names, param
+ * keys) instead of keeping a fresh String for each occurrence.
+ * <br/>
+ * The table is a fixed number of slots indexed by hash code. A name
+ * that hashes to an occupied slot replaces its occupant, so the table
+ * never grows, and unlike {@link String#intern()} names that are seen
+ * once are soon forgotten. Lookups take no lock: the slots hold
+ * immutable Strings, so a thread that reads a stale slot at worst
+ * stores its own copy of the name.
+ * Mostly intended for internal use.
+ */
+public class SymbolTable {
+
+    /**
+     * longer Strings are returned as they are; they are rarely names.
+     */
+    public static final int MAX_SYMBOL_LENGTH = 64;
+
+    private final String[] slots;
+    private final int mask;
+
+    /**
+     * @param capacity the number of slots, rounded up to a power of two.
+     */
+    public SymbolTable(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        slots = new String[size];
+        mask = size - 1;
+    }
+
+    /**
+     * returns the canonical instance of a String.
+     * @param s the String, may be null
+     * @return an equal String from the table, or <code>s</code> after it
+     * has been added to the table.
+     */
+    public String intern(String s) {
+        if (s == null || s.length() > MAX_SYMBOL_LENGTH) return s;
+        int h = s.hashCode();
+        int i = (h ^ (h >>> 16)) & mask;
+        String retval = slots[i];
+        if (retval != null && (retval == s || retval.equals(s))) {
+            return retval;
+        }
+        slots[i] = s;
+        return s;
+    }
+
+    /**
+     * @return the number of slots of the table.
+     */
+    public int getCapacity() {
+        return slots.length;
+    }
+}
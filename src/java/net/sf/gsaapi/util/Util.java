@@ -22,6 +22,9 @@
  ********************************************************************************/
 package net.sf.gsaapi.util;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.Calendar;
@@ -31,6 +34,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  * Utilities class. Mostly intended for internal use.
@@ -200,6 +206,66 @@ public class Util {
         return retval;
     }
 
+    /**
+     * value of the Accept-Encoding request header sent to the appliance
+     * when response compression is enabled.
+     */
+    public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    /**
+     * wraps a response body so that it is decompressed while it is read,
+     * according to the Content-Encoding of the response. Both zlib and raw
+     * deflate streams are accepted for "deflate". Closing the returned
+     * stream closes the body.
+     * @param body the response body as sent by the server
+     * @param contentEncoding the Content-Encoding header, may be null
+     * @return the decoded stream
+     * @throws IOException if the encoding is not supported (the body is
+     * then closed) or the gzip header is invalid
+     */
+    public static InputStream decodeContent(InputStream body, String contentEncoding) throws IOException {
+        if (contentEncoding == null) return body;
+        String encoding = contentEncoding.trim().toLowerCase();
+        try {
+            if (encoding.length() == 0 || "identity".equals(encoding)) {
+                return body;
+            } else if ("gzip".equals(encoding) || "x-gzip".equals(encoding)) {
+                return new GZIPInputStream(body, DECODE_BUFFER_SIZE);
+            } else if ("deflate".equals(encoding)) {
+                return inflate(body);
+            }
+        } catch (IOException ioe) {
+            body.close();
+            throw ioe;
+        }
+        body.close();
+        throw new IOException("Unsupported Content-Encoding: " + contentEncoding);
+    }
+
+    private static InputStream inflate(InputStream body) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(body, 2);
+        byte[] head = new byte[2];
+        int n = 0;
+        for (int r; n < 2 && (r = in.read(head, n, 2 - n)) >= 0;) {
+            n += r;
+        }
+        in.unread(head, 0, n);
+        // a zlib header: compression method 8 and a check on the first two bytes
+        boolean zlib = n == 2 && (head[0] & 0x0f) == 8 && (((head[0] & 0xff) << 8) | (head[1] & 0xff)) % 31 == 0;
+        final Inflater inflater = new Inflater(!zlib);
+        return new InflaterInputStream(in, inflater, DECODE_BUFFER_SIZE) {
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    private static final int DECODE_BUFFER_SIZE = 8192;
+
     /**
      * converts the character to HTML entity &#c;
      * where c is the integer value of the character.
@@ -0,0 +1,105 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parses the fixtures of src/test/data with each of the parsers. The
+ * fixtures are read from the directory named by the system property
+ * <code>gsaapi.data.dir</code>, by default relative to the project.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParsingBenchmark {
+
+    @Param({ "DynamicNavigation", "Meta", "OneBox10", "OneBox100",
+            "Simple10", "Simple100", "SuggestionsAndSynonyms" })
+    public String fixture;
+
+    @Param({ "sax", "stax", "scanner" })
+    public String parser;
+
+    private byte[] xml;
+    private GSAResponseParser responseParser;
+
+    @Setup
+    public void setUp() throws IOException {
+        File dir = new File(System.getProperty("gsaapi.data.dir", "src/test/data"));
+        xml = readFile(new File(dir, fixture + ".xml"));
+        responseParser = parser(parser);
+    }
+
+    static GSAResponseParser parser(String name) {
+        if ("sax".equals(name)) {
+            return GSAResponseParser.SAX;
+        } else if ("stax".equals(name)) {
+            return GSAResponseParser.STAX;
+        } else if ("scanner".equals(name)) {
+            return GSAResponseParser.SCANNER;
+        }
+        throw new IllegalArgumentException("unknown parser: " + name);
+    }
+
+    @Benchmark
+    public GSAResponse buildResponse() {
+        return responseParser.parse(new ByteArrayInputStream(xml),
+                GSAClient.DEFAULT_XML_SYSTEM_ID, null, null);
+    }
+
+    static byte[] readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            for (int n; (n = in.read(buf)) > 0;) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
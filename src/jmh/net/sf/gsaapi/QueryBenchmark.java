@@ -0,0 +1,136 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.gsaapi.GSAQuery.GSAQueryTerm;
+import net.sf.gsaapi.util.GSACacheQueryUtil;
+import net.sf.gsaapi.util.QueryStringFilter;
+import net.sf.gsaapi.util.Util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Builds query strings and cache links the way a search page does for
+ * every request: the query term, the full query, the cached document
+ * links of a page of results, and the encoding and filtering of
+ * parameters underneath them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+
+    private GSAQueryTerm term;
+    private GSAQuery query;
+    private String queryString;
+    private QueryStringFilter filter;
+    private GSACacheQueryUtil cacheQueryUtil;
+    private GSAResult[] results;
+
+    @Setup
+    public void setUp() throws IOException {
+        term = new GSAQueryTerm("java search appliance");
+        term.setInTitle(Arrays.asList(new String[] { "api" }));
+        term.setNotInUrl(Arrays.asList(new String[] { "archive" }));
+        term.addFileType("pdf", true);
+        term.addFileType("doc", true);
+        term.setSite("example.com", true);
+
+        query = new GSAQuery();
+        query.setQueryTerm(term);
+        query.setSiteCollections(new String[] { "default_collection", "archive" });
+        query.setFrontend("default_frontend");
+        query.setMaxResults(100);
+        query.setFetchMetaFields(new String[] { "author", "description", "keywords" });
+        Properties required = new Properties();
+        required.put("department", "sales & marketing");
+        required.put("region", "emea");
+        query.setRequiredMetaFields(required);
+        query.setInputEncoding("UTF-8");
+        query.setOutputEncoding("UTF-8");
+        queryString = query.getValue();
+
+        filter = new QueryStringFilter(new String[] { "client", "site", "num", "output", "ie", "oe" });
+        GSAClient client = new GSAClient("http", "gsa.example.com", 80, "/search");
+        cacheQueryUtil = new GSACacheQueryUtil(client, query);
+
+        File dir = new File(System.getProperty("gsaapi.data.dir", "src/test/data"));
+        byte[] xml = ParsingBenchmark.readFile(new File(dir, "Simple100.xml"));
+        List list = GSAResponseParser.SAX.parse(new ByteArrayInputStream(xml),
+                GSAClient.DEFAULT_XML_SYSTEM_ID, null, null).getResults();
+        results = (GSAResult[]) list.toArray(new GSAResult[list.size()]);
+    }
+
+    @Benchmark
+    public String queryTermValue() {
+        return term.getValue();
+    }
+
+    @Benchmark
+    public String queryValue() {
+        return query.getValue();
+    }
+
+    @Benchmark
+    public String encode() {
+        return Util.encode("java \"search appliance\" inurl:-archive site:example.com");
+    }
+
+    @Benchmark
+    public String filterQueryString() {
+        return filter.filter(queryString);
+    }
+
+    /**
+     * the cached document links of a page of 100 results.
+     */
+    @Benchmark
+    public int cacheDocUrls() {
+        int retval = 0;
+        for (int i = 0; i < results.length; i++) {
+            String url = cacheQueryUtil.getCacheDocUrl(results[i], true);
+            if (url != null) retval += url.length();
+        }
+        return retval;
+    }
+}
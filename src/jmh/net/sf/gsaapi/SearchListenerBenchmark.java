@@ -0,0 +1,92 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Searches through a GSAClient whose delegate answers from memory, with
+ * no search listener and with listeners that read every event, to
+ * measure what the listeners cost a search.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchListenerBenchmark {
+
+    @Param({ "0", "1", "4" })
+    public int listeners;
+
+    private GSAClient client;
+    private GSAQuery query;
+    private long sink;
+
+    @Setup
+    public void setUp() throws IOException {
+        File dir = new File(System.getProperty("gsaapi.data.dir", "src/test/data"));
+        final byte[] xml = ParsingBenchmark.readFile(new File(dir, "Simple10.xml"));
+        client = new GSAClient("gsa.example.com");
+        client.setClientDelegate(new GSAClientDelegate() {
+            public InputStream getResponseStream(String requestUrl) {
+                return new ByteArrayInputStream(xml);
+            }
+        });
+        for (int i = 0; i < listeners; i++) {
+            client.addSearchListener(new GSASearchAdapter() {
+                public void searchStarted(GSASearchEvent event) {
+                    sink += event.getRawQuery().length();
+                }
+
+                public void parseComplete(GSASearchEvent event) {
+                    sink += event.getBytes() + event.getResultCount();
+                }
+            });
+        }
+        query = new GSAQuery();
+        query.setQueryTerm(new GSAQuery.GSAQueryTerm("java search appliance"));
+    }
+
+    @Benchmark
+    public GSAResponse search() throws IOException {
+        return client.getGSAResponse(query);
+    }
+}
@@ -14,4 +14,17 @@ public abstract class GSATestCase extends junit.framework.TestCase {
         return retval;
     }
 
+    public static GSAQuery query(String term) {
+        GSAQuery query = new GSAQuery();
+        query.setQueryTerm(new GSAQuery.GSAQueryTerm(term));
+        return query;
+    }
+
+    /**
+     * @return a client that searches the stub appliance.
+     */
+    public static GSAClient client(StubAppliance stub) {
+        return new GSAClient("http", "127.0.0.1", stub.getPort(), "/search");
+    }
+
 }
@@ -0,0 +1,341 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Random;
+
+/**
+ * Generates valid GSP XML documents of a configurable shape and size,
+ * for tests and benchmarks that need more than the fixtures: long
+ * summaries, hundreds of metas per result, large dynamic navigation
+ * trees or many OneBox modules. The same seed and shape always give
+ * the same document.
+ * <pre>
+ * GspGenerator generator = new GspGenerator(42);
+ * generator.setResults(1000);
+ * generator.setMetasPerResult(200);
+ * byte[] xml = generator.generate();
+ * </pre>
+ */
+public class GspGenerator {
+
+    private static final String[] WORDS = {
+        "search", "appliance", "machine", "amazement", "archive", "report",
+        "quarterly", "engineering", "sales", "directory", "policy", "release",
+        "java", "index", "document", "meeting", "budget", "customer", "support",
+        "network", "r\u00e9sum\u00e9", "na\u00efve", "stra\u00dfe", "\u6771\u4eac"
+    };
+
+    /**
+     * the names of the shapes known to {@link #shape(String, int)}.
+     */
+    public static final String[] SHAPES = {
+        "plain", "longSummaries", "manyMetas", "navigation", "oneBoxes"
+    };
+
+    private final long seed;
+    private int results = 10;
+    private int summaryLength = 200;
+    private int metasPerResult;
+    private int metaNames = 20;
+    private int fieldsPerResult = 1;
+    private int navigationAttributes;
+    private int navigationValues;
+    private int oneBoxes;
+    private int oneBoxResults;
+    private int keymatches;
+    private int synonyms;
+
+    /**
+     * @param seed seeds the words and values of the documents.
+     */
+    public GspGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param shape one of {@link #SHAPES}:
+     * <ul>
+     * <li>plain: 200 character summaries and a date field, as most
+     * appliances return</li>
+     * <li>longSummaries: summaries of 4000 characters</li>
+     * <li>manyMetas: 200 metas per result, from 50 names</li>
+     * <li>navigation: 50 navigation attributes of 200 values each</li>
+     * <li>oneBoxes: 20 OneBox modules of 20 results each</li>
+     * </ul>
+     * @param results the number of results
+     * @return a generator with seed 42 for the shape.
+     */
+    public static GspGenerator shape(String shape, int results) {
+        GspGenerator retval = new GspGenerator(42);
+        retval.setResults(results);
+        if ("longSummaries".equals(shape)) {
+            retval.setSummaryLength(4000);
+        } else if ("manyMetas".equals(shape)) {
+            retval.setMetasPerResult(200, 50);
+        } else if ("navigation".equals(shape)) {
+            retval.setNavigation(50, 200);
+        } else if ("oneBoxes".equals(shape)) {
+            retval.setOneBoxes(20, 20);
+        } else if (!"plain".equals(shape)) {
+            throw new IllegalArgumentException("unknown shape: " + shape);
+        }
+        return retval;
+    }
+
+    /**
+     * the number of results (R elements); 10 by default.
+     */
+    public void setResults(int results) {
+        this.results = results;
+    }
+
+    /**
+     * the approximate length in characters of each summary (S), before
+     * escaping; 200 by default.
+     */
+    public void setSummaryLength(int summaryLength) {
+        this.summaryLength = summaryLength;
+    }
+
+    /**
+     * the number of metas (MT) in each result, and the number of
+     * distinct meta names they are drawn from; none by default.
+     */
+    public void setMetasPerResult(int metasPerResult, int metaNames) {
+        this.metasPerResult = metasPerResult;
+        this.metaNames = Math.max(1, metaNames);
+    }
+
+    /**
+     * the number of fields (FS) in each result; 1 by default.
+     */
+    public void setFieldsPerResult(int fieldsPerResult) {
+        this.fieldsPerResult = fieldsPerResult;
+    }
+
+    /**
+     * the dynamic navigation (PARM) tree: the number of attributes
+     * (PMT) and of values (PV) under each; none by default.
+     */
+    public void setNavigation(int attributes, int valuesPerAttribute) {
+        this.navigationAttributes = attributes;
+        this.navigationValues = valuesPerAttribute;
+    }
+
+    /**
+     * the number of OneBox modules (OBRES) and of results in each;
+     * none by default.
+     */
+    public void setOneBoxes(int modules, int resultsPerModule) {
+        this.oneBoxes = modules;
+        this.oneBoxResults = resultsPerModule;
+    }
+
+    /**
+     * the number of keymatches (GM); none by default.
+     */
+    public void setKeymatches(int keymatches) {
+        this.keymatches = keymatches;
+    }
+
+    /**
+     * the number of synonyms (OneSynonym); with any, a spelling
+     * suggestion is added as well. None by default.
+     */
+    public void setSynonyms(int synonyms) {
+        this.synonyms = synonyms;
+    }
+
+    /**
+     * @return a UTF-8 GSP document of the configured shape.
+     */
+    public byte[] generate() {
+        return generate(seed);
+    }
+
+    /**
+     * @return a document of the configured shape with words and values
+     * drawn from another seed.
+     */
+    public byte[] generate(long seed) {
+        Random random = new Random(seed);
+        StringBuffer sb = new StringBuffer(1024 + results * (600 + summaryLength + metasPerResult * 40));
+        String q = word(random) + " " + word(random);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n");
+        sb.append("<GSP VER=\"3.2\">\n<TM>0.0").append(random.nextInt(1000)).append("</TM>");
+        sb.append("<Q>").append(escape(q)).append("</Q>\n");
+        param(sb, "q", q);
+        param(sb, "access", "p");
+        param(sb, "output", "xml_no_dtd");
+        param(sb, "client", "default_frontend");
+        param(sb, "site", "default_collection");
+        param(sb, "num", String.valueOf(results));
+        param(sb, "ie", "UTF-8");
+        param(sb, "oe", "UTF-8");
+
+        if (synonyms > 0) {
+            sb.append("<Synonyms>");
+            for (int i = 0; i < synonyms; i++) {
+                sb.append("<OneSynonym q=\"").append(escape(word(random))).append("\">")
+                    .append(escape(word(random))).append("</OneSynonym>");
+            }
+            sb.append("</Synonyms>\n<Spelling><Suggestion q=\"").append(escape(q)).append("\">")
+                .append(escape("<b><i>" + q + "</i></b>")).append("</Suggestion></Spelling>\n");
+        }
+        for (int i = 0; i < keymatches; i++) {
+            sb.append("<GM><GL>http://keymatch.nosuch.test/").append(i).append("</GL><GD>")
+                .append(escape(text(random, 40))).append("</GD></GM>\n");
+        }
+        if (oneBoxes > 0) {
+            sb.append("<ENTOBRESULTS>\n");
+            for (int i = 0; i < oneBoxes; i++) {
+                oneBox(sb, random, i);
+            }
+            sb.append("</ENTOBRESULTS>\n");
+        }
+
+        sb.append("<RES SN=\"1\" EN=\"").append(results).append("\">\n");
+        sb.append("<M>").append(results * 10 + random.nextInt(1000)).append("</M>\n<FI/>");
+        sb.append("<NB><NU>/search?q=").append(escape(q.replace(' ', '+')))
+            .append("&amp;start=").append(results).append("</NU></NB>\n");
+        for (int i = 1; i <= results; i++) {
+            result(sb, random, i);
+        }
+        if (navigationAttributes > 0) {
+            sb.append("<PARM><PC>0</PC>\n");
+            for (int a = 0; a < navigationAttributes; a++) {
+                boolean range = a % 2 == 1;
+                sb.append("<PMT NM=\"attr").append(a).append("\" DN=\"Attribute ").append(a)
+                    .append("\" IR=\"").append(range ? 1 : 0).append("\" T=\"").append(range ? 4 : 0).append("\">");
+                for (int v = 0; v < navigationValues; v++) {
+                    if (range) {
+                        sb.append("<PV V=\"\" L=\"").append(2000 + v).append("-01-01\" H=\"")
+                            .append(2000 + v).append("-12-31\" C=\"");
+                    } else {
+                        sb.append("<PV V=\"").append(escape(word(random))).append(' ').append(v)
+                            .append("\" L=\"\" H=\"\" C=\"");
+                    }
+                    sb.append(1 + random.nextInt(5000)).append("\"/>");
+                }
+                sb.append("</PMT>\n");
+            }
+            sb.append("</PARM>\n");
+        }
+        sb.append("</RES>\n</GSP>\n");
+        try {
+            return sb.toString().getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e.toString());
+        }
+    }
+
+    /**
+     * serves a document of this shape for every request, with words
+     * and values seeded by the query string.
+     */
+    public StubAppliance.Responder responder() {
+        return new StubAppliance.Responder() {
+            public byte[] respond(String query) {
+                return generate(seed ^ (query == null ? 0 : query.hashCode()));
+            }
+        };
+    }
+
+    private void result(StringBuffer sb, Random random, int n) {
+        String url = "http://www.nosuch.test/" + word(random) + "/" + n + ".html";
+        sb.append("<R N=\"").append(n).append("\"><U>").append(escape(url))
+            .append("</U><UE>").append(escape(url)).append("</UE><T>")
+            .append(escape(text(random, 60))).append("</T><RK>")
+            .append(random.nextInt(11)).append("</RK>");
+        for (int i = 0; i < fieldsPerResult; i++) {
+            sb.append("<FS NAME=\"").append(i == 0 ? "date" : "field" + i).append("\" VALUE=\"")
+                .append(i == 0 ? "" : escape(word(random))).append("\"/>");
+        }
+        for (int i = 0; i < metasPerResult; i++) {
+            sb.append("<MT N=\"meta").append(random.nextInt(metaNames)).append("\" V=\"")
+                .append(escape(text(random, 20))).append("\"/>");
+        }
+        sb.append("<S>").append(escape(text(random, summaryLength))).append("</S><LANG>en</LANG>");
+        sb.append("<HAS><L/><C SZ=\"").append(1 + random.nextInt(100)).append("k\" CID=\"cid")
+            .append(Long.toHexString(random.nextLong() & Long.MAX_VALUE))
+            .append("\" ENC=\"UTF-8\"/></HAS></R>\n");
+    }
+
+    private void oneBox(StringBuffer sb, Random random, int n) {
+        sb.append("<OBRES><provider>Provider ").append(n).append("</provider><title><urlText>")
+            .append(escape(text(random, 30))).append("</urlText><urlLink>http://onebox.nosuch.test/")
+            .append(n).append("</urlLink></title><IMAGE_SOURCE>http://onebox.nosuch.test/")
+            .append(n).append(".jpg</IMAGE_SOURCE>\n");
+        for (int i = 0; i < oneBoxResults; i++) {
+            sb.append("<MODULE_RESULT><U>http://onebox.nosuch.test/").append(n).append('/').append(i)
+                .append("</U><Field name=\"display\">").append(escape(text(random, 20)))
+                .append("</Field><Field name=\"phone\">617-555-").append(1000 + random.nextInt(9000))
+                .append("</Field></MODULE_RESULT>\n");
+        }
+        sb.append("</OBRES>\n");
+    }
+
+    private static void param(StringBuffer sb, String name, String value) {
+        sb.append("<PARAM name=\"").append(name).append("\" value=\"").append(escape(value))
+            .append("\" original_value=\"").append(escape(value)).append("\"/>\n");
+    }
+
+    private static String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    /**
+     * words, some of them highlighted, up to about <code>length</code>
+     * characters.
+     */
+    private static String text(Random random, int length) {
+        StringBuffer sb = new StringBuffer(length + 16);
+        while (sb.length() < length) {
+            if (sb.length() > 0) sb.append(random.nextInt(8) == 0 ? " & " : " ");
+            String word = word(random);
+            if (random.nextInt(5) == 0) {
+                sb.append("<b>").append(word).append("</b>");
+            } else {
+                sb.append(word);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String escape(String s) {
+        StringBuffer retval = new StringBuffer(s.length() + 16);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '<': retval.append("&lt;"); break;
+            case '>': retval.append("&gt;"); break;
+            case '&': retval.append("&amp;"); break;
+            case '"': retval.append("&quot;"); break;
+            default: retval.append(c);
+            }
+        }
+        return retval.toString();
+    }
+}
@@ -0,0 +1,69 @@
+package net.sf.gsaapi;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import net.sf.gsaapi.http.PooledHttpTransport;
+
+/**
+ * Serves the 100-result fixtures from a local StubAppliance uncompressed,
+ * gzip-compressed and deflate-compressed, and prints the bytes sent per
+ * response and the end-to-end latency (fetch and parse) for each.
+ * On the loopback interface the bandwidth saved is free, so this shows
+ * the cost of decompression; on a real network the smaller responses
+ * are what matters.
+ */
+public class PerfTestCompression extends TestCase {
+
+    private static final String[] FIXTURES = {
+        "src/test/data/Simple100.xml",
+        "src/test/data/OneBox100.xml",
+    };
+    private static final String[] ENCODINGS = {null, "gzip", "deflate"};
+    private static final int QUERIES = 2000;
+    private static final int WARMUP_QUERIES = 500;
+
+    public void testCompression() throws Exception {
+        for (int f = 0; f < FIXTURES.length; f++) {
+            for (int e = 0; e < ENCODINGS.length; e++) {
+                run(FIXTURES[f], ENCODINGS[e]);
+            }
+        }
+    }
+
+    private void run(String fixture, String encoding) throws Exception {
+        StubAppliance stub = new StubAppliance(fixture);
+        stub.setContentEncoding(encoding);
+        stub.start();
+        PooledHttpTransport transport = new PooledHttpTransport();
+        try {
+            GSAClient client = new GSAClient("http", "127.0.0.1", stub.getPort(), "/search");
+            client.setTransport(transport);
+            GSAQuery query = new GSAQuery();
+            query.setQueryTerm(new GSAQuery.GSAQueryTerm("machine amazement"));
+            for (int i = 0; i < WARMUP_QUERIES; i++) {
+                client.getGSAResponse(query);
+            }
+            long bytesBefore = stub.getBytesSent();
+            long[] latencies = new long[QUERIES];
+            for (int i = 0; i < QUERIES; i++) {
+                long begin = System.nanoTime();
+                client.getGSAResponse(query);
+                latencies[i] = System.nanoTime() - begin;
+            }
+            Arrays.sort(latencies);
+            System.out.println(fixture.substring(fixture.lastIndexOf('/') + 1) + " "
+                    + (encoding == null ? "identity" : encoding) + ": "
+                    + ((stub.getBytesSent() - bytesBefore) / QUERIES) + " bytes/response, p50="
+                    + micros(latencies, 0.50) + "us, p99=" + micros(latencies, 0.99) + "us");
+        } finally {
+            transport.close();
+            stub.stop();
+        }
+    }
+
+    private static long micros(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1000;
+    }
+}
@@ -0,0 +1,133 @@
+package net.sf.gsaapi;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Measures the throughput and tail latency of GSAClient end to end
+ * against local StubAppliances, without a real GSA: a mix of fixtures
+ * served at once, appliance latency with occasional spikes (with and
+ * without hedging to a second appliance), and an appliance that fails
+ * some requests, drops connections and sends slowly.
+ */
+public class PerfTestEndToEnd extends TestCase {
+
+    private static final int THREADS = 16;
+    private static final int QUERIES_PER_THREAD = 300;
+    private static final int WARMUP_QUERIES_PER_THREAD = 50;
+
+    private static final String[] FIXTURES = {
+        "src/test/data/Simple10.xml", "src/test/data/OneBox10.xml",
+        "src/test/data/SuggestionsAndSynonyms.xml", "src/test/data/DynamicNavigation.xml"
+    };
+
+    private StubAppliance first;
+    private StubAppliance second;
+
+    protected void setUp() throws Exception {
+        first = new StubAppliance(FIXTURES);
+        first.setSeed(1);
+        first.start();
+        second = new StubAppliance(FIXTURES);
+        second.setSeed(2);
+        second.start();
+    }
+
+    protected void tearDown() throws Exception {
+        first.stop();
+        second.stop();
+    }
+
+    private GSAClient client(StubAppliance stub) {
+        return new GSAClient("http", "127.0.0.1", stub.getPort(), "/search");
+    }
+
+    public void testFixtures() throws Exception {
+        run("fixtures, no latency", client(first));
+    }
+
+    public void testLatencySpikes() throws Exception {
+        first.setLatency(spiky());
+        run("5ms log-normal, 1% +100ms", client(first));
+    }
+
+    public void testLatencySpikesHedged() throws Exception {
+        first.setLatency(spiky());
+        second.setLatency(spiky());
+        GSAClient client = new GSAClient(new GSAEndpoint[] {
+            new GSAEndpoint("http", "127.0.0.1", first.getPort(), "/search"),
+            new GSAEndpoint("http", "127.0.0.1", second.getPort(), "/search")
+        });
+        client.setHedgePercentile(0.95);
+        run("5ms log-normal, 1% +100ms, hedged", client);
+        System.out.println("  hedges: " + client.getHedgeCount() + ", won: " + client.getHedgeWinCount());
+    }
+
+    public void testFaults() throws Exception {
+        first.setLatency(StubAppliance.logNormalLatency(5, 0.5));
+        first.setErrorRate(0.01, 503);
+        first.setResetRate(0.01);
+        first.setDrip(1024, 1);
+        run("1% errors, 1% resets, 1KB/ms drip", client(first));
+        System.out.println("  injected errors: " + first.getErrorCount() + ", resets: " + first.getResetCount());
+    }
+
+    private static StubAppliance.Latency spiky() {
+        return StubAppliance.withSpikes(StubAppliance.logNormalLatency(5, 0.5), 0.01, 100);
+    }
+
+    private static void run(String label, GSAClient client) throws Exception {
+        execute(client, WARMUP_QUERIES_PER_THREAD, null, new AtomicInteger());
+        long[] latencies = new long[THREADS * QUERIES_PER_THREAD];
+        AtomicInteger failures = new AtomicInteger();
+        long start = System.nanoTime();
+        execute(client, QUERIES_PER_THREAD, latencies, failures);
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        System.out.println(label + ": "
+                + (latencies.length * 1000000000L / elapsed) + " queries/sec, p50="
+                + micros(latencies, 0.50) + "us, p99=" + micros(latencies, 0.99)
+                + "us, p99.9=" + micros(latencies, 0.999)
+                + "us, max=" + (latencies[latencies.length - 1] / 1000) + "us, failed="
+                + failures.get());
+    }
+
+    /**
+     * runs the searches on THREADS threads, each with its own query
+     * terms so that no two searches are coalesced.
+     */
+    private static void execute(final GSAClient client, final int perThread,
+            final long[] latencies, final AtomicInteger failures) throws Exception {
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final int offset = t * perThread;
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        GSAQuery query = new GSAQuery();
+                        query.setQueryTerm(new GSAQuery.GSAQueryTerm("q" + (offset + i)));
+                        long begin = System.nanoTime();
+                        try {
+                            client.getGSAResponse(query);
+                        } catch (Exception e) {
+                            failures.incrementAndGet();
+                        }
+                        if (latencies != null) latencies[offset + i] = System.nanoTime() - begin;
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (int t = 0; t < THREADS; t++) {
+            threads[t].join();
+        }
+    }
+
+    private static long micros(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1000;
+    }
+}
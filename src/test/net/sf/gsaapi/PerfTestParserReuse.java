@@ -0,0 +1,100 @@
+package net.sf.gsaapi;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import junit.framework.TestCase;
+
+/**
+ * Parses Simple10.xml from 1 to 64 threads, with a new parser created
+ * under the factory lock for every document (as ResponseBuilder used to)
+ * and with the pooled parsers of ResponseBuilder.
+ */
+public class PerfTestParserReuse extends TestCase {
+
+    private static final int[] THREADS = { 1, 2, 4, 8, 16, 32, 64 };
+    private static final long MEASURE_MILLIS = 2000;
+
+    private static final SAXParserFactory factory = SAXParserFactory.newInstance();
+
+    interface Parse {
+        GSAResponse parse(byte[] xml) throws Exception;
+    }
+
+    private static final Parse NEW_PARSER = new Parse() {
+        public GSAResponse parse(byte[] xml) throws Exception {
+            SAXParser parser;
+            synchronized (factory) {
+                parser = factory.newSAXParser();
+            }
+            ResponseBuilder handler = new ResponseBuilder();
+            parser.parse(new ByteArrayInputStream(xml), handler, GSAClient.DEFAULT_XML_SYSTEM_ID);
+            return handler.getGSAResponse();
+        }
+        public String toString() {
+            return "new parser";
+        }
+    };
+
+    private static final Parse POOLED = new Parse() {
+        public GSAResponse parse(byte[] xml) {
+            return ResponseBuilder.buildResponse(new ByteArrayInputStream(xml), GSAClient.DEFAULT_XML_SYSTEM_ID);
+        }
+        public String toString() {
+            return "pooled";
+        }
+    };
+
+    public void testThreads() throws Exception {
+        byte[] xml = StubAppliance.readFile("src/test/data/Simple10.xml");
+        run(NEW_PARSER, xml, 8, 1000);
+        run(POOLED, xml, 8, 1000);
+        for (int i = 0; i < THREADS.length; i++) {
+            long before = run(NEW_PARSER, xml, THREADS[i], MEASURE_MILLIS);
+            long after = run(POOLED, xml, THREADS[i], MEASURE_MILLIS);
+            System.out.println(THREADS[i] + " threads: " + NEW_PARSER + " " + before + " parses/s, "
+                    + POOLED + " " + after + " parses/s");
+        }
+    }
+
+    private static long run(final Parse parse, final byte[] xml, int threads, final long millis)
+            throws Exception {
+        final AtomicLong parses = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final Throwable[] failure = new Throwable[1];
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        long deadline = System.currentTimeMillis() + millis;
+                        long n = 0;
+                        do {
+                            if (parse.parse(xml).getResults().size() != 10) {
+                                throw new IllegalStateException("wrong result count");
+                            }
+                            n++;
+                        } while (System.currentTimeMillis() < deadline);
+                        parses.addAndGet(n);
+                    } catch (Throwable t) {
+                        failure[0] = t;
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+            thread.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+        if (failure[0] != null) throw new RuntimeException(failure[0]);
+        return parses.get() * 1000000000L / elapsed;
+    }
+}
@@ -0,0 +1,94 @@
+package net.sf.gsaapi;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import net.sf.gsaapi.http.PooledHttpTransport;
+
+/**
+ * Compares the default <code>URL.openStream()</code> path with the
+ * PooledHttpTransport against a local StubAppliance. Prints queries/sec
+ * and latency percentiles for each.
+ */
+public class PerfTestPooledTransport extends TestCase {
+
+    private static final int THREADS = 16;
+    private static final int QUERIES_PER_THREAD = 500;
+    private static final int WARMUP_QUERIES_PER_THREAD = 100;
+
+    private StubAppliance stub;
+
+    protected void setUp() throws Exception {
+        stub = new StubAppliance("src/test/data/Simple10.xml");
+        stub.start();
+    }
+
+    protected void tearDown() throws Exception {
+        stub.stop();
+    }
+
+    public void testUrlOpenStream() throws Exception {
+        GSAClient client = new GSAClient("http", "127.0.0.1", stub.getPort(), "/search");
+        run("URL.openStream", client);
+    }
+
+    public void testPooledTransport() throws Exception {
+        PooledHttpTransport transport = new PooledHttpTransport();
+        transport.setMaxConnectionsPerHost(THREADS);
+        GSAClient client = new GSAClient("http", "127.0.0.1", stub.getPort(), "/search");
+        client.setTransport(transport);
+        run("PooledHttpTransport", client);
+        System.out.println("  connections created: " + transport.getConnectionsCreated());
+        transport.close();
+    }
+
+    private void run(String label, final GSAClient client) throws Exception {
+        final GSAQuery query = new GSAQuery();
+        query.setQueryTerm(new GSAQuery.GSAQueryTerm("machine amazement"));
+        query.setFrontend("default_frontend");
+
+        execute(client, query, WARMUP_QUERIES_PER_THREAD, null);
+        final long[] latencies = new long[THREADS * QUERIES_PER_THREAD];
+        long start = System.nanoTime();
+        execute(client, query, QUERIES_PER_THREAD, latencies);
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        System.out.println(label + ": "
+                + (latencies.length * 1000000000L / elapsed) + " queries/sec, p50="
+                + micros(latencies, 0.50) + "us, p99=" + micros(latencies, 0.99)
+                + "us, max=" + (latencies[latencies.length - 1] / 1000) + "us");
+    }
+
+    private static void execute(final GSAClient client, final GSAQuery query,
+            final int perThread, final long[] latencies) throws Exception {
+        final Exception[] failure = new Exception[1];
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final int offset = t * perThread;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < perThread; i++) {
+                            long begin = System.nanoTime();
+                            client.getGSAResponse(query);
+                            if (latencies != null) latencies[offset + i] = System.nanoTime() - begin;
+                        }
+                    } catch (Exception e) {
+                        failure[0] = e;
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (int t = 0; t < THREADS; t++) {
+            threads[t].join();
+        }
+        if (failure[0] != null) throw failure[0];
+    }
+
+    private static long micros(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1000;
+    }
+}
@@ -0,0 +1,106 @@
+package net.sf.gsaapi;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+
+import junit.framework.TestCase;
+
+import net.sf.gsaapi.constants.ResponsePart;
+
+/**
+ * Compares the SAX, StAX and scanning response parsers on the 100 result
+ * fixtures and on a large synthetic response. Reports throughput and
+ * the bytes allocated per parse by the parsing thread.
+ */
+public class PerfTestResponseParsers extends TestCase {
+
+    private static final int WARMUP_MILLIS = 2000;
+    private static final int MEASURE_MILLIS = 3000;
+
+    public void testSimple100() throws Exception {
+        compare("Simple100", StubAppliance.readFile("src/test/data/Simple100.xml"));
+    }
+
+    public void testOneBox100() throws Exception {
+        compare("OneBox100", StubAppliance.readFile("src/test/data/OneBox100.xml"));
+    }
+
+    public void testSynthetic5000() throws Exception {
+        compare("Synthetic5000", synthetic(StubAppliance.readFile("src/test/data/Simple100.xml"), 50));
+    }
+
+    /**
+     * binding only the url, title and metas of each result.
+     */
+    public void testProjectedOneBox100() throws Exception {
+        ResponsePart[] parts = { ResponsePart.TITLE, ResponsePart.METAS };
+        byte[] xml = StubAppliance.readFile("src/test/data/OneBox100.xml");
+        compare("OneBox100", xml, null);
+        compare("OneBox100 title+metas", xml, parts);
+    }
+
+    /**
+     * repeats the results of a fixture to build a large response.
+     */
+    static byte[] synthetic(byte[] fixture, int copies) throws Exception {
+        String xml = new String(fixture, "UTF-8");
+        int first = xml.indexOf("<R N=");
+        int end = xml.lastIndexOf("</R>") + "</R>".length();
+        String results = xml.substring(first, end);
+        StringBuffer sb = new StringBuffer(xml.length() + results.length() * copies);
+        sb.append(xml.substring(0, first));
+        for (int i = 0; i < copies; i++) {
+            sb.append(results);
+        }
+        sb.append(xml.substring(end));
+        return sb.toString().getBytes("UTF-8");
+    }
+
+    private void compare(String name, byte[] xml) throws Exception {
+        compare(name, xml, null);
+    }
+
+    private void compare(String name, byte[] xml, ResponsePart[] parts) throws Exception {
+        GSAResponseParser[] parsers = { GSAResponseParser.SAX, GSAResponseParser.STAX, GSAResponseParser.SCANNER };
+        for (int i = 0; i < parsers.length; i++) {
+            run(parsers[i], xml, parts, WARMUP_MILLIS);
+        }
+        for (int i = 0; i < parsers.length; i++) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            int parses = run(parsers[i], xml, parts, MEASURE_MILLIS);
+            long elapsed = System.nanoTime() - start;
+            long allocated = allocatedBefore < 0 ? -1 : allocatedBytes() - allocatedBefore;
+            System.out.println(name + " " + parsers[i] + ": "
+                    + (parses * 1000000000L / elapsed) + " parses/s, "
+                    + (elapsed / parses / 1000) + "us/parse, "
+                    + (allocated < 0 ? "n/a" : (allocated / parses / 1024) + "KB allocated/parse")
+                    + " (" + xml.length / 1024 + "KB document)");
+        }
+    }
+
+    private static int run(GSAResponseParser parser, byte[] xml, ResponsePart[] parts, long millis) {
+        long deadline = System.currentTimeMillis() + millis;
+        int parses = 0;
+        do {
+            GSAResponse response = parser.parse(
+                    new ByteArrayInputStream(xml), GSAClient.DEFAULT_XML_SYSTEM_ID, parts, null);
+            if (response.getResults().isEmpty()) throw new IllegalStateException("no results");
+            parses++;
+        } while (System.currentTimeMillis() < deadline);
+        return parses;
+    }
+
+    /**
+     * @return bytes allocated so far by the current thread, or -1 if
+     * the JVM cannot tell.
+     */
+    static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
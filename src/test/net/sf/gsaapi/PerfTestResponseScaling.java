@@ -0,0 +1,58 @@
+package net.sf.gsaapi;
+
+import java.io.ByteArrayInputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Parses generated responses of each GspGenerator shape with 10 to 5000
+ * results, and reports the bytes allocated and the time spent per
+ * result by each parser, to show how the binder scales with the size
+ * and shape of a response.
+ */
+public class PerfTestResponseScaling extends TestCase {
+
+    private static final int[] RESULTS = { 10, 100, 1000, 5000 };
+    private static final int WARMUP_MILLIS = 300;
+    private static final int MEASURE_MILLIS = 700;
+
+    private static final GSAResponseParser[] PARSERS = {
+        GSAResponseParser.SAX, GSAResponseParser.STAX, GSAResponseParser.SCANNER
+    };
+
+    public void testScaling() throws Exception {
+        for (int s = 0; s < GspGenerator.SHAPES.length; s++) {
+            for (int r = 0; r < RESULTS.length; r++) {
+                byte[] xml = GspGenerator.shape(GspGenerator.SHAPES[s], RESULTS[r]).generate();
+                StringBuffer line = new StringBuffer();
+                line.append(GspGenerator.SHAPES[s]).append(" x").append(RESULTS[r])
+                    .append(" (").append(xml.length / 1024).append("KB):");
+                for (int p = 0; p < PARSERS.length; p++) {
+                    run(PARSERS[p], xml, RESULTS[r], WARMUP_MILLIS);
+                    long allocatedBefore = PerfTestResponseParsers.allocatedBytes();
+                    long start = System.nanoTime();
+                    int parses = run(PARSERS[p], xml, RESULTS[r], MEASURE_MILLIS);
+                    long elapsed = System.nanoTime() - start;
+                    long allocated = PerfTestResponseParsers.allocatedBytes() - allocatedBefore;
+                    long perResult = (long) parses * RESULTS[r];
+                    line.append(' ').append(PARSERS[p]).append('=')
+                        .append(allocatedBefore < 0 ? "n/a" : String.valueOf(allocated / perResult))
+                        .append("B/").append(elapsed / perResult / 1000.0).append("us");
+                }
+                System.out.println(line + " per result");
+            }
+        }
+    }
+
+    private static int run(GSAResponseParser parser, byte[] xml, int results, long millis) {
+        long deadline = System.currentTimeMillis() + millis;
+        int parses = 0;
+        do {
+            GSAResponse response = parser.parse(
+                    new ByteArrayInputStream(xml), GSAClient.DEFAULT_XML_SYSTEM_ID, null, null);
+            if (response.getResults().size() != results) throw new IllegalStateException("wrong result count");
+            parses++;
+        } while (System.currentTimeMillis() < deadline);
+        return parses;
+    }
+}
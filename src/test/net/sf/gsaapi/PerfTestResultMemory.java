@@ -0,0 +1,135 @@
+package net.sf.gsaapi;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Measures the heap retained by parsed 100 result pages, and the GC
+ * activity while parsing pages under sustained load with a window of
+ * recent pages kept alive (as by a response cache). The pages carry
+ * 8 metas and 2 fields per result.
+ */
+public class PerfTestResultMemory extends TestCase {
+
+    private static final int RETAINED_PAGES = 500;
+    private static final int WARMUP_MILLIS = 2000;
+    private static final int MEASURE_MILLIS = 10000;
+
+    public void testHeapPerPage() throws Exception {
+        byte[] plain = StubAppliance.readFile("src/test/data/Simple100.xml");
+        System.out.println("Simple100: " + heapPerPage(plain) / 1024 + "KB retained/page");
+        System.out.println("Simple100 with metas: " + heapPerPage(withMetas(plain)) / 1024 + "KB retained/page");
+        byte[] meta = TestSymbolTable.scaled(StubAppliance.readFile("src/test/data/Meta.xml"), 100);
+        System.out.println("Meta x100: " + heapPerPage(meta) / 1024 + "KB retained/page");
+    }
+
+    public void testSustainedLoad() throws Exception {
+        byte[] xml = withMetas(StubAppliance.readFile("src/test/data/Simple100.xml"));
+        GSAResponse[] window = new GSAResponse[RETAINED_PAGES];
+        load(xml, window, WARMUP_MILLIS);
+        long collections = collectionCount();
+        long gcMillis = collectionTime();
+        long start = System.nanoTime();
+        long parses = load(xml, window, MEASURE_MILLIS);
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        collections = collectionCount() - collections;
+        gcMillis = collectionTime() - gcMillis;
+        System.out.println("sustained load: " + parses * 1000 / elapsedMillis + " pages/s, "
+                + collections * 1000 / parses + " GCs per 1000 pages, "
+                + gcMillis * 100 / elapsedMillis + "% time in GC");
+    }
+
+    /**
+     * adds 8 metas and 2 fields to every result of a fixture.
+     */
+    static byte[] withMetas(byte[] fixture) throws Exception {
+        StringBuffer extra = new StringBuffer();
+        String[] names = { "author", "description", "keywords", "language",
+                "modified", "category", "department", "region" };
+        for (int i = 0; i < names.length; i++) {
+            extra.append("<MT N=\"").append(names[i]).append("\" V=\"value of ").append(names[i]).append("\"/>");
+        }
+        extra.append("<FS NAME=\"date\" VALUE=\"Jan 1, 2008\"/><FS NAME=\"site\" VALUE=\"example\"/>");
+        String xml = new String(fixture, "UTF-8");
+        StringBuffer sb = new StringBuffer(xml.length() * 3);
+        int from = 0;
+        for (int end; (end = xml.indexOf("</R>", from)) >= 0; from = end + "</R>".length()) {
+            sb.append(xml.substring(from, end)).append(extra).append("</R>");
+        }
+        sb.append(xml.substring(from));
+        return sb.toString().getBytes("UTF-8");
+    }
+
+    private static long heapPerPage(byte[] xml) {
+        GSAResponse[] pages = new GSAResponse[RETAINED_PAGES];
+        parse(xml);
+        long before = usedHeap();
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = parse(xml);
+        }
+        long after = usedHeap();
+        touch(pages);
+        return (after - before) / pages.length;
+    }
+
+    private static long load(byte[] xml, GSAResponse[] window, long millis) {
+        long deadline = System.currentTimeMillis() + millis;
+        long parses = 0;
+        do {
+            window[(int) (parses % window.length)] = parse(xml);
+            parses++;
+        } while (System.currentTimeMillis() < deadline);
+        return parses;
+    }
+
+    private static GSAResponse parse(byte[] xml) {
+        GSAResponse response = GSAResponseParser.SAX.parse(
+                new ByteArrayInputStream(xml), GSAClient.DEFAULT_XML_SYSTEM_ID, null, null);
+        if (response.getResults().size() != 100) throw new IllegalStateException("wrong result count");
+        return response;
+    }
+
+    /**
+     * reads the metas of every result, so that the pages stay reachable
+     * until the heap has been measured.
+     */
+    private static void touch(GSAResponse[] pages) {
+        int n = 0;
+        for (int i = 0; i < pages.length; i++) {
+            List results = pages[i].getResults();
+            for (int r = 0; r < results.size(); r++) {
+                n += ((GSAResult) results.get(r)).getMetas().size();
+            }
+        }
+        if (n < 0) throw new IllegalStateException();
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static long collectionCount() {
+        long retval = 0;
+        for (Iterator it = ManagementFactory.getGarbageCollectorMXBeans().iterator(); it.hasNext();) {
+            retval += ((GarbageCollectorMXBean) it.next()).getCollectionCount();
+        }
+        return retval;
+    }
+
+    private static long collectionTime() {
+        long retval = 0;
+        for (Iterator it = ManagementFactory.getGarbageCollectorMXBeans().iterator(); it.hasNext();) {
+            retval += ((GarbageCollectorMXBean) it.next()).getCollectionTime();
+        }
+        return retval;
+    }
+}
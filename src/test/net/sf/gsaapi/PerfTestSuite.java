@@ -8,6 +8,13 @@ public class PerfTestSuite {
     public static Test suite() {
         TestSuite suite= new TestSuite();
         suite.addTestSuite(PerfTestXmlParsing.class);
+        suite.addTestSuite(PerfTestPooledTransport.class);
+        suite.addTestSuite(PerfTestResponseParsers.class);
+        suite.addTestSuite(PerfTestParserReuse.class);
+        suite.addTestSuite(PerfTestCompression.class);
+        suite.addTestSuite(PerfTestResultMemory.class);
+        suite.addTestSuite(PerfTestEndToEnd.class);
+        suite.addTestSuite(PerfTestResponseScaling.class);
         return suite;
     }
 }
@@ -0,0 +1,429 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A stand-in for a search appliance that serves GSP XML documents
+ * (fixtures, or the output of a {@link Responder}) from the local
+ * loopback interface. Used by the transport tests and benchmarks so
+ * that they can run without a real GSA.
+ * <pre>
+ * StubAppliance stub = new StubAppliance("src/test/data/Simple10.xml");
+ * stub.start();
+ * GSAClient client = new GSAClient("http", "localhost", stub.getPort(), "/search");
+ * ...
+ * stub.stop();
+ * </pre>
+ * The stub can also misbehave like a loaded appliance: responses can
+ * be delayed by a {@link Latency} distribution, a fraction of them can
+ * fail with an HTTP error or have their connection dropped half way
+ * through the body, and bodies can be sent as a slow drip.
+ */
+public class StubAppliance {
+
+    static {
+        // otherwise Nagle's algorithm adds ~40ms to every keep-alive response
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    /**
+     * produces the response body for a request.
+     */
+    public interface Responder {
+        /**
+         * @param query the raw query string of the request (may be null)
+         * @return the GSP XML to send back
+         */
+        byte[] respond(String query) throws IOException;
+    }
+
+    /**
+     * a distribution of response delays.
+     */
+    public interface Latency {
+        /**
+         * @return the delay of the next response, in milliseconds.
+         */
+        long nextMillis(Random random);
+    }
+
+    /**
+     * @return the same delay for every response.
+     */
+    public static Latency fixedLatency(final long millis) {
+        return new Latency() {
+            public long nextMillis(Random random) {
+                return millis;
+            }
+        };
+    }
+
+    /**
+     * @return delays evenly spread between <code>minMillis</code> and
+     * <code>maxMillis</code>.
+     */
+    public static Latency uniformLatency(final long minMillis, final long maxMillis) {
+        return new Latency() {
+            public long nextMillis(Random random) {
+                return minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+            }
+        };
+    }
+
+    /**
+     * @return log-normally distributed delays, the usual shape of
+     * service latencies: most near the median, with a long tail that
+     * grows with <code>sigma</code>.
+     */
+    public static Latency logNormalLatency(final double medianMillis, final double sigma) {
+        return new Latency() {
+            public long nextMillis(Random random) {
+                return Math.round(medianMillis * Math.exp(sigma * random.nextGaussian()));
+            }
+        };
+    }
+
+    /**
+     * @return the delays of <code>base</code>, with a fraction
+     * <code>probability</code> of them (garbage collections, index
+     * merges on the appliance) taking <code>spikeMillis</code> longer.
+     */
+    public static Latency withSpikes(final Latency base, final double probability, final long spikeMillis) {
+        return new Latency() {
+            public long nextMillis(Random random) {
+                long retval = base.nextMillis(random);
+                if (random.nextDouble() < probability) retval += spikeMillis;
+                return retval;
+            }
+        };
+    }
+
+    private final Responder responder;
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private HttpServer server;
+    private ExecutorService executor;
+    private volatile boolean chunked;
+    private volatile Latency latency;
+    private final Random random = new Random();
+    private volatile double errorRate;
+    private volatile int errorStatus;
+    private volatile double resetRate;
+    private volatile int dripBytes;
+    private volatile long dripIntervalMillis;
+    private final AtomicInteger errorCount = new AtomicInteger();
+    private final AtomicInteger resetCount = new AtomicInteger();
+    private volatile String contentEncoding;
+    private final AtomicLong bytesSent = new AtomicLong();
+    private byte[] lastBody;
+    private byte[] lastEncoded;
+    private String lastEncoding;
+
+    /**
+     * @param fixturePath path of the GSP XML file to serve for every request.
+     */
+    public StubAppliance(String fixturePath) throws IOException {
+        this(readFile(fixturePath));
+    }
+
+    public StubAppliance(final byte[] body) {
+        this(new Responder() {
+            public byte[] respond(String query) {
+                return body;
+            }
+        });
+    }
+
+    /**
+     * @param fixturePaths paths of GSP XML files, served in turn.
+     */
+    public StubAppliance(String[] fixturePaths) throws IOException {
+        this(rotate(fixturePaths));
+    }
+
+    private static Responder rotate(String[] fixturePaths) throws IOException {
+        final byte[][] bodies = new byte[fixturePaths.length][];
+        for (int i = 0; i < bodies.length; i++) {
+            bodies[i] = readFile(fixturePaths[i]);
+        }
+        final AtomicInteger next = new AtomicInteger();
+        return new Responder() {
+            public byte[] respond(String query) {
+                return bodies[(next.getAndIncrement() & Integer.MAX_VALUE) % bodies.length];
+            }
+        };
+    }
+
+    /**
+     * @param responder generates the body for each request.
+     */
+    public StubAppliance(Responder responder) {
+        this.responder = responder;
+    }
+
+    /**
+     * starts listening on an ephemeral loopback port.
+     */
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 256);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            server = null;
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return number of requests served since the stub was created.
+     */
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * send bodies with chunked transfer encoding instead of a Content-Length.
+     */
+    public void setChunked(boolean chunked) {
+        this.chunked = chunked;
+    }
+
+    /**
+     * wait this long before sending each response.
+     */
+    public void setDelayMillis(long delayMillis) {
+        setLatency(delayMillis > 0 ? fixedLatency(delayMillis) : null);
+    }
+
+    /**
+     * delay each response by a time drawn from a distribution; null
+     * (the default) for no delay.
+     */
+    public void setLatency(Latency latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * seeds the random choices of latencies and faults, to repeat a run.
+     */
+    public void setSeed(long seed) {
+        random.setSeed(seed);
+    }
+
+    /**
+     * answer a fraction of the requests with an HTTP error instead of
+     * a response.
+     * @param rate between 0 (the default) and 1
+     * @param status the HTTP status of the errors, e.g. 503
+     */
+    public void setErrorRate(double rate, int status) {
+        this.errorStatus = status;
+        this.errorRate = rate;
+    }
+
+    /**
+     * drop the connection of a fraction of the responses after their
+     * headers and half of their body have been sent, as when an
+     * appliance restarts or a proxy times out.
+     * @param rate between 0 (the default) and 1
+     */
+    public void setResetRate(double rate) {
+        this.resetRate = rate;
+    }
+
+    /**
+     * send bodies in pieces of <code>bytes</code>, pausing
+     * <code>intervalMillis</code> between them, as over a slow or
+     * congested link. 0 bytes (the default) sends bodies at once.
+     */
+    public void setDrip(int bytes, long intervalMillis) {
+        this.dripIntervalMillis = intervalMillis;
+        this.dripBytes = bytes;
+    }
+
+    /**
+     * @return number of requests answered with an injected HTTP error.
+     */
+    public int getErrorCount() {
+        return errorCount.get();
+    }
+
+    /**
+     * @return number of connections dropped in the middle of a response.
+     */
+    public int getResetCount() {
+        return resetCount.get();
+    }
+
+    /**
+     * compress responses with "gzip" or "deflate" when the request
+     * accepts that encoding; null (the default) to never compress.
+     */
+    public void setContentEncoding(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    /**
+     * @return number of response body bytes sent, after compression.
+     */
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        try {
+            drain(exchange.getRequestBody());
+            Latency latency = this.latency;
+            if (latency != null && !sleep(latency.nextMillis(random))) {
+                return;
+            }
+            if (errorRate > 0 && random.nextDouble() < errorRate) {
+                errorCount.incrementAndGet();
+                byte[] message = "Service Unavailable".getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "text/plain");
+                exchange.sendResponseHeaders(errorStatus, message.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(message);
+                out.close();
+                return;
+            }
+            boolean reset = resetRate > 0 && random.nextDouble() < resetRate;
+            byte[] body = responder.respond(exchange.getRequestURI().getRawQuery());
+            String encoding = contentEncoding;
+            String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (encoding != null && accepted != null && accepted.indexOf(encoding) >= 0) {
+                body = encode(body, encoding);
+                exchange.getResponseHeaders().set("Content-Encoding", encoding);
+            }
+            bytesSent.addAndGet(body.length);
+            exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=UTF-8");
+            exchange.sendResponseHeaders(200, chunked && !reset ? 0 : body.length);
+            OutputStream out = exchange.getResponseBody();
+            int length = reset ? body.length / 2 : body.length;
+            int step = dripBytes > 0 ? dripBytes : length;
+            for (int off = 0; off < length; off += step) {
+                if (off > 0 && !sleep(dripIntervalMillis)) {
+                    return;
+                }
+                out.write(body, off, Math.min(step, length - off));
+                out.flush();
+            }
+            if (reset) {
+                resetCount.incrementAndGet();
+                // the server drops the connection of a handler that fails
+                throw new IOException("connection reset by the stub");
+            }
+            out.close();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * @return false if interrupted.
+     */
+    private static boolean sleep(long millis) {
+        if (millis <= 0) return true;
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException ie) {
+            return false;
+        }
+    }
+
+    /**
+     * compresses the body, remembering the result for the last body.
+     */
+    private synchronized byte[] encode(byte[] body, String encoding) throws IOException {
+        if (body == lastBody && encoding.equals(lastEncoding)) return lastEncoded;
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(body.length / 4);
+        OutputStream out = "gzip".equals(encoding) ? new GZIPOutputStream(bos) : new DeflaterOutputStream(bos);
+        out.write(body);
+        out.close();
+        lastBody = body;
+        lastEncoding = encoding;
+        lastEncoded = bos.toByteArray();
+        return lastEncoded;
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buf = new byte[512];
+        while (in.read(buf) >= 0) {
+        }
+        in.close();
+    }
+
+    static byte[] readFile(String path) throws IOException {
+        FileInputStream fis = new FileInputStream(path);
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = fis.read(buf)) >= 0) {
+                bos.write(buf, 0, n);
+            }
+            return bos.toByteArray();
+        } finally {
+            fis.close();
+        }
+    }
+}
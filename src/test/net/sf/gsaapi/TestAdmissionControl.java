@@ -0,0 +1,186 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.gsaapi.constants.CircuitState;
+import net.sf.gsaapi.http.PooledHttpTransport;
+
+public class TestAdmissionControl extends GSATestCase {
+
+    private StubAppliance stub;
+    private volatile boolean down;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        stub = new StubAppliance("src/test/data/Simple10.xml");
+        stub.start();
+    }
+
+    protected void tearDown() throws Exception {
+        stub.stop();
+        super.tearDown();
+    }
+
+    private GSAClient newClient() {
+        GSAClient client = client(stub);
+        client.setTransport(new PooledHttpTransport() {
+            public InputStream get(String url) throws IOException {
+                if (down) throw new IOException("appliance down");
+                return super.get(url);
+            }
+        });
+        return client;
+    }
+
+    private static void assertFails(GSAClient client, Class expected) {
+        try {
+            client.getGSAResponse(query("machine amazement"));
+            fail("expected " + expected.getName());
+        } catch (IOException ioe) {
+            assertEquals(expected, ioe.getClass());
+        }
+    }
+
+    public void testDisabledByDefault() throws Exception {
+        GSAClient client = newClient();
+        down = true;
+        for (int i = 0; i < 10; i++) {
+            assertFails(client, IOException.class);
+        }
+        assertEquals(CircuitState.CLOSED, client.getCircuitState());
+        assertEquals(0, client.getConcurrencyLimit());
+        assertEquals(0, client.getRejectedCount());
+    }
+
+    public void testCircuitBreaker() throws Exception {
+        GSAClient client = newClient();
+        client.setCircuitBreaker(3, 200, TimeUnit.MILLISECONDS);
+        down = true;
+        for (int i = 0; i < 3; i++) {
+            assertEquals(CircuitState.CLOSED, client.getCircuitState());
+            assertFails(client, IOException.class);
+        }
+        assertEquals(CircuitState.OPEN, client.getCircuitState());
+        assertFails(client, GSARejectedException.class);
+        assertEquals(1, client.getRejectedCount());
+        assertEquals(1, client.getCircuitOpenCount());
+
+        // a failed trial opens the circuit again
+        Thread.sleep(250);
+        assertEquals(CircuitState.HALF_OPEN, client.getCircuitState());
+        assertFails(client, IOException.class);
+        assertEquals(CircuitState.OPEN, client.getCircuitState());
+        assertEquals(2, client.getCircuitOpenCount());
+
+        // a successful trial closes it
+        Thread.sleep(250);
+        down = false;
+        assertEquals(10, client.getGSAResponse(query("machine amazement")).getResults().size());
+        assertEquals(CircuitState.CLOSED, client.getCircuitState());
+        assertEquals(10, client.getGSAResponse(query("machine amazement")).getResults().size());
+    }
+
+    public void testNotFoundKeepsCircuitClosed() throws Exception {
+        GSAClient client = client(stub);
+        client.setTransport(new PooledHttpTransport() {
+            public InputStream get(String url) throws IOException {
+                throw new java.io.FileNotFoundException(url);
+            }
+        });
+        client.setCircuitBreaker(2, 1, TimeUnit.MINUTES);
+        for (int i = 0; i < 5; i++) {
+            assertFails(client, java.io.FileNotFoundException.class);
+        }
+        assertEquals(CircuitState.CLOSED, client.getCircuitState());
+    }
+
+    public void testConcurrencyLimitFailsFast() throws Exception {
+        stub.setDelayMillis(300);
+        GSAClient client = newClient();
+        client.setAdaptiveConcurrency(4, 100);
+        assertEquals(4, client.getConcurrencyLimit());
+        CompletableFuture[] futures = new CompletableFuture[12];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = client.getGSAResponseAsync(query("machine amazement"));
+        }
+        int rejected = 0;
+        for (int i = 0; i < futures.length; i++) {
+            try {
+                futures[i].get();
+            } catch (ExecutionException ee) {
+                assertTrue(ee.getCause() instanceof GSARejectedException);
+                rejected++;
+            }
+        }
+        assertEquals(8, rejected);
+        assertEquals(8, client.getRejectedCount());
+        assertEquals(4, stub.getRequestCount());
+        assertEquals(0, client.getConcurrentSearchCount());
+    }
+
+    /**
+     * keeps the limiter full, completing one search at a time.
+     */
+    private static void drive(ConcurrencyLimiter limiter, long latencyNanos, int completions) {
+        while (limiter.tryAcquire()) {
+        }
+        for (int i = 0; i < completions; i++) {
+            limiter.succeeded(latencyNanos);
+            while (limiter.tryAcquire()) {
+            }
+        }
+    }
+
+    public void testLimitFollowsLatency() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 200);
+        drive(limiter, 1000000, 100);
+        int grown = limiter.getLimit();
+        assertTrue("limit " + grown, grown > 20);
+        // searches start to queue: latency rises well above the average
+        drive(limiter, 10000000, 30);
+        int shrunk = limiter.getLimit();
+        assertTrue("limit " + shrunk + " after " + grown, shrunk < grown / 2);
+        limiter.failed();
+        assertEquals((int) (shrunk * 0.9), limiter.getLimit(), 1);
+        assertTrue(limiter.getLimit() >= ConcurrencyLimiter.MIN_LIMIT);
+    }
+
+    public void testLimitBounds() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 5);
+        drive(limiter, 1000000, 200);
+        assertEquals(5, limiter.getLimit());
+        for (int i = 0; i < 50; i++) {
+            if (limiter.getInFlight() == 0) assertTrue(limiter.tryAcquire());
+            limiter.failed();
+        }
+        assertEquals(ConcurrencyLimiter.MIN_LIMIT, limiter.getLimit());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+    }
+}
@@ -0,0 +1,125 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.InputStream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestAsyncSearch extends GSATestCase {
+
+    private StubAppliance stub;
+    private GSAClient client;
+
+    protected void setUp() throws Exception {
+        stub = new StubAppliance("src/test/data/Simple10.xml");
+        stub.start();
+        client = new GSAClient("http", "127.0.0.1", stub.getPort(), "/search");
+    }
+
+    protected void tearDown() throws Exception {
+        stub.stop();
+    }
+
+    private static GSAQuery newQuery() {
+        GSAQuery query = new GSAQuery();
+        query.setQueryTerm(new GSAQuery.GSAQueryTerm("machine amazement"));
+        query.setFrontend("default_frontend");
+        return query;
+    }
+
+    public void testGetGSAResponseAsync() throws Exception {
+        CompletableFuture<GSAResponse> future = client.getGSAResponseAsync(newQuery());
+        GSAResponse response = future.get(5, TimeUnit.SECONDS);
+        assertEquals(10, response.getResults().size());
+    }
+
+    public void testSearchAsync() throws Exception {
+        InputStream istream = client.searchAsync(newQuery()).get(5, TimeUnit.SECONDS);
+        GSAResponse response = ResponseBuilder.buildResponse(istream, GSAClient.DEFAULT_XML_SYSTEM_ID);
+        assertEquals(10, response.getResults().size());
+    }
+
+    public void testCustomExecutor() throws Exception {
+        final AtomicInteger executed = new AtomicInteger();
+        final ExecutorService pool = Executors.newFixedThreadPool(2);
+        client.setExecutor(new Executor() {
+            public void execute(Runnable command) {
+                executed.incrementAndGet();
+                pool.execute(command);
+            }
+        });
+        CompletableFuture<GSAResponse> f1 = client.getGSAResponseAsync(newQuery());
+        CompletableFuture<GSAResponse> f2 = client.getGSAResponseAsync(newQuery());
+        assertEquals(10, f1.get(5, TimeUnit.SECONDS).getResults().size());
+        assertEquals(10, f2.get(5, TimeUnit.SECONDS).getResults().size());
+        assertEquals(2, executed.get());
+        pool.shutdown();
+    }
+
+    public void testDeadline() throws Exception {
+        stub.setDelayMillis(1000);
+        CompletableFuture<GSAResponse> future =
+                client.getGSAResponseAsync(newQuery(), 100, TimeUnit.MILLISECONDS);
+        long start = System.currentTimeMillis();
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("expected the deadline to expire");
+        } catch (ExecutionException ee) {
+            assertTrue(ee.getCause() instanceof TimeoutException);
+        }
+        assertTrue(System.currentTimeMillis() - start < 900);
+    }
+
+    public void testCancel() throws Exception {
+        stub.setDelayMillis(1000);
+        CompletableFuture<GSAResponse> future = client.getGSAResponseAsync(newQuery());
+        Thread.sleep(50);
+        assertTrue(future.cancel(true));
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("expected cancellation");
+        } catch (CancellationException expected) {
+        }
+        assertTrue(future.isCancelled());
+    }
+
+    public void testFailure() throws Exception {
+        client = new GSAClient("http", "127.0.0.1", stub.getPort(), "/no-such-path");
+        stub.stop();
+        try {
+            client.getGSAResponseAsync(newQuery()).get(5, TimeUnit.SECONDS);
+            fail("expected the search to fail");
+        } catch (ExecutionException expected) {
+        }
+        stub = new StubAppliance("src/test/data/Simple10.xml");
+        stub.start();
+    }
+}
@@ -0,0 +1,78 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.util.Iterator;
+import java.util.Map;
+
+public class TestCompactMap extends GSATestCase {
+
+    public void testSmall() {
+        CompactMap map = new CompactMap();
+        map.add("author", "a");
+        map.add("title", "t");
+        map.add(new String("author"), "b");
+        assertEquals(2, map.size());
+        assertEquals("b", map.get("author"));
+        assertNull(map.get("missing"));
+        assertEquals("{author=b, title=t}", map.toString());
+    }
+
+    /**
+     * a result with hundreds of metas, many of them repeated, looked up
+     * through the hash index.
+     */
+    public void testIndexed() {
+        CompactMap map = new CompactMap();
+        int n = 1000;
+        for (int i = 0; i < n; i++) {
+            map.add("meta" + i, "v" + i);
+        }
+        for (int i = 0; i < n; i += 3) {
+            map.add("meta" + i, "w" + i);
+        }
+        map.add(null, "null key");
+        assertEquals(n + 1, map.size());
+        for (int i = 0; i < n; i++) {
+            assertEquals((i % 3 == 0 ? "w" : "v") + i, map.get("meta" + i));
+        }
+        assertEquals("null key", map.get(null));
+        assertFalse(map.containsKey("meta" + n));
+        // document order is kept
+        Iterator it = map.entrySet().iterator();
+        for (int i = 0; i < n; i++) {
+            assertEquals("meta" + i, ((Map.Entry) it.next()).getKey());
+        }
+        assertNull(((Map.Entry) it.next()).getKey());
+    }
+
+    public void testReadOnly() {
+        CompactMap map = new CompactMap();
+        map.add("author", "a");
+        try {
+            map.put("title", "t");
+            fail("the map is read-only");
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+}
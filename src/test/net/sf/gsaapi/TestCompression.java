@@ -0,0 +1,146 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import net.sf.gsaapi.http.PooledHttpTransport;
+import net.sf.gsaapi.util.Util;
+
+public class TestCompression extends GSATestCase {
+
+    private static final String FIXTURE = "src/test/data/Simple100.xml";
+
+    private StubAppliance stub;
+    private byte[] fixture;
+    private String expected;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        fixture = StubAppliance.readFile(FIXTURE);
+        expected = TestStaxResponseBuilder.describe(
+                ResponseBuilder.buildResponse(new ByteArrayInputStream(fixture), null));
+        stub = new StubAppliance(fixture);
+        stub.start();
+    }
+
+    protected void tearDown() throws Exception {
+        stub.stop();
+        super.tearDown();
+    }
+
+    private GSAClient newClient(PooledHttpTransport transport) {
+        GSAClient client = client(stub);
+        client.setTransport(transport);
+        return client;
+    }
+
+    private void assertCompressed(GSAClient client, int requests) throws Exception {
+        for (int i = 0; i < requests; i++) {
+            assertEquals(expected, TestStaxResponseBuilder.describe(client.getGSAResponse(query("machine amazement"))));
+        }
+        assertEquals(requests, stub.getRequestCount());
+        assertTrue("sent " + stub.getBytesSent() + " bytes", stub.getBytesSent() < requests * fixture.length / 3);
+    }
+
+    public void testGzipUrlConnection() throws Exception {
+        stub.setContentEncoding("gzip");
+        assertCompressed(newClient(null), 3);
+    }
+
+    public void testDeflateUrlConnection() throws Exception {
+        stub.setContentEncoding("deflate");
+        assertCompressed(newClient(null), 3);
+    }
+
+    public void testGzipPooled() throws Exception {
+        stub.setContentEncoding("gzip");
+        PooledHttpTransport transport = new PooledHttpTransport();
+        assertCompressed(newClient(transport), 5);
+        // the compressed body is read to the end, so the connection is reused
+        assertEquals(1, transport.getConnectionsCreated());
+        assertEquals(0, transport.getLeasedConnections());
+        transport.close();
+    }
+
+    public void testGzipChunkedPooled() throws Exception {
+        stub.setContentEncoding("gzip");
+        stub.setChunked(true);
+        PooledHttpTransport transport = new PooledHttpTransport();
+        assertCompressed(newClient(transport), 5);
+        assertEquals(1, transport.getConnectionsCreated());
+        transport.close();
+    }
+
+    public void testDeflatePooled() throws Exception {
+        stub.setContentEncoding("deflate");
+        PooledHttpTransport transport = new PooledHttpTransport();
+        assertCompressed(newClient(transport), 3);
+        transport.close();
+    }
+
+    public void testCompressionDisabled() throws Exception {
+        stub.setContentEncoding("gzip");
+        PooledHttpTransport transport = new PooledHttpTransport();
+        transport.setAcceptCompression(false);
+        GSAClient client = newClient(transport);
+        assertEquals(expected, TestStaxResponseBuilder.describe(client.getGSAResponse(query("machine amazement"))));
+        client = newClient(null);
+        client.setAcceptCompression(false);
+        assertEquals(expected, TestStaxResponseBuilder.describe(client.getGSAResponse(query("machine amazement"))));
+        assertEquals(2L * fixture.length, stub.getBytesSent());
+        transport.close();
+    }
+
+    public void testRawDeflate() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DeflaterOutputStream out = new DeflaterOutputStream(bos, new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+        out.write(fixture);
+        out.close();
+        InputStream in = Util.decodeContent(new ByteArrayInputStream(bos.toByteArray()), "Deflate");
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        for (int n; (n = in.read(buf)) >= 0;) {
+            decoded.write(buf, 0, n);
+        }
+        in.close();
+        assertTrue(java.util.Arrays.equals(fixture, decoded.toByteArray()));
+    }
+
+    public void testUnsupportedEncoding() throws Exception {
+        try {
+            Util.decodeContent(new ByteArrayInputStream(fixture), "br");
+            fail("expected IOException");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().indexOf("br") >= 0);
+        }
+        InputStream in = new ByteArrayInputStream(fixture);
+        assertSame(in, Util.decodeContent(in, null));
+        assertSame(in, Util.decodeContent(in, "identity"));
+    }
+}
@@ -0,0 +1,155 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.xml.sax.InputSource;
+
+/**
+ * Parses documents whose DOCTYPE points at a local server that counts
+ * connections. Any attempt to resolve the DTD over the network fails
+ * the test.
+ */
+public class TestEntityResolver extends GSATestCase {
+
+    private ServerSocket server;
+    private final AtomicInteger connections = new AtomicInteger();
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        server = new ServerSocket(0, 50, java.net.InetAddress.getByName("127.0.0.1"));
+        Thread acceptor = new Thread(new Runnable() {
+            public void run() {
+                while (!server.isClosed()) {
+                    try {
+                        Socket s = server.accept();
+                        connections.incrementAndGet();
+                        s.close();
+                    } catch (IOException ioe) {
+                        // closed
+                    }
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    protected void tearDown() throws Exception {
+        server.close();
+        super.tearDown();
+    }
+
+    private String baseUrl() {
+        return "http://127.0.0.1:" + server.getLocalPort() + "/";
+    }
+
+    private static InputStream document(String doctype) throws Exception {
+        String xml = new String(StubAppliance.readFile("src/test/data/Simple10.xml"), "UTF-8");
+        int gsp = xml.indexOf("<GSP");
+        xml = xml.substring(0, gsp) + doctype + "\n" + xml.substring(gsp);
+        return new ByteArrayInputStream(xml.getBytes("UTF-8"));
+    }
+
+    public void testRelativeDtdNotFetched() throws Exception {
+        GSAResponseParser[] parsers = { GSAResponseParser.SAX, GSAResponseParser.STAX };
+        for (int i = 0; i < parsers.length; i++) {
+            GSAResponse response = parsers[i].parse(
+                    document("<!DOCTYPE GSP SYSTEM \"google.dtd\">"), baseUrl(), null, null);
+            assertEquals(10, response.getResults().size());
+        }
+        assertEquals(0, connections.get());
+    }
+
+    public void testUnknownDtdNotFetched() throws Exception {
+        GSAResponse response = GSAResponseParser.SAX.parse(
+                document("<!DOCTYPE GSP SYSTEM \"" + baseUrl() + "dtd/other.dtd\">"), baseUrl(), null, null);
+        assertEquals(10, response.getResults().size());
+        assertEquals(0, connections.get());
+    }
+
+    public void testClientDoesNotFetchDtd() throws Exception {
+        String xml = new String(StubAppliance.readFile("src/test/data/Simple10.xml"), "UTF-8");
+        int gsp = xml.indexOf("<GSP");
+        xml = xml.substring(0, gsp) + "<!DOCTYPE GSP SYSTEM \"google.dtd\">\n" + xml.substring(gsp);
+        StubAppliance stub = new StubAppliance(xml.getBytes("UTF-8"));
+        stub.start();
+        try {
+            GSAClient client = new GSAClient("http", "127.0.0.1", stub.getPort(), "/search");
+            GSAQuery query = new GSAQuery();
+            query.setQueryTerm(new GSAQuery.GSAQueryTerm("dtd"));
+            assertEquals(10, client.getGSAResponse(query).getResults().size());
+            assertEquals("only the search itself", 1, stub.getRequestCount());
+        } finally {
+            stub.stop();
+        }
+    }
+
+    public void testBundledDtd() throws Exception {
+        InputSource source = new GSAEntityResolver().resolveEntity(null, baseUrl() + "google.dtd");
+        String dtd = new String(readAll(source.getByteStream()), "UTF-8");
+        assertTrue(dtd.indexOf("<!ELEMENT GSP") >= 0);
+        assertEquals(0, connections.get());
+    }
+
+    public void testRegisteredEntity() throws Exception {
+        GSAEntityResolver resolver = new GSAEntityResolver();
+        String systemId = baseUrl() + "custom.dtd";
+        assertEquals(0, readAll(resolver.resolveEntity(null, systemId).getByteStream()).length);
+        resolver.register(systemId, "<!ELEMENT GSP ANY>".getBytes("UTF-8"));
+        assertEquals(18, readAll(resolver.resolveEntity(null, systemId).getByteStream()).length);
+        assertEquals(0, connections.get());
+    }
+
+    public void testNetworkFetchCached() throws Exception {
+        StubAppliance stub = new StubAppliance("<!ELEMENT GSP ANY>".getBytes("UTF-8"));
+        stub.start();
+        try {
+            GSAEntityResolver resolver = new GSAEntityResolver();
+            resolver.setNetworkFetchAllowed(true);
+            String systemId = "http://127.0.0.1:" + stub.getPort() + "/dtd/appliance.dtd";
+            for (int i = 0; i < 3; i++) {
+                assertEquals(18, readAll(resolver.resolveEntity(null, systemId).getByteStream()).length);
+            }
+            assertEquals("fetched once", 1, stub.getRequestCount());
+        } finally {
+            stub.stop();
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        java.io.ByteArrayOutputStream bos = new java.io.ByteArrayOutputStream();
+        byte[] buf = new byte[512];
+        int n;
+        while ((n = in.read(buf)) >= 0) {
+            bos.write(buf, 0, n);
+        }
+        return bos.toByteArray();
+    }
+}
@@ -0,0 +1,103 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+public class TestGspGenerator extends GSATestCase {
+
+    private static final GSAResponseParser[] PARSERS = {
+        GSAResponseParser.SAX, GSAResponseParser.STAX, GSAResponseParser.SCANNER
+    };
+
+    private static GSAResponse parse(GSAResponseParser parser, byte[] xml) {
+        return parser.parse(new ByteArrayInputStream(xml), GSAClient.DEFAULT_XML_SYSTEM_ID, null, null);
+    }
+
+    public void testDeterministic() {
+        GspGenerator generator = new GspGenerator(7);
+        generator.setMetasPerResult(5, 10);
+        GspGenerator same = new GspGenerator(7);
+        same.setMetasPerResult(5, 10);
+        assertTrue(Arrays.equals(generator.generate(), same.generate()));
+        assertFalse(Arrays.equals(generator.generate(), generator.generate(8)));
+    }
+
+    public void testShape() {
+        GspGenerator generator = new GspGenerator(42);
+        generator.setResults(250);
+        generator.setSummaryLength(2000);
+        generator.setMetasPerResult(100, 30);
+        generator.setFieldsPerResult(3);
+        generator.setNavigation(12, 40);
+        generator.setOneBoxes(5, 8);
+        generator.setKeymatches(2);
+        generator.setSynonyms(3);
+        byte[] xml = generator.generate();
+
+        String expected = null;
+        for (int p = 0; p < PARSERS.length; p++) {
+            GSAResponse response = parse(PARSERS[p], xml);
+            assertEquals(250, response.getResults().size());
+            GSAResult result = (GSAResult) response.getResults().get(17);
+            assertTrue(result.getSummary().length() >= 2000);
+            assertTrue(result.getMetas().size() > 20 && result.getMetas().size() <= 30);
+            assertEquals(3, result.getFields().size());
+            assertEquals(12, response.getNavigationResponse().getResults().size());
+            GSADynamicNavigationAttribute attribute =
+                (GSADynamicNavigationAttribute) response.getNavigationResponse().getResults().get(3);
+            assertEquals(40, attribute.getResultList().size());
+            assertEquals(5, response.getOneBoxResponses().size());
+            assertEquals(8, ((GSAOneBoxResponse) response.getOneBoxResponses().get(4)).getModuleResults().size());
+            assertEquals(2, response.getKeymatchResults().size());
+            assertEquals(3, response.getSynonymsWithMarkup().size());
+            assertNotNull(response.getSpelling());
+
+            String described = TestStaxResponseBuilder.describe(response);
+            if (expected == null) expected = described;
+            assertEquals(PARSERS[p].toString(), expected, described);
+        }
+    }
+
+    public void testShapes() {
+        for (int i = 0; i < GspGenerator.SHAPES.length; i++) {
+            byte[] xml = GspGenerator.shape(GspGenerator.SHAPES[i], 30).generate();
+            assertEquals(GspGenerator.SHAPES[i], 30, parse(GSAResponseParser.SCANNER, xml).getResults().size());
+        }
+        try {
+            GspGenerator.shape("round", 10);
+            fail("no such shape");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testResponder() throws Exception {
+        GspGenerator generator = new GspGenerator(1);
+        generator.setResults(20);
+        StubAppliance.Responder responder = generator.responder();
+        assertTrue(Arrays.equals(responder.respond("q=a"), responder.respond("q=a")));
+        assertFalse(Arrays.equals(responder.respond("q=a"), responder.respond("q=b")));
+        assertEquals(20, parse(GSAResponseParser.SAX, responder.respond(null)).getResults().size());
+    }
+}
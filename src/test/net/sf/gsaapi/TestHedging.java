@@ -0,0 +1,135 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestHedging extends GSATestCase {
+
+    private static final long SLOW_MILLIS = 400;
+
+    private StubAppliance first;
+    private StubAppliance second;
+    private final AtomicInteger requests = new AtomicInteger();
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        final byte[] body = StubAppliance.readFile("src/test/data/Simple10.xml");
+        // every fourth request to either appliance is slow
+        StubAppliance.Responder responder = new StubAppliance.Responder() {
+            public byte[] respond(String query) throws IOException {
+                if (requests.incrementAndGet() % 4 == 0) {
+                    try {
+                        Thread.sleep(SLOW_MILLIS);
+                    } catch (InterruptedException ie) {
+                        throw new IOException("interrupted");
+                    }
+                }
+                return body;
+            }
+        };
+        first = new StubAppliance(responder);
+        first.start();
+        second = new StubAppliance(responder);
+        second.start();
+    }
+
+    protected void tearDown() throws Exception {
+        first.stop();
+        second.stop();
+        super.tearDown();
+    }
+
+    private GSAClient newClient() {
+        return new GSAClient(new GSAEndpoint[] {
+            new GSAEndpoint("http", "127.0.0.1", first.getPort(), "/search"),
+            new GSAEndpoint("http", "127.0.0.1", second.getPort(), "/search")
+        });
+    }
+
+    /**
+     * @return the slowest of <code>n</code> searches, in milliseconds.
+     */
+    private static long slowest(GSAClient client, int n) throws IOException {
+        long max = 0;
+        for (int i = 0; i < n; i++) {
+            long start = System.nanoTime();
+            assertEquals(10, client.getGSAResponse(query("q" + i)).getResults().size());
+            max = Math.max(max, (System.nanoTime() - start) / 1000000);
+        }
+        return max;
+    }
+
+    public void testDisabledByDefault() throws Exception {
+        GSAClient client = newClient();
+        assertEquals(0.0, client.getHedgePercentile(), 0);
+        assertEquals(GSAClient.DEFAULT_HEDGE_BUDGET, client.getHedgeBudget(), 0);
+        assertTrue(slowest(client, 40) >= SLOW_MILLIS);
+        assertEquals(0, client.getHedgeCount());
+        assertEquals(40, first.getRequestCount() + second.getRequestCount());
+    }
+
+    public void testHedgeCutsTailLatency() throws Exception {
+        GSAClient client = newClient();
+        client.setHedgePercentile(0.5);
+        client.setHedgeBudget(1);
+        // record enough latencies to derive the hedge delay
+        slowest(client, 30);
+        long hedges = client.getHedgeCount();
+        long wins = client.getHedgeWinCount();
+        long slowest = slowest(client, 40);
+        assertTrue("slowest search took " + slowest + "ms", slowest < SLOW_MILLIS / 2);
+        assertTrue(client.getHedgeCount() > hedges);
+        assertTrue(client.getHedgeWinCount() > wins);
+        assertTrue(client.getHedgeWinCount() <= client.getHedgeCount());
+    }
+
+    public void testBudgetCapsHedges() throws Exception {
+        GSAClient client = newClient();
+        client.setHedgePercentile(0.5);
+        client.setHedgeBudget(0.1);
+        slowest(client, 30);
+        slowest(client, 100);
+        // 10% of 130 searches, plus the allowance for bursts
+        assertTrue("hedged " + client.getHedgeCount() + " times", client.getHedgeCount() <= 23);
+        assertTrue(client.getHedgeCount() > 0);
+        // a hedge cancelled before it was sent never reaches an appliance
+        int sent = first.getRequestCount() + second.getRequestCount();
+        assertTrue(sent >= 130 && sent <= 130 + client.getHedgeCount());
+    }
+
+    public void testSettingsValidated() throws Exception {
+        GSAClient client = newClient();
+        try {
+            client.setHedgePercentile(1);
+            fail("percentile of 1 accepted");
+        } catch (IllegalArgumentException iae) {
+        }
+        try {
+            client.setHedgeBudget(-0.5);
+            fail("negative budget accepted");
+        } catch (IllegalArgumentException iae) {
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.gsaapi.http.PooledHttpTransport;
+
+public class TestLoadBalancing extends GSATestCase {
+
+    private StubAppliance fast;
+    private StubAppliance slow;
+
+    protected void tearDown() throws Exception {
+        if (fast != null) fast.stop();
+        if (slow != null) slow.stop();
+        super.tearDown();
+    }
+
+    private static GSAEndpoint endpoint(int port) {
+        return new GSAEndpoint("http", "127.0.0.1", port, "/search");
+    }
+
+    /**
+     * @return a loopback port with nothing listening on it.
+     */
+    private static int closedPort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        int port = socket.getLocalPort();
+        socket.close();
+        return port;
+    }
+
+    public void testSingleEndpoint() throws Exception {
+        GSAClient client = new GSAClient("http", "gsa.mysite.net", 8080, "search");
+        GSAEndpoint[] endpoints = client.getEndpoints();
+        assertEquals(1, endpoints.length);
+        assertEquals("http://gsa.mysite.net:8080/search", endpoints[0].toString());
+        assertEquals("gsa.mysite.net", client.getHost());
+    }
+
+    public void testPrefersFasterEndpoint() throws Exception {
+        fast = new StubAppliance("src/test/data/Simple10.xml");
+        fast.start();
+        slow = new StubAppliance("src/test/data/Simple10.xml");
+        slow.setDelayMillis(40);
+        slow.start();
+        // warm up the search path so that the first timings are not skewed
+        PooledHttpTransport transport = new PooledHttpTransport();
+        GSAClient warmup = new GSAClient(new GSAEndpoint[] {endpoint(fast.getPort()), endpoint(slow.getPort())});
+        warmup.setTransport(transport);
+        for (int i = 0; i < 20; i++) {
+            warmup.getGSAResponse(query("warmup" + i));
+        }
+        int fastWarmup = fast.getRequestCount();
+        int slowWarmup = slow.getRequestCount();
+        GSAEndpoint fastEndpoint = endpoint(fast.getPort());
+        GSAEndpoint slowEndpoint = endpoint(slow.getPort());
+        GSAClient client = new GSAClient(new GSAEndpoint[] {fastEndpoint, slowEndpoint});
+        client.setTransport(transport);
+        for (int i = 0; i < 60; i++) {
+            assertEquals(10, client.getGSAResponse(query("q" + i)).getResults().size());
+        }
+        assertEquals(fast.getRequestCount() - fastWarmup, fastEndpoint.getRequestCount());
+        assertEquals(slow.getRequestCount() - slowWarmup, slowEndpoint.getRequestCount());
+        assertEquals(60, fastEndpoint.getRequestCount() + slowEndpoint.getRequestCount());
+        assertTrue("slow endpoint got " + slowEndpoint.getRequestCount(), slowEndpoint.getRequestCount() < 10);
+        assertTrue(slowEndpoint.getLatencyAverage(TimeUnit.MILLISECONDS)
+                > fastEndpoint.getLatencyAverage(TimeUnit.MILLISECONDS));
+        assertEquals(0, fastEndpoint.getInFlightCount());
+        assertEquals(0, slowEndpoint.getInFlightCount());
+    }
+
+    public void testFailoverAndEjection() throws Exception {
+        fast = new StubAppliance("src/test/data/Simple10.xml");
+        fast.start();
+        GSAEndpoint down = endpoint(closedPort());
+        GSAEndpoint up = endpoint(fast.getPort());
+        GSAClient client = new GSAClient(new GSAEndpoint[] {down, up});
+        for (int i = 0; i < 30; i++) {
+            assertEquals(10, client.getGSAResponse(query("q" + i)).getResults().size());
+        }
+        assertEquals(30, fast.getRequestCount());
+        assertEquals(30, up.getRequestCount());
+        assertEquals(0, up.getFailureCount());
+        // ejected after three consecutive failures and left alone afterwards
+        assertEquals(GSAClient.DEFAULT_EJECTION_THRESHOLD, down.getFailureCount());
+        assertTrue(down.isEjected());
+        assertEquals(1, down.getEjectionCount());
+    }
+
+    public void testReadmittedAfterEjectionTime() throws Exception {
+        final boolean[] healthy = {false};
+        slow = new StubAppliance(new StubAppliance.Responder() {
+            public byte[] respond(String query) throws IOException {
+                if (!healthy[0]) throw new IOException("down");
+                return StubAppliance.readFile("src/test/data/Simple10.xml");
+            }
+        });
+        slow.start();
+        fast = new StubAppliance("src/test/data/Simple10.xml");
+        fast.start();
+        GSAEndpoint flaky = endpoint(slow.getPort());
+        GSAClient client = new GSAClient(new GSAEndpoint[] {flaky, endpoint(fast.getPort())});
+        client.setTransport(new PooledHttpTransport());
+        client.setEjectionThreshold(1);
+        client.setEjectionTime(100, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 10 && !flaky.isEjected(); i++) {
+            client.getGSAResponse(query("q" + i));
+        }
+        assertTrue(flaky.isEjected());
+        healthy[0] = true;
+        Thread.sleep(150);
+        assertFalse(flaky.isEjected());
+        long before = flaky.getRequestCount();
+        for (int i = 0; i < 20; i++) {
+            client.getGSAResponse(query("again" + i));
+        }
+        assertTrue(flaky.getRequestCount() > before);
+        assertEquals(0, flaky.getConsecutiveFailures());
+    }
+
+    public void testAllEndpointsDown() throws Exception {
+        GSAClient client = new GSAClient(new GSAEndpoint[] {endpoint(closedPort()), endpoint(closedPort())});
+        client.setMaxSearchAttempts(5);
+        try {
+            client.getGSAResponse(query("down"));
+            fail("expected the search to fail");
+        } catch (IOException expected) {
+        }
+        GSAEndpoint[] endpoints = client.getEndpoints();
+        assertEquals("each endpoint tried once", 1, endpoints[0].getRequestCount());
+        assertEquals(1, endpoints[1].getRequestCount());
+    }
+
+    public void testNotFoundNotRetried() throws Exception {
+        fast = new StubAppliance("src/test/data/Simple10.xml");
+        fast.start();
+        slow = new StubAppliance("src/test/data/Simple10.xml");
+        slow.start();
+        GSAClient client = new GSAClient(new GSAEndpoint[] {
+            new GSAEndpoint("http", "127.0.0.1", fast.getPort(), "/missing"),
+            new GSAEndpoint("http", "127.0.0.1", slow.getPort(), "/missing")});
+        client.setTransport(new PooledHttpTransport() {
+            public java.io.InputStream get(String url) throws IOException {
+                super.get(url).close();
+                throw new java.io.FileNotFoundException(url);
+            }
+        });
+        try {
+            client.getGSAResponse(query("missing"));
+            fail("expected FileNotFoundException");
+        } catch (java.io.FileNotFoundException expected) {
+        }
+        assertEquals(1, fast.getRequestCount() + slow.getRequestCount());
+    }
+}
@@ -0,0 +1,188 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.gsaapi.constants.ResponsePart;
+
+public class TestMappedResponseCache extends GSATestCase {
+
+    private File file;
+    private GSAMappedResponseCache cache;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("gsa-cache", ".bin");
+        file.delete();
+        cache = new GSAMappedResponseCache(file, 64 * 1024, 4, 1, TimeUnit.MINUTES);
+    }
+
+    protected void tearDown() throws Exception {
+        cache.close();
+        file.delete();
+        super.tearDown();
+    }
+
+    private GSAMappedResponseCache reopen() throws IOException {
+        cache.close();
+        cache = new GSAMappedResponseCache(file, 64 * 1024, 4, 1, TimeUnit.MINUTES);
+        return cache;
+    }
+
+    private static byte[] body(int i) throws Exception {
+        StringBuffer sb = new StringBuffer("<GSP VER=\"3.2\"><Q>");
+        for (int k = 0; k < 50; k++) {
+            sb.append("response ").append(i).append(' ');
+        }
+        return sb.append("</Q></GSP>").toString().getBytes("UTF-8");
+    }
+
+    public void testPutGet() throws Exception {
+        byte[] xml = StubAppliance.readFile("src/test/data/Simple100.xml");
+        cache.put("q=a&num=10", xml);
+        assertTrue(Arrays.equals(xml, cache.get("num=10&q=a")));
+        assertNull(cache.get("q=b"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.size());
+        cache.invalidate("q=a&num=10");
+        assertNull(cache.get("q=a&num=10"));
+    }
+
+    public void testSurvivesRestart() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            cache.put("q=" + i, body(i));
+        }
+        cache.put("q=3", body(33));
+        cache.invalidate("q=4");
+        reopen();
+        assertEquals(9, cache.size());
+        assertTrue(Arrays.equals(body(0), cache.get("q=0")));
+        assertTrue(Arrays.equals(body(33), cache.get("q=3")));
+        assertNull(cache.get("q=4"));
+        // the log continues where it left off
+        cache.put("q=10", body(10));
+        reopen();
+        assertTrue(Arrays.equals(body(10), cache.get("q=10")));
+        assertTrue(Arrays.equals(body(9), cache.get("q=9")));
+    }
+
+    public void testSegmentEviction() throws Exception {
+        int n = 2000;
+        for (int i = 0; i < n; i++) {
+            cache.put("q=" + i, body(i));
+        }
+        assertTrue(cache.getEvictionCount() > 0);
+        assertEquals(n, cache.size() + cache.getEvictionCount());
+        assertNull(cache.get("q=0"));
+        assertTrue(Arrays.equals(body(n - 1), cache.get("q=" + (n - 1))));
+        int size = cache.size();
+        reopen();
+        assertEquals(size, cache.size());
+        assertTrue(Arrays.equals(body(n - 1), cache.get("q=" + (n - 1))));
+    }
+
+    public void testExpiry() throws Exception {
+        cache.close();
+        cache = new GSAMappedResponseCache(file, 64 * 1024, 4, 50, TimeUnit.MILLISECONDS);
+        cache.put("q=a", body(1));
+        assertNotNull(cache.get("q=a"));
+        Thread.sleep(100);
+        assertNull(cache.get("q=a"));
+        assertEquals(1, cache.getExpirationCount());
+        assertEquals(0, cache.size());
+    }
+
+    public void testOtherLayoutCleared() throws Exception {
+        cache.put("q=a", body(1));
+        cache.close();
+        cache = new GSAMappedResponseCache(file, 128 * 1024, 4, 1, TimeUnit.MINUTES);
+        assertEquals(0, cache.size());
+        assertNull(cache.get("q=a"));
+    }
+
+    public void testCorruptRecordIgnored() throws Exception {
+        cache.put("q=a", body(1));
+        cache.put("q=b", body(2));
+        cache.close();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            // flip a byte in the payload of the first record
+            raf.seek(64 + 16 + 20 + 10);
+            int b = raf.read();
+            raf.seek(64 + 16 + 20 + 10);
+            raf.write(b ^ 0xff);
+        } finally {
+            raf.close();
+        }
+        reopen();
+        assertNull(cache.get("q=a"));
+    }
+
+    public void testLocked() throws Exception {
+        try {
+            new GSAMappedResponseCache(file, 64 * 1024, 4, 1, TimeUnit.MINUTES);
+            fail("the file is in use");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testClientStartsWarm() throws Exception {
+        StubAppliance stub = new StubAppliance("src/test/data/Simple10.xml");
+        stub.start();
+        try {
+            GSAClient client = new GSAClient("http", "127.0.0.1", stub.getPort(), "/search");
+            client.setSecondLevelCache(cache);
+            GSAQuery query = new GSAQuery();
+            query.setQueryTerm(new GSAQuery.GSAQueryTerm("warm"));
+            GSAResponse first = client.getGSAResponse(query);
+            assertEquals(10, first.getResults().size());
+            assertEquals(1, stub.getRequestCount());
+
+            // a new client on the reopened file, as after a restart
+            client = new GSAClient("http", "127.0.0.1", stub.getPort(), "/search");
+            client.setResponseCache(new GSAResponseCache(100, 1, TimeUnit.MINUTES));
+            client.setSecondLevelCache(reopen());
+            GSAResponse second = client.getGSAResponse(query);
+            assertEquals(TestStaxResponseBuilder.describe(first), TestStaxResponseBuilder.describe(second));
+            query.setResponseParts(new ResponsePart[] { ResponsePart.TITLE });
+            assertEquals(10, client.getGSAResponse(query).getResults().size());
+            assertEquals(1, stub.getRequestCount());
+            assertEquals(2, cache.getHitCount());
+            // the response cache is filled from the second level
+            query.setResponseParts(null);
+            assertSame(second, client.getGSAResponse(query));
+
+            query.setCacheable(false);
+            client.getGSAResponse(query);
+            assertEquals(2, stub.getRequestCount());
+        } finally {
+            stub.stop();
+        }
+    }
+}
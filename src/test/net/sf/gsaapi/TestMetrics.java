@@ -0,0 +1,159 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import net.sf.gsaapi.constants.SearchPhase;
+import net.sf.gsaapi.http.PooledHttpTransport;
+import net.sf.gsaapi.util.LatencyHistogram;
+
+public class TestMetrics extends GSATestCase {
+
+    private StubAppliance stub;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        stub = new StubAppliance("src/test/data/Simple10.xml");
+        stub.start();
+    }
+
+    protected void tearDown() throws Exception {
+        stub.stop();
+        super.tearDown();
+    }
+
+    private GSAClient newClient() {
+        return client(stub);
+    }
+
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i, TimeUnit.MICROSECONDS);
+        }
+        assertEquals(10000, histogram.getCount());
+        assertWithin(5000, histogram.getPercentile(50, TimeUnit.MICROSECONDS));
+        assertWithin(9900, histogram.getPercentile(99, TimeUnit.MICROSECONDS));
+        assertWithin(9990, histogram.getPercentile(99.9, TimeUnit.MICROSECONDS));
+        assertEquals(10000, histogram.getMax(TimeUnit.MICROSECONDS));
+        assertEquals(5000.5, histogram.getMean(TimeUnit.MICROSECONDS), 0.01);
+        assertEquals(0, new LatencyHistogram().getPercentile(99, TimeUnit.MILLISECONDS));
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50, TimeUnit.MICROSECONDS));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(expected + " ~ " + actual, Math.abs(expected - actual) <= expected / 64 + 1);
+    }
+
+    public void testConcurrentRecording() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < 100000; i++) {
+                        histogram.recordNanos(1000 + i % 1000);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join();
+        }
+        assertEquals(400000, histogram.getCount());
+        assertEquals(1999, histogram.getMax(TimeUnit.NANOSECONDS));
+        assertWithin(1500, histogram.getPercentile(50, TimeUnit.NANOSECONDS));
+    }
+
+    public void testPhases() throws Exception {
+        stub.setLatency(StubAppliance.fixedLatency(50));
+        GSAClient client = newClient();
+        GSAResponse response = client.getGSAResponse(query("phases"));
+        GSATimings timings = response.getTimings();
+        assertNotNull(timings);
+        assertTrue(timings.toString(), timings.get(SearchPhase.FIRST_BYTE, TimeUnit.MILLISECONDS) >= 50);
+        assertTrue(timings.get(SearchPhase.PARSE, TimeUnit.NANOSECONDS) > 0);
+        assertEquals((long) (response.getSearchTime() * 1000000000L),
+                timings.get(SearchPhase.APPLIANCE, TimeUnit.NANOSECONDS));
+        long phases = 0;
+        SearchPhase[] values = SearchPhase.values();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != SearchPhase.TOTAL && values[i] != SearchPhase.APPLIANCE) {
+                phases += timings.get(values[i], TimeUnit.NANOSECONDS);
+            }
+        }
+        assertTrue(phases <= timings.get(SearchPhase.TOTAL, TimeUnit.NANOSECONDS));
+
+        GSAMetrics metrics = client.getMetrics();
+        assertEquals(1, metrics.getSearchCount());
+        assertTrue(metrics.getFirstByte().getP50Millis() >= 49);
+        assertEquals(1, metrics.getHistogram(SearchPhase.PARSE).getCount());
+    }
+
+    public void testTransferOfSlowBody() throws Exception {
+        stub.setDrip(256, 10);
+        GSAClient client = newClient();
+        client.setTransport(new PooledHttpTransport());
+        GSATimings timings = client.getGSAResponse(query("drip")).getTimings();
+        assertTrue(timings.toString(), timings.get(SearchPhase.TRANSFER, TimeUnit.MILLISECONDS) >= 50);
+        assertTrue(timings.get(SearchPhase.PARSE, TimeUnit.MILLISECONDS)
+                < timings.get(SearchPhase.TRANSFER, TimeUnit.MILLISECONDS));
+    }
+
+    public void testCachedResponsesNotCounted() throws Exception {
+        GSAClient client = newClient();
+        client.setResponseCache(new GSAResponseCache(10, 1, TimeUnit.MINUTES));
+        GSAResponse first = client.getGSAResponse(query("cached"));
+        GSAResponse second = client.getGSAResponse(query("cached"));
+        assertSame(first.getTimings(), second.getTimings());
+        assertEquals(1, client.getMetrics().getSearchCount());
+        client.getMetrics().reset();
+        assertEquals(0, client.getMetrics().getSearchCount());
+    }
+
+    public void testMBean() throws Exception {
+        GSAClient client = newClient();
+        client.getGSAResponse(query("jmx"));
+        ObjectName name = client.getMetrics().registerMBean("test");
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(new Long(1), server.getAttribute(name, "SearchCount"));
+            CompositeData total = (CompositeData) server.getAttribute(name, "Total");
+            assertEquals(new Long(1), total.get("count"));
+            assertTrue(((Double) total.get("p99Millis")).doubleValue() > 0);
+            server.invoke(name, "reset", new Object[0], new String[0]);
+            assertEquals(0, client.getMetrics().getSearchCount());
+        } finally {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+    }
+}
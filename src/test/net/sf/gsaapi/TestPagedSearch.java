@@ -0,0 +1,176 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.gsaapi.util.Util;
+
+public class TestPagedSearch extends GSATestCase {
+
+    private static final int TOTAL_HITS = 250;
+
+    private StubAppliance stub;
+    private GSAClient client;
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+    private volatile int shortStart = -1;
+
+    protected void setUp() throws Exception {
+        stub = new StubAppliance(new StubAppliance.Responder() {
+            public byte[] respond(String query) throws java.io.IOException {
+                int now = concurrent.incrementAndGet();
+                while (true) {
+                    int max = maxConcurrent.get();
+                    if (now <= max || maxConcurrent.compareAndSet(max, now)) break;
+                }
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ie) {
+                }
+                concurrent.decrementAndGet();
+                String start = Util.extractQueryParamValue(query, "start");
+                String num = Util.extractQueryParamValue(query, "num");
+                int first = start == null ? 0 : Integer.parseInt(start);
+                int count = Integer.parseInt(num);
+                if (first == shortStart) count /= 2;
+                return page(first, count).getBytes("UTF-8");
+            }
+        });
+        stub.start();
+        client = new GSAClient("http", "127.0.0.1", stub.getPort(), "/search");
+    }
+
+    protected void tearDown() throws Exception {
+        stub.stop();
+    }
+
+    /**
+     * a window of results. Every window after the first also repeats the
+     * last result of the previous window, as happens when the index shifts
+     * between requests. Every window that stops short of the last hit
+     * carries a next link.
+     */
+    static String page(int start, int num) {
+        int first = start > 0 ? start - 1 : start;
+        int end = Math.min(start + num, TOTAL_HITS);
+        StringBuffer sbuf = new StringBuffer();
+        sbuf.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<GSP VER=\"3.2\"><TM>0.1").append(start)
+            .append("</TM><Q>paged</Q>");
+        if (first < end) {
+            sbuf.append("<RES SN=\"").append(first + 1).append("\" EN=\"").append(end).append("\"><M>")
+                .append(TOTAL_HITS).append("</M>");
+            for (int i = first; i < end; i++) {
+                sbuf.append("<R N=\"").append(i + 1).append("\"><U>http://docs.none.url/doc").append(i)
+                    .append("</U><T>Document ").append(i).append("</T><RK>5</RK><S>summary</S></R>");
+            }
+            if (end < TOTAL_HITS) {
+                sbuf.append("<NB><NU>/search?q=paged&amp;start=").append(end).append("&amp;num=").append(num)
+                    .append("</NU></NB>");
+            }
+            sbuf.append("</RES>");
+        }
+        sbuf.append("</GSP>");
+        return sbuf.toString();
+    }
+
+    private static GSAQuery newQuery() {
+        GSAQuery query = new GSAQuery();
+        query.setQueryTerm(new GSAQuery.GSAQueryTerm("paged"));
+        query.setFrontend("default_frontend");
+        return query;
+    }
+
+    public void testMergeInRankOrder() throws Exception {
+        GSAResponse response = client.getPagedGSAResponse(newQuery(), GSAQuery.MAX_RESULTS, 3);
+        List results = response.getResults();
+        assertEquals(TOTAL_HITS, results.size());
+        for (int i = 0; i < TOTAL_HITS; i++) {
+            assertEquals("http://docs.none.url/doc" + i, ((GSAResult) results.get(i)).getUrl());
+        }
+        assertEquals(1, response.getStartIndex());
+        assertEquals(TOTAL_HITS, response.getEndIndex());
+        assertEquals(TOTAL_HITS, response.getNumResults());
+        assertTrue("max concurrency was " + maxConcurrent.get(), maxConcurrent.get() <= 3);
+        assertTrue("max concurrency was " + maxConcurrent.get(), maxConcurrent.get() >= 2);
+    }
+
+    public void testShortMiddleWindow() throws Exception {
+        // the appliance collapses half of the second window, but later windows still have results
+        shortStart = 100;
+        GSAResponse response = client.getPagedGSAResponse(newQuery(), GSAQuery.MAX_RESULTS, 3);
+        List results = response.getResults();
+        assertEquals(150 + 51, results.size());
+        assertEquals("http://docs.none.url/doc149", ((GSAResult) results.get(149)).getUrl());
+        assertEquals("http://docs.none.url/doc199", ((GSAResult) results.get(150)).getUrl());
+        assertEquals("http://docs.none.url/doc249", ((GSAResult) results.get(200)).getUrl());
+        assertNull(response.getNextResponseUrl());
+    }
+
+    public void testScrollAheadAndLimit() throws Exception {
+        GSAQuery query = newQuery();
+        query.setScrollAhead(150);
+        GSAResponse response = client.getPagedGSAResponse(query, 60, 4);
+        List results = response.getResults();
+        assertEquals(61, results.size()); // the repeated doc149 is kept: it is not a duplicate within the range
+        assertEquals("http://docs.none.url/doc149", ((GSAResult) results.get(0)).getUrl());
+        assertEquals("http://docs.none.url/doc209", ((GSAResult) results.get(60)).getUrl());
+        // the query itself is left untouched
+        assertEquals(150, query.getScrollAhead());
+        assertEquals(0, query.getMaxResults());
+    }
+
+    public void testConcurrentIsFasterThanSerial() throws Exception {
+        long start = System.currentTimeMillis();
+        client.getPagedGSAResponse(newQuery(), 300, 1);
+        long serial = System.currentTimeMillis() - start;
+        start = System.currentTimeMillis();
+        client.getPagedGSAResponse(newQuery(), 300, 3);
+        long concurrentTime = System.currentTimeMillis() - start;
+        assertTrue("serial=" + serial + "ms, concurrent=" + concurrentTime + "ms", concurrentTime < serial);
+    }
+
+    public void testInvalidArguments() throws Exception {
+        try {
+            client.getPagedGSAResponse(newQuery(), 0, 1);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            client.getPagedGSAResponse(newQuery(), 10, 0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testFailure() throws Exception {
+        stub.stop();
+        try {
+            client.getPagedGSAResponse(newQuery(), 300, 3);
+            fail("expected an IOException");
+        } catch (java.io.IOException expected) {
+        }
+        stub.start();
+    }
+}
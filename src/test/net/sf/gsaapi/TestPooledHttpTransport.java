@@ -0,0 +1,248 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.KeyStore;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.TrustManagerFactory;
+
+import net.sf.gsaapi.http.PooledHttpTransport;
+
+public class TestPooledHttpTransport extends GSATestCase {
+
+    private StubAppliance stub;
+
+    protected void setUp() throws Exception {
+        stub = new StubAppliance("src/test/data/Simple10.xml");
+        stub.start();
+    }
+
+    protected void tearDown() throws Exception {
+        stub.stop();
+    }
+
+    private GSAClient newClient(PooledHttpTransport transport) {
+        GSAClient client = new GSAClient("http", "127.0.0.1", stub.getPort(), "/search");
+        client.setTransport(transport);
+        return client;
+    }
+
+    private static GSAQuery newQuery() {
+        GSAQuery query = new GSAQuery();
+        query.setQueryTerm(new GSAQuery.GSAQueryTerm("machine amazement"));
+        query.setFrontend("default_frontend");
+        return query;
+    }
+
+    public void testConnectionReuse() throws Exception {
+        PooledHttpTransport transport = new PooledHttpTransport();
+        GSAClient client = newClient(transport);
+        for (int i = 0; i < 5; i++) {
+            GSAResponse response = client.getGSAResponse(newQuery());
+            assertEquals(10, response.getResults().size());
+        }
+        assertEquals(5, stub.getRequestCount());
+        assertEquals(1, transport.getConnectionsCreated());
+        assertEquals(4, transport.getConnectionsReused());
+        assertEquals(1, transport.getIdleConnections());
+        assertEquals(0, transport.getLeasedConnections());
+        transport.close();
+    }
+
+    public void testChunkedResponse() throws Exception {
+        stub.setChunked(true);
+        PooledHttpTransport transport = new PooledHttpTransport();
+        GSAClient client = newClient(transport);
+        for (int i = 0; i < 3; i++) {
+            GSAResponse response = client.getGSAResponse(newQuery());
+            assertEquals(10, response.getResults().size());
+        }
+        assertEquals(1, transport.getConnectionsCreated());
+        transport.close();
+    }
+
+    public void testPoolExhaustion() throws Exception {
+        PooledHttpTransport transport = new PooledHttpTransport(1, 30000, 100);
+        GSAClient client = newClient(transport);
+        InputStream held = client.search(newQuery());
+        assertEquals(1, transport.getLeasedConnections());
+        try {
+            client.search(newQuery());
+            fail("expected the pool to be exhausted");
+        } catch (IOException expected) {
+        }
+        held.close();
+        assertEquals(0, transport.getLeasedConnections());
+        InputStream next = client.search(newQuery());
+        next.close();
+        assertEquals(1, transport.getConnectionsCreated());
+        transport.close();
+    }
+
+    public void testIdleEviction() throws Exception {
+        PooledHttpTransport transport = new PooledHttpTransport(4, 50, 1000);
+        GSAClient client = newClient(transport);
+        client.getGSAResponse(newQuery());
+        assertEquals(1, transport.getIdleConnections());
+        Thread.sleep(100);
+        transport.evictIdleConnections();
+        assertEquals(0, transport.getIdleConnections());
+        client.getGSAResponse(newQuery());
+        assertEquals(2, transport.getConnectionsCreated());
+        transport.close();
+    }
+
+    public void testServerClosedIdleConnection() throws Exception {
+        // a server that closes every connection after one response,
+        // without announcing it with a "Connection: close" header
+        final byte[] body = StubAppliance.readFile("src/test/data/Simple10.xml");
+        final ServerSocket server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread acceptor = new Thread() {
+            public void run() {
+                try {
+                    for (int i = 0; i < 2; i++) {
+                        Socket s = server.accept();
+                        InputStream in = s.getInputStream();
+                        int c, newlines = 0;
+                        while (newlines < 2 && (c = in.read()) >= 0) {
+                            if (c == '\n') newlines++;
+                            else if (c != '\r') newlines = 0;
+                        }
+                        OutputStream out = s.getOutputStream();
+                        out.write(("HTTP/1.1 200 OK\r\nContent-Length: " + body.length + "\r\n\r\n").getBytes("ISO-8859-1"));
+                        out.write(body);
+                        out.flush();
+                        s.close();
+                    }
+                } catch (IOException ioe) {
+                }
+            }
+        };
+        acceptor.start();
+        PooledHttpTransport transport = new PooledHttpTransport();
+        GSAClient client = new GSAClient("http", "127.0.0.1", server.getLocalPort(), "/search");
+        client.setTransport(transport);
+        assertEquals(10, client.getGSAResponse(newQuery()).getResults().size());
+        Thread.sleep(50);
+        assertEquals(10, client.getGSAResponse(newQuery()).getResults().size());
+        assertEquals(2, transport.getConnectionsCreated());
+        acceptor.join(5000);
+        server.close();
+        transport.close();
+    }
+
+    public void testHttpsHostVerified() throws Exception {
+        assertEquals(10, httpsSearch("ip:127.0.0.1").getResults().size());
+    }
+
+    public void testHttpsOtherHostRejected() throws Exception {
+        try {
+            httpsSearch("dns:other.example.com");
+            fail("the certificate is for another host");
+        } catch (SSLHandshakeException expected) {
+        }
+    }
+
+    /**
+     * searches an https appliance at 127.0.0.1 whose self-signed
+     * certificate, trusted by the client, names the given host.
+     * @param subjectAltName the host of the certificate, e.g. dns:host
+     */
+    private GSAResponse httpsSearch(String subjectAltName) throws Exception {
+        final char[] password = "changeit".toCharArray();
+        File file = File.createTempFile("gsa-https", ".p12");
+        file.delete();
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try {
+            String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+            Process process = new ProcessBuilder(new String[] { keytool, "-genkeypair", "-keyalg", "RSA",
+                    "-alias", "gsa", "-dname", "CN=gsa", "-ext", "SAN=" + subjectAltName, "-validity", "1",
+                    "-storetype", "PKCS12", "-keystore", file.getPath(),
+                    "-storepass", "changeit", "-keypass", "changeit" }).redirectErrorStream(true).start();
+            assertEquals(0, process.waitFor());
+            InputStream in = new FileInputStream(file);
+            try {
+                keyStore.load(in, password);
+            } finally {
+                in.close();
+            }
+        } finally {
+            file.delete();
+        }
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keyStore, password);
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(keyStore);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+
+        final byte[] body = StubAppliance.readFile("src/test/data/Simple10.xml");
+        final ServerSocket server = context.getServerSocketFactory().createServerSocket(
+                0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread acceptor = new Thread() {
+            public void run() {
+                try {
+                    Socket s = server.accept();
+                    try {
+                        InputStream in = s.getInputStream();
+                        int c, newlines = 0;
+                        while (newlines < 2 && (c = in.read()) >= 0) {
+                            if (c == '\n') newlines++;
+                            else if (c != '\r') newlines = 0;
+                        }
+                        OutputStream out = s.getOutputStream();
+                        out.write(("HTTP/1.1 200 OK\r\nContent-Length: " + body.length + "\r\n\r\n").getBytes("ISO-8859-1"));
+                        out.write(body);
+                        out.flush();
+                    } finally {
+                        s.close();
+                    }
+                } catch (IOException ioe) {
+                }
+            }
+        };
+        acceptor.start();
+        PooledHttpTransport transport = new PooledHttpTransport();
+        transport.setSSLSocketFactory(context.getSocketFactory());
+        try {
+            GSAClient client = new GSAClient("https", "127.0.0.1", server.getLocalPort(), "/search");
+            client.setTransport(transport);
+            return client.getGSAResponse(newQuery());
+        } finally {
+            server.close();
+            acceptor.join(5000);
+            transport.close();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class TestRequestCoalescing extends GSATestCase {
+
+    private static final int CALLERS = 20;
+
+    private StubAppliance stub;
+    private GSAClient client;
+    private ExecutorService pool;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        pool = Executors.newFixedThreadPool(CALLERS);
+    }
+
+    protected void tearDown() throws Exception {
+        pool.shutdownNow();
+        if (stub != null) stub.stop();
+        super.tearDown();
+    }
+
+    private void startStub(StubAppliance stub) throws IOException {
+        this.stub = stub;
+        stub.start();
+        client = client(stub);
+        client.setRequestCoalescing(true);
+    }
+
+    /**
+     * starts all callers at once.
+     */
+    private List callConcurrently(final GSAQuery query) {
+        final CountDownLatch start = new CountDownLatch(1);
+        List futures = new ArrayList();
+        for (int i = 0; i < CALLERS; i++) {
+            futures.add(pool.submit(new Callable() {
+                public Object call() throws Exception {
+                    start.await();
+                    return client.getGSAResponse(query);
+                }
+            }));
+        }
+        start.countDown();
+        return futures;
+    }
+
+    public void testIdenticalRequestsCollapsed() throws Exception {
+        startStub(new StubAppliance("src/test/data/Simple10.xml"));
+        stub.setDelayMillis(300);
+        List futures = callConcurrently(query("trending"));
+        GSAResponse first = (GSAResponse) ((Future) futures.get(0)).get();
+        for (int i = 1; i < futures.size(); i++) {
+            assertSame(first, ((Future) futures.get(i)).get());
+        }
+        assertEquals(1, stub.getRequestCount());
+        assertEquals(CALLERS - 1, client.getCollapsedRequestCount());
+
+        // once the search is done, the next call sends its own request
+        client.getGSAResponse(query("trending"));
+        assertEquals(2, stub.getRequestCount());
+    }
+
+    public void testDifferentQueriesNotCollapsed() throws Exception {
+        startStub(new StubAppliance("src/test/data/Simple10.xml"));
+        stub.setDelayMillis(100);
+        Future a = pool.submit(new Callable() {
+            public Object call() throws Exception {
+                return client.getGSAResponse(query("a"));
+            }
+        });
+        client.getGSAResponse(query("b"));
+        a.get();
+        assertEquals(2, stub.getRequestCount());
+        assertEquals(0, client.getCollapsedRequestCount());
+    }
+
+    public void testFailureSharedByWaiters() throws Exception {
+        startStub(new StubAppliance(new StubAppliance.Responder() {
+            public byte[] respond(String query) throws IOException {
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException ie) {
+                }
+                throw new IOException("appliance failure");
+            }
+        }));
+        // URL.openStream would retry the failed GET once
+        client.setTransport(new net.sf.gsaapi.http.PooledHttpTransport());
+        List futures = callConcurrently(query("failing"));
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                ((Future) futures.get(i)).get();
+                fail("expected the search to fail");
+            } catch (ExecutionException expected) {
+                assertTrue(expected.getCause() instanceof IOException);
+            }
+        }
+        assertEquals(1, stub.getRequestCount());
+        assertEquals(CALLERS - 1, client.getCollapsedRequestCount());
+    }
+
+    public void testWaiterRetriesWhenLeaderAborted() throws Exception {
+        startStub(new StubAppliance("src/test/data/Simple10.xml"));
+        stub.setDelayMillis(400);
+        GSAQuery query = query("aborted");
+        // the leader gives up after 100ms
+        java.util.concurrent.CompletableFuture leader = client.getGSAResponseAsync(query, 100, TimeUnit.MILLISECONDS);
+        Thread.sleep(30);
+        GSAResponse response = client.getGSAResponse(query);
+        assertEquals(10, response.getResults().size());
+        assertTrue(leader.isCompletedExceptionally());
+        assertEquals(1, client.getCollapsedRequestCount());
+        assertEquals(2, stub.getRequestCount());
+    }
+
+    public void testDisabledByDefault() throws Exception {
+        startStub(new StubAppliance("src/test/data/Simple10.xml"));
+        client.setRequestCoalescing(false);
+        assertFalse(new GSAClient("localhost").isRequestCoalescing());
+        stub.setDelayMillis(200);
+        List futures = callConcurrently(query("plain"));
+        for (int i = 0; i < futures.size(); i++) {
+            ((Future) futures.get(i)).get();
+        }
+        assertEquals(CALLERS, stub.getRequestCount());
+        assertEquals(0, client.getCollapsedRequestCount());
+    }
+}
@@ -147,6 +147,30 @@ public class TestResponseBuilder extends GSATestCase {
         assertEquals("", result.getField("date"));
     }
     
+    public void testMetasView() throws Exception {
+        GSAResult result = new GSAResult();
+        assertTrue(result.getMetas().isEmpty());
+        assertNull(result.getMeta("a"));
+        result.addMeta(new String("b"), "1");
+        result.addMeta("a", "2");
+        result.addMeta("b", "3");
+        Map metas = result.getMetas();
+        assertSame(metas, result.getMetas());
+        assertEquals(2, metas.size());
+        assertEquals("{b=3, a=2}", metas.toString());
+        assertEquals("3", result.getMeta("b"));
+        try {
+            metas.put("c", "4");
+            fail("the view is read-only");
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            metas.entrySet().iterator().remove();
+            fail("the view is read-only");
+        } catch (RuntimeException expected) {
+        }
+    }
+
     public void testSuggestionsAndSynonyms() throws Exception {
         GSAResponse response = ResponseBuilder.buildResponse(
                 new FileInputStream("src/test/data/SuggestionsAndSynonyms.xml"),
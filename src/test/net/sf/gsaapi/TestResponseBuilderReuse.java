@@ -0,0 +1,115 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.sf.gsaapi.constants.ResponsePart;
+
+public class TestResponseBuilderReuse extends GSATestCase {
+
+    private static final String[] FIXTURES = {
+        "DynamicNavigation.xml", "Meta.xml", "OneBox10.xml",
+        "Simple10.xml", "SuggestionsAndSynonyms.xml"
+    };
+
+    private static GSAResponse parse(byte[] xml) {
+        return ResponseBuilder.buildResponse(new ByteArrayInputStream(xml), GSAClient.DEFAULT_XML_SYSTEM_ID);
+    }
+
+    public void testFailedParseDoesNotLeakState() throws Exception {
+        byte[] simple = StubAppliance.readFile("src/test/data/Simple10.xml");
+        String expected = TestStaxResponseBuilder.describe(parse(simple));
+        // truncated inside a result, with the OneBox and result flags set
+        String oneBox = new String(StubAppliance.readFile("src/test/data/OneBox10.xml"), "UTF-8");
+        byte[] truncated = oneBox.substring(0, oneBox.indexOf("<R N=\"3\"") + 20).getBytes("UTF-8");
+        for (int i = 0; i < 3; i++) {
+            try {
+                parse(truncated);
+                fail("expected a parse failure");
+            } catch (RuntimeException expectedFailure) {
+            }
+            assertEquals(expected, TestStaxResponseBuilder.describe(parse(simple)));
+        }
+    }
+
+    public void testListenerFailureDoesNotLeakState() throws Exception {
+        byte[] simple = StubAppliance.readFile("src/test/data/Simple10.xml");
+        String expected = TestStaxResponseBuilder.describe(parse(simple));
+        try {
+            ResponseBuilder.buildResponse(new ByteArrayInputStream(simple), GSAClient.DEFAULT_XML_SYSTEM_ID,
+                    new GSAResultListener() {
+                        public void resultParsed(GSAResult result) {
+                            throw new IllegalStateException("stop");
+                        }
+                    });
+            fail("expected the listener failure");
+        } catch (RuntimeException expectedFailure) {
+        }
+        assertEquals(expected, TestStaxResponseBuilder.describe(parse(simple)));
+    }
+
+    public void testPartsNotCarriedOver() throws Exception {
+        byte[] simple = StubAppliance.readFile("src/test/data/Simple10.xml");
+        GSAResponse projected = ResponseBuilder.buildResponse(new ByteArrayInputStream(simple),
+                GSAClient.DEFAULT_XML_SYSTEM_ID, new ResponsePart[] { ResponsePart.TITLE }, null);
+        assertNull(((GSAResult) projected.getResults().get(0)).getSummary());
+        assertNotNull(((GSAResult) parse(simple).getResults().get(0)).getSummary());
+    }
+
+    public void testConcurrentParses() throws Exception {
+        final byte[][] xml = new byte[FIXTURES.length][];
+        final String[] expected = new String[FIXTURES.length];
+        for (int i = 0; i < FIXTURES.length; i++) {
+            xml[i] = StubAppliance.readFile("src/test/data/" + FIXTURES[i]);
+            expected[i] = TestStaxResponseBuilder.describe(parse(xml[i]));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        try {
+            List futures = new ArrayList();
+            for (int t = 0; t < 16; t++) {
+                final int offset = t;
+                futures.add(pool.submit(new Callable() {
+                    public Object call() {
+                        for (int i = 0; i < 50; i++) {
+                            int f = (i + offset) % FIXTURES.length;
+                            assertEquals(FIXTURES[f], expected[f], TestStaxResponseBuilder.describe(parse(xml[f])));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                ((Future) futures.get(i)).get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.gsaapi.constants.ResponsePart;
+
+public class TestResponseCache extends GSATestCase {
+
+    private StubAppliance stub;
+    private GSAClient client;
+    private GSAResponseCache cache;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        stub = new StubAppliance("src/test/data/Simple10.xml");
+        stub.start();
+        client = client(stub);
+        cache = new GSAResponseCache(100, 1, TimeUnit.MINUTES);
+        client.setResponseCache(cache);
+    }
+
+    protected void tearDown() throws Exception {
+        stub.stop();
+        super.tearDown();
+    }
+
+    public void testCanonicalQuery() {
+        assertEquals("a=1&a=0&b=2", GSAResponseCache.canonicalQuery("b=2&a=1&a=0"));
+        assertEquals("num=10&q=x", GSAResponseCache.canonicalQuery("?q=x&&num=10&"));
+        assertEquals("http://gsa/search?num=10&q=x",
+                GSAResponseCache.canonicalQuery("http://gsa/search?q=x&num=10"));
+        assertEquals(GSAResponseCache.key("q=x&num=10", null), GSAResponseCache.key("num=10&q=x", null));
+        assertFalse(GSAResponseCache.key("q=x", null).equals(
+                GSAResponseCache.key("q=x", new ResponsePart[] { ResponsePart.TITLE })));
+    }
+
+    public void testHit() throws Exception {
+        GSAQuery query = query("cached");
+        GSAResponse first = client.getGSAResponse(query);
+        GSAResponse second = client.getGSAResponse(query);
+        assertSame(first, second);
+        assertEquals(1, stub.getRequestCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRatio(), 0.001);
+        assertEquals(1, cache.size());
+
+        // same parameters in another order
+        String raw = query.getValue();
+        int amp = raw.indexOf('&');
+        String reordered = raw.substring(amp + 1) + "&" + raw.substring(0, amp);
+        assertSame(first, client.getGSAResponse(reordered));
+        assertSame(first, client.getGSAResponseAsync(query).get());
+        assertEquals(1, stub.getRequestCount());
+    }
+
+    public void testOptOut() throws Exception {
+        GSAQuery query = query("uncached");
+        query.setCacheable(false);
+        assertFalse(query.copy().isCacheable());
+        client.getGSAResponse(query);
+        client.getGSAResponse(query);
+        client.getGSAResponseAsync(query).get();
+        assertEquals(3, stub.getRequestCount());
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getHitCount() + cache.getMissCount());
+    }
+
+    public void testPartsCachedSeparately() throws Exception {
+        GSAQuery query = query("parts");
+        GSAResponse full = client.getGSAResponse(query);
+        query.setResponseParts(new ResponsePart[] { ResponsePart.TITLE });
+        GSAResponse titles = client.getGSAResponse(query);
+        assertNotSame(full, titles);
+        assertNull(((GSAResult) titles.getResults().get(0)).getSummary());
+        assertSame(titles, client.getGSAResponse(query));
+        assertEquals(2, stub.getRequestCount());
+
+        cache.invalidate(query.getValue());
+        assertEquals(0, cache.size());
+    }
+
+    public void testExpiry() throws Exception {
+        cache = new GSAResponseCache(100, 50, TimeUnit.MILLISECONDS);
+        client.setResponseCache(cache);
+        GSAQuery query = query("expiring");
+        GSAResponse first = client.getGSAResponse(query);
+        Thread.sleep(120);
+        assertNotSame(first, client.getGSAResponse(query));
+        assertEquals(2, stub.getRequestCount());
+        assertEquals(1, cache.getExpirationCount());
+    }
+
+    /**
+     * waits for the cache to hold a response other than <code>old</code>.
+     */
+    private GSAResponse awaitRefresh(GSAQuery query, GSAResponse old) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            GSAResponse cached = cache.get(query.getValue(), null);
+            if (cached != null && cached != old) return cached;
+            Thread.sleep(10);
+        }
+        fail("not refreshed");
+        return null;
+    }
+
+    public void testStaleWhileRevalidate() throws Exception {
+        cache = new GSAResponseCache(100, 50, TimeUnit.MILLISECONDS);
+        cache.setStaleWhileRevalidate(1, TimeUnit.MINUTES);
+        client.setResponseCache(cache);
+        GSAQuery query = query("stale");
+        GSAResponse first = client.getGSAResponse(query);
+        Thread.sleep(120);
+        stub.setDelayMillis(200);
+        long start = System.nanoTime();
+        assertSame(first, client.getGSAResponse(query));
+        assertSame(first, client.getGSAResponse(query));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(150));
+        assertEquals(2, cache.getStaleHitCount());
+        assertEquals(1, cache.getRefreshCount());
+        GSAResponse refreshed = awaitRefresh(query, first);
+        assertSame(refreshed, client.getGSAResponse(query));
+        assertEquals(2, stub.getRequestCount());
+        assertEquals(0, cache.getRefreshFailureCount());
+    }
+
+    public void testStaleBeyondGrace() throws Exception {
+        cache = new GSAResponseCache(100, 50, TimeUnit.MILLISECONDS);
+        cache.setStaleWhileRevalidate(50, TimeUnit.MILLISECONDS);
+        client.setResponseCache(cache);
+        GSAQuery query = query("too stale");
+        GSAResponse first = client.getGSAResponse(query);
+        Thread.sleep(200);
+        assertNotSame(first, client.getGSAResponse(query));
+        assertEquals(0, cache.getStaleHitCount());
+        assertEquals(2, stub.getRequestCount());
+    }
+
+    public void testFailedRefreshKeepsStale() throws Exception {
+        cache = new GSAResponseCache(100, 50, TimeUnit.MILLISECONDS);
+        cache.setStaleWhileRevalidate(1, TimeUnit.MINUTES);
+        client.setResponseCache(cache);
+        GSAQuery query = query("failing");
+        GSAResponse first = client.getGSAResponse(query);
+        Thread.sleep(120);
+        stub.stop();
+        assertSame(first, client.getGSAResponse(query));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cache.getRefreshFailureCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, cache.getRefreshFailureCount());
+        // the next hit tries again
+        assertSame(first, client.getGSAResponse(query));
+        assertEquals(2, cache.getRefreshCount());
+        stub.start();
+    }
+
+    public void testRefreshUsesQueryTimeouts() throws Exception {
+        cache = new GSAResponseCache(100, 50, TimeUnit.MILLISECONDS);
+        cache.setStaleWhileRevalidate(1, TimeUnit.MINUTES);
+        client.setResponseCache(cache);
+        GSAQuery query = query("hanging");
+        query.setReadTimeout(200, TimeUnit.MILLISECONDS);
+        GSAResponse first = client.getGSAResponse(query);
+        Thread.sleep(120);
+        stub.setDelayMillis(5000);
+        assertSame(first, client.getGSAResponse(query));
+        long deadline = System.currentTimeMillis() + 2000;
+        while (cache.getRefreshFailureCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, cache.getRefreshFailureCount());
+    }
+
+    public void testRefreshAhead() throws Exception {
+        cache = new GSAResponseCache(100, 1, TimeUnit.SECONDS);
+        cache.setRefreshAhead(0.2, 2);
+        client.setResponseCache(cache);
+        GSAQuery popular = query("popular");
+        GSAQuery unpopular = query("unpopular");
+        GSAResponse first = client.getGSAResponse(popular);
+        client.getGSAResponse(unpopular);
+        assertSame(first, client.getGSAResponse(popular));
+        Thread.sleep(300);
+        assertSame(first, client.getGSAResponse(popular));
+        assertNotNull(client.getGSAResponse(unpopular));
+        assertEquals(1, cache.getRefreshCount());
+        GSAResponse refreshed = awaitRefresh(popular, first);
+        assertNotSame(first, refreshed);
+        assertEquals(3, stub.getRequestCount());
+        assertEquals(0, cache.getStaleHitCount());
+    }
+
+    public void testLeastRecentlyUsedEvicted() throws Exception {
+        cache = new GSAResponseCache(2, 1, TimeUnit.MINUTES);
+        client.setResponseCache(cache);
+        client.getGSAResponse(query("a"));
+        client.getGSAResponse(query("b"));
+        client.getGSAResponse(query("a"));
+        client.getGSAResponse(query("c"));
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(query("a").getValue(), null));
+        assertNull(cache.get(query("b").getValue(), null));
+        assertNotNull(cache.get(query("c").getValue(), null));
+    }
+
+    public void testListenerReplayedOnHit() throws Exception {
+        GSAQuery query = query("listener");
+        client.getGSAResponse(query);
+        final List urls = new ArrayList();
+        GSAResponse cached = client.getGSAResponse(query, new GSAResultListener() {
+            public void resultParsed(GSAResult result) {
+                urls.add(result.getUrl());
+            }
+        });
+        assertEquals(1, stub.getRequestCount());
+        assertEquals(10, urls.size());
+        assertEquals(((GSAResult) cached.getResults().get(9)).getUrl(), urls.get(9));
+    }
+
+    public void testInvalidArguments() {
+        try {
+            new GSAResponseCache(0, 1, TimeUnit.MINUTES);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new GSAResponseCache(1, 0, TimeUnit.MINUTES);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.FileInputStream;
+import java.util.List;
+
+import net.sf.gsaapi.constants.ResponsePart;
+
+public class TestResponseParts extends GSATestCase {
+
+    private static final GSAResponseParser[] PARSERS = {
+        GSAResponseParser.SAX, GSAResponseParser.STAX, GSAResponseParser.SCANNER
+    };
+
+    private static GSAResponse parse(GSAResponseParser parser, String fixture, ResponsePart[] parts)
+            throws Exception {
+        return parser.parse(new FileInputStream("src/test/data/" + fixture),
+                GSAClient.DEFAULT_XML_SYSTEM_ID, parts, null);
+    }
+
+    public void testAllPartsSameAsDefault() throws Exception {
+        ResponsePart[] all = {
+            ResponsePart.TITLE, ResponsePart.SUMMARY, ResponsePart.METAS,
+            ResponsePart.FIELDS, ResponsePart.CACHE, ResponsePart.LANGUAGE,
+            ResponsePart.ONEBOX, ResponsePart.KEYMATCHES, ResponsePart.SPELLING,
+            ResponsePart.SYNONYMS, ResponsePart.NAVIGATION, ResponsePart.PARAMS
+        };
+        assertEquals(ResponsePart.ALL, ResponsePart.mask(all));
+        for (int p = 0; p < PARSERS.length; p++) {
+            assertEquals(
+                    TestStaxResponseBuilder.describe(parse(PARSERS[p], "OneBox100.xml", null)),
+                    TestStaxResponseBuilder.describe(parse(PARSERS[p], "OneBox100.xml", all)));
+        }
+    }
+
+    public void testTitleAndMetas() throws Exception {
+        ResponsePart[] parts = { ResponsePart.TITLE, ResponsePart.METAS };
+        for (int p = 0; p < PARSERS.length; p++) {
+            GSAResponse full = parse(PARSERS[p], "Meta.xml", null);
+            GSAResponse response = parse(PARSERS[p], "Meta.xml", parts);
+            assertEquals(full.getNumResults(), response.getNumResults());
+            assertEquals(full.getSearchTime(), response.getSearchTime(), 0);
+            assertEquals(full.getQuery(), response.getQuery());
+            assertEquals(full.getStartIndex(), response.getStartIndex());
+            assertEquals(full.getEndIndex(), response.getEndIndex());
+            assertTrue(response.getParams().isEmpty());
+            List fullResults = full.getResults();
+            List results = response.getResults();
+            assertEquals(fullResults.size(), results.size());
+            for (int i = 0; i < results.size(); i++) {
+                GSAResult expected = (GSAResult) fullResults.get(i);
+                GSAResult result = (GSAResult) results.get(i);
+                assertEquals(expected.getUrl(), result.getUrl());
+                assertEquals(expected.getRating(), result.getRating());
+                assertEquals(expected.getTitle(), result.getTitle());
+                assertEquals(expected.getMetas(), result.getMetas());
+                assertNull(result.getSummary());
+                assertNull(result.getLanguage());
+                assertNull(result.getCacheDocId());
+                assertTrue(result.getFields().isEmpty());
+            }
+            assertFalse(((GSAResult) fullResults.get(0)).getMetas().isEmpty());
+        }
+    }
+
+    public void testSkipsHeaderParts() throws Exception {
+        ResponsePart[] parts = { ResponsePart.SUMMARY };
+        for (int p = 0; p < PARSERS.length; p++) {
+            GSAResponse full = parse(PARSERS[p], "SuggestionsAndSynonyms.xml", null);
+            assertNotNull(full.getSpelling());
+            assertFalse(full.getSynonymsWithMarkup().isEmpty());
+            GSAResponse response = parse(PARSERS[p], "SuggestionsAndSynonyms.xml", parts);
+            assertNull(response.getSpelling());
+            assertTrue(response.getSynonymsWithMarkup().isEmpty());
+            assertEquals(full.getResults().size(), response.getResults().size());
+
+            assertEquals(4, parse(PARSERS[p], "Simple100.xml", null).getKeymatchResults().size());
+            response = parse(PARSERS[p], "Simple100.xml", parts);
+            assertTrue(response.getKeymatchResults().isEmpty());
+            assertEquals(100, response.getResults().size());
+
+            assertEquals(2, parse(PARSERS[p], "OneBox100.xml", null).getOneBoxResponses().size());
+            response = parse(PARSERS[p], "OneBox100.xml", parts);
+            assertTrue(response.getOneBoxResponses().isEmpty());
+            assertEquals(100, response.getResults().size());
+
+            response = parse(PARSERS[p], "DynamicNavigation.xml", parts);
+            assertTrue(response.getNavigationResponse().getResults().isEmpty());
+            assertFalse(parse(PARSERS[p], "DynamicNavigation.xml", null)
+                    .getNavigationResponse().getResults().isEmpty());
+        }
+    }
+
+    public void testQueryParts() throws Exception {
+        StubAppliance stub = new StubAppliance("src/test/data/Simple10.xml");
+        stub.start();
+        try {
+            GSAClient client = new GSAClient("http", "127.0.0.1", stub.getPort(), "/search");
+            GSAQuery query = new GSAQuery();
+            query.setQueryTerm(new GSAQuery.GSAQueryTerm("projection"));
+            assertNull(query.getResponseParts());
+            String before = query.getValue();
+            query.setResponseParts(new ResponsePart[] { ResponsePart.TITLE });
+            assertEquals("the request is not changed", before, query.getValue());
+            assertEquals(1, query.getResponseParts().length);
+            assertEquals(1, query.copy().getResponseParts().length);
+
+            GSAResult result = (GSAResult) client.getGSAResponse(query).getResults().get(0);
+            assertNotNull(result.getTitle());
+            assertNull(result.getSummary());
+            result = (GSAResult) client.getGSAResponseAsync(query).get().getResults().get(0);
+            assertNotNull(result.getTitle());
+            assertNull(result.getSummary());
+
+            query.setResponseParts(null);
+            result = (GSAResult) client.getGSAResponse(query).getResults().get(0);
+            assertNotNull(result.getSummary());
+        } finally {
+            stub.stop();
+        }
+    }
+}
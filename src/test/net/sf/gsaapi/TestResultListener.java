@@ -0,0 +1,109 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.FileInputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TestResultListener extends GSATestCase {
+
+    public void testAllResultsInOrder() throws Exception {
+        final List streamed = new ArrayList();
+        GSAResponse response = ResponseBuilder.buildResponse(
+                new FileInputStream("src/test/data/Simple100.xml"),
+                GSAClient.DEFAULT_XML_SYSTEM_ID,
+                new GSAResultListener() {
+                    public void resultParsed(GSAResult result) {
+                        streamed.add(result);
+                    }
+                });
+        assertEquals(100, streamed.size());
+        assertEquals(response.getResults(), streamed);
+    }
+
+    public void testResultsArriveBeforeDocumentEnds() throws Exception {
+        byte[] doc = StubAppliance.readFile("src/test/data/Simple10.xml");
+        String xml = new String(doc, "UTF-8");
+        // split the document after the fifth result
+        int split = 0;
+        for (int i = 0; i < 5; i++) {
+            split = xml.indexOf("</R>", split) + "</R>".length();
+        }
+        final byte[] head = xml.substring(0, split).getBytes("UTF-8");
+        final byte[] tail = xml.substring(split).getBytes("UTF-8");
+
+        final PipedOutputStream out = new PipedOutputStream();
+        PipedInputStream in = new PipedInputStream(out, 64 * 1024);
+        final CountDownLatch firstFive = new CountDownLatch(5);
+        final boolean[] sawEarly = new boolean[1];
+        Thread writer = new Thread() {
+            public void run() {
+                try {
+                    out.write(head);
+                    out.flush();
+                    // the rest is only sent once the first results were streamed
+                    sawEarly[0] = firstFive.await(5, TimeUnit.SECONDS);
+                    out.write(tail);
+                    out.close();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        writer.start();
+        GSAResponse response = ResponseBuilder.buildResponse(in, GSAClient.DEFAULT_XML_SYSTEM_ID,
+                new GSAResultListener() {
+                    public void resultParsed(GSAResult result) {
+                        firstFive.countDown();
+                    }
+                });
+        writer.join();
+        assertTrue("results were not streamed before the end of the document", sawEarly[0]);
+        assertEquals(10, response.getResults().size());
+    }
+
+    public void testClientWithListener() throws Exception {
+        StubAppliance stub = new StubAppliance("src/test/data/Simple10.xml");
+        stub.start();
+        try {
+            GSAClient client = new GSAClient("http", "127.0.0.1", stub.getPort(), "/search");
+            final int[] count = new int[1];
+            GSAQuery query = new GSAQuery();
+            query.setQueryTerm(new GSAQuery.GSAQueryTerm("machine amazement"));
+            GSAResponse response = client.getGSAResponse(query, new GSAResultListener() {
+                public void resultParsed(GSAResult result) {
+                    count[0]++;
+                }
+            });
+            assertEquals(10, count[0]);
+            assertEquals(10, response.getResults().size());
+        } finally {
+            stub.stop();
+        }
+    }
+}
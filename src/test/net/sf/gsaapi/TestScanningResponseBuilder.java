@@ -0,0 +1,187 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.gsaapi.constants.ResponsePart;
+
+public class TestScanningResponseBuilder extends GSATestCase {
+
+    private static final String HEAD = "<GSP VER=\"3.2\"><TM>0.01</TM><Q>q</Q><RES SN=\"1\" EN=\"1\"><M>1</M>";
+    private static final String TAIL = "</RES></GSP>";
+
+    private static GSAResponse parse(GSAResponseParser parser, byte[] xml) {
+        return parser.parse(new ByteArrayInputStream(xml), GSAClient.DEFAULT_XML_SYSTEM_ID, null, null);
+    }
+
+    private static byte[] result(String inner) throws Exception {
+        return (HEAD + "<R N=\"1\"><U>http://example.com/</U>" + inner + "</R>" + TAIL).getBytes("UTF-8");
+    }
+
+    /**
+     * asserts that the scanner binds the document itself, exactly as SAX does.
+     */
+    private static GSAResponse assertScanned(byte[] xml) {
+        long fallbacks = ScanningResponseBuilder.fallbackCount.get();
+        GSAResponse scanned = parse(GSAResponseParser.SCANNER, xml);
+        assertEquals("fell back to SAX", fallbacks, ScanningResponseBuilder.fallbackCount.get());
+        assertEquals(TestStaxResponseBuilder.describe(parse(GSAResponseParser.SAX, xml)),
+                TestStaxResponseBuilder.describe(scanned));
+        return scanned;
+    }
+
+    /**
+     * asserts that the scanner hands the document over to SAX.
+     */
+    private static GSAResponse assertFallsBack(byte[] xml) {
+        long fallbacks = ScanningResponseBuilder.fallbackCount.get();
+        GSAResponse scanned = parse(GSAResponseParser.SCANNER, xml);
+        assertEquals(fallbacks + 1, ScanningResponseBuilder.fallbackCount.get());
+        assertEquals(TestStaxResponseBuilder.describe(parse(GSAResponseParser.SAX, xml)),
+                TestStaxResponseBuilder.describe(scanned));
+        return scanned;
+    }
+
+    public void testFixtures() throws Exception {
+        File[] files = new File("src/test/data").listFiles();
+        int checked = 0;
+        for (int i = 0; i < files.length; i++) {
+            if (!files[i].getName().endsWith(".xml")) continue;
+            assertScanned(StubAppliance.readFile(files[i].getPath()));
+            checked++;
+        }
+        assertTrue(checked > 0);
+    }
+
+    public void testFixturesWithParts() throws Exception {
+        ResponsePart[][] subsets = {
+            { ResponsePart.TITLE, ResponsePart.METAS },
+            { ResponsePart.SUMMARY },
+            { ResponsePart.ONEBOX, ResponsePart.KEYMATCHES, ResponsePart.NAVIGATION },
+            {}
+        };
+        File[] files = new File("src/test/data").listFiles();
+        for (int i = 0; i < files.length; i++) {
+            if (!files[i].getName().endsWith(".xml")) continue;
+            for (int s = 0; s < subsets.length; s++) {
+                GSAResponse sax = GSAResponseParser.SAX.parse(new FileInputStream(files[i]),
+                        GSAClient.DEFAULT_XML_SYSTEM_ID, subsets[s], null);
+                GSAResponse scanned = GSAResponseParser.SCANNER.parse(new FileInputStream(files[i]),
+                        GSAClient.DEFAULT_XML_SYSTEM_ID, subsets[s], null);
+                assertEquals(files[i].getName(),
+                        TestStaxResponseBuilder.describe(sax), TestStaxResponseBuilder.describe(scanned));
+            }
+        }
+    }
+
+    public void testResultListener() throws Exception {
+        final List urls = new ArrayList();
+        GSAResponse response = GSAResponseParser.SCANNER.parse(
+                new FileInputStream("src/test/data/Simple100.xml"),
+                GSAClient.DEFAULT_XML_SYSTEM_ID, null,
+                new GSAResultListener() {
+                    public void resultParsed(GSAResult result) {
+                        urls.add(result.getUrl());
+                    }
+                });
+        assertEquals(100, urls.size());
+        for (int i = 0; i < urls.size(); i++) {
+            assertEquals(((GSAResult) response.getResults().get(i)).getUrl(), urls.get(i));
+        }
+    }
+
+    public void testCharacterData() throws Exception {
+        GSAResponse response = assertScanned(result(
+                "<T>a &lt;b&gt; &amp; &quot;c&quot; &apos;d&apos; &#233;&#x20AC;<![CDATA[ <e> & ]]>f</T>"
+                + "<S>line\r\nbreak \u00e9\u20ac\ud83d\ude00<!-- comment --> tail</S>"));
+        GSAResult result = (GSAResult) response.getResults().get(0);
+        assertEquals("a <b> & \"c\" 'd' \u00e9\u20ac <e> & f", result.getTitle());
+        assertEquals("line\nbreak \u00e9\u20ac\ud83d\ude00 tail", result.getSummary());
+    }
+
+    public void testAttributeValues() throws Exception {
+        GSAResponse response = assertScanned(result(
+                "<MT N='a&amp;b' V=\"x\ty\r\nz &lt;&#65;\"/><MT  N = \"c\"   V='\"'></MT>"));
+        GSAResult result = (GSAResult) response.getResults().get(0);
+        assertEquals("x y z <A", result.getMeta("a&b"));
+        assertEquals("\"", result.getMeta("c"));
+    }
+
+    public void testPrologue() throws Exception {
+        byte[] body = result("<T>t</T>");
+        byte[] xml = new byte[body.length + 3];
+        xml[0] = (byte) 0xef;
+        xml[1] = (byte) 0xbb;
+        xml[2] = (byte) 0xbf;
+        System.arraycopy(body, 0, xml, 3, body.length);
+        assertScanned(xml);
+        assertScanned(("<?xml version='1.0' encoding='utf-8'?>\n<!DOCTYPE GSP SYSTEM \"google.dtd\">\n"
+                + "<?pi data?><!-- c -->" + new String(body, "UTF-8") + "\n<!-- trailer -->\n").getBytes("UTF-8"));
+    }
+
+    public void testFallsBack() throws Exception {
+        GSAResponse response = assertFallsBack(("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>"
+                + HEAD + "<R N=\"1\"><U>u</U><T>caf\u00e9</T></R>" + TAIL).getBytes("ISO-8859-1"));
+        assertEquals("caf\u00e9", ((GSAResult) response.getResults().get(0)).getTitle());
+        response = assertFallsBack(("<!DOCTYPE GSP [<!ENTITY who \"world\">]>"
+                + new String(result("<T>hello &who;</T>"), "UTF-8")).getBytes("UTF-8"));
+        assertEquals("hello world", ((GSAResult) response.getResults().get(0)).getTitle());
+    }
+
+    public void testMalformed() throws Exception {
+        String[] documents = {
+            "<GSP VER=\"3.2\"><RES>",
+            "<GSP VER=\"3.2\"><RES></GSP></RES>",
+            "<GSP VER=\"3.2\"><TM>1 & 2</TM></GSP>",
+            "<GSP VER=\"3.2\"></GSP><GSP/>",
+            "<GSP VER=\"3.2\"><T>\u0001</T></GSP>"
+        };
+        for (int i = 0; i < documents.length; i++) {
+            try {
+                parse(GSAResponseParser.SCANNER, documents[i].getBytes("UTF-8"));
+                fail("expected a parse failure: " + documents[i]);
+            } catch (RuntimeException expected) {
+            }
+        }
+    }
+
+    public void testClientUsesScanner() throws Exception {
+        StubAppliance stub = new StubAppliance("src/test/data/Simple10.xml");
+        stub.start();
+        try {
+            GSAClient client = new GSAClient("http", "127.0.0.1", stub.getPort(), "/search");
+            client.setResponseParser(GSAResponseParser.SCANNER);
+            GSAQuery query = new GSAQuery();
+            query.setQueryTerm(new GSAQuery.GSAQueryTerm("scanner"));
+            assertEquals(10, client.getGSAResponse(query).getResults().size());
+            assertEquals(10, client.getGSAResponseAsync(query).get().getResults().size());
+        } finally {
+            stub.stop();
+        }
+    }
+}
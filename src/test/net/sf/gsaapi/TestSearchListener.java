@@ -0,0 +1,255 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.gsaapi.constants.SearchPhase;
+
+public class TestSearchListener extends GSATestCase {
+
+    private StubAppliance stub;
+    private GSAClient client;
+    private Recorder recorder;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        stub = new StubAppliance("src/test/data/Simple10.xml");
+        stub.start();
+        client = client(stub);
+        recorder = new Recorder();
+        client.addSearchListener(recorder);
+    }
+
+    protected void tearDown() throws Exception {
+        stub.stop();
+        super.tearDown();
+    }
+
+    /**
+     * records the events in the order they are received.
+     */
+    private static class Recorder implements GSASearchListener {
+        final List names = new ArrayList();
+        final List events = new ArrayList();
+
+        private void add(String name, GSASearchEvent event) {
+            names.add(name);
+            events.add(event);
+        }
+
+        public void searchStarted(GSASearchEvent event) {
+            add("started", event);
+        }
+
+        public void cacheHit(GSASearchEvent event) {
+            add("cacheHit", event);
+        }
+
+        public void responseReceived(GSASearchEvent event) {
+            assertNull(event.getResponse());
+            add("received", event);
+        }
+
+        public void parseComplete(GSASearchEvent event) {
+            add("parsed", event);
+        }
+
+        public void searchFailed(GSASearchEvent event) {
+            add("failed", event);
+        }
+
+        GSASearchEvent last() {
+            return (GSASearchEvent) events.get(events.size() - 1);
+        }
+    }
+
+    public void testFetch() throws Exception {
+        GSAQuery query = query("fetch");
+        GSAResponse response = client.getGSAResponse(query);
+        assertEquals("[started, received, parsed]", recorder.names.toString());
+        GSASearchEvent event = recorder.last();
+        assertSame(recorder.events.get(0), event);
+        assertSame(query, event.getQuery());
+        assertEquals(query.getValue(), event.getRawQuery());
+        assertSame(response, event.getResponse());
+        assertSame(response.getTimings(), event.getTimings());
+        assertEquals(10, event.getResultCount());
+        assertEquals(StubAppliance.readFile("src/test/data/Simple10.xml").length, event.getBytes());
+        assertTrue(event.getTimings().get(SearchPhase.TOTAL, TimeUnit.NANOSECONDS) > 0);
+        assertNull(event.getException());
+    }
+
+    public void testCacheHit() throws Exception {
+        client.setResponseCache(new GSAResponseCache(10, 1, TimeUnit.MINUTES));
+        GSAResponse response = client.getGSAResponse(query("cached"));
+        recorder.names.clear();
+        assertSame(response, client.getGSAResponse(query("cached").getValue()));
+        assertEquals("[started, cacheHit]", recorder.names.toString());
+        assertNull(recorder.last().getQuery());
+        assertSame(response, recorder.last().getResponse());
+        assertEquals(0, recorder.last().getBytes());
+        assertEquals(1, stub.getRequestCount());
+    }
+
+    public void testFailure() throws Exception {
+        stub.setErrorRate(1, 404);
+        try {
+            client.getGSAResponse(query("missing"));
+            fail("expected FileNotFoundException");
+        } catch (FileNotFoundException expected) {
+            assertEquals("[started, failed]", recorder.names.toString());
+            assertSame(expected, recorder.last().getException());
+        }
+    }
+
+    public void testAsync() throws Exception {
+        stub.setErrorRate(1, 500);
+        try {
+            client.getGSAResponseAsync(query("async")).get();
+            fail("expected ExecutionException");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof IOException);
+        }
+        assertEquals("[started, failed]", recorder.names.toString());
+    }
+
+    public void testListenerExceptionIgnored() throws Exception {
+        client.addSearchListener(new Thrower());
+        Recorder after = new Recorder();
+        client.addSearchListener(after);
+        assertEquals(10, client.getGSAResponse(query("ignored")).getResults().size());
+        assertEquals("[started, received, parsed]", recorder.names.toString());
+        assertEquals("[started, received, parsed]", after.names.toString());
+    }
+
+    /**
+     * a listener that throws from every call, while the searches of
+     * the other callers wait for its search.
+     */
+    public void testListenerExceptionWhileCoalescing() throws Exception {
+        client.removeSearchListener(recorder);
+        client.setRequestCoalescing(true);
+        client.addSearchListener(new Thrower());
+        stub.setDelayMillis(200);
+        final int callers = 5;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List names = Collections.synchronizedList(new ArrayList());
+        client.addSearchListener(new GSASearchAdapter() {
+            public void cacheHit(GSASearchEvent event) {
+                names.add("cacheHit");
+            }
+
+            public void parseComplete(GSASearchEvent event) {
+                names.add("parsed");
+            }
+
+            public void searchFailed(GSASearchEvent event) {
+                names.add("failed");
+            }
+        });
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        try {
+            List futures = new ArrayList();
+            for (int i = 0; i < callers; i++) {
+                futures.add(pool.submit(new Callable() {
+                    public Object call() throws Exception {
+                        start.await();
+                        return client.getGSAResponse(query("coalesced"));
+                    }
+                }));
+            }
+            start.countDown();
+            for (int i = 0; i < callers; i++) {
+                assertEquals(10, ((GSAResponse) ((Future) futures.get(i)).get()).getResults().size());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, stub.getRequestCount());
+        assertEquals(callers, names.size());
+        assertEquals(1, Collections.frequency(names, "parsed"));
+        assertFalse(names.contains("failed"));
+    }
+
+    private static class Thrower implements GSASearchListener {
+        public void searchStarted(GSASearchEvent event) {
+            throw new IllegalStateException("started");
+        }
+
+        public void cacheHit(GSASearchEvent event) {
+            throw new IllegalStateException("cacheHit");
+        }
+
+        public void responseReceived(GSASearchEvent event) {
+            throw new IllegalStateException("received");
+        }
+
+        public void parseComplete(GSASearchEvent event) {
+            throw new IllegalStateException("parsed");
+        }
+
+        public void searchFailed(GSASearchEvent event) {
+            throw new IllegalStateException("failed");
+        }
+    }
+
+    public void testAttributes() throws Exception {
+        final Object key = new Object();
+        client.addSearchListener(new GSASearchAdapter() {
+            public void searchStarted(GSASearchEvent event) {
+                event.setAttribute(key, "span");
+            }
+
+            public void parseComplete(GSASearchEvent event) {
+                assertEquals("span", event.getAttribute(key));
+            }
+        });
+        client.getGSAResponse(query("span"));
+        assertEquals("span", recorder.last().getAttribute(key));
+        assertNull(recorder.last().getAttribute("other"));
+    }
+
+    public void testRemove() throws Exception {
+        Recorder other = new Recorder();
+        client.addSearchListener(other);
+        client.removeSearchListener(recorder);
+        client.getGSAResponse(query("removed"));
+        assertEquals(0, recorder.names.size());
+        assertEquals(3, other.names.size());
+        client.removeSearchListener(other);
+        client.getGSAResponse(query("removed"));
+        assertEquals(3, other.names.size());
+    }
+}
@@ -0,0 +1,185 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.sf.gsaapi.constants.ResponsePart;
+
+public class TestStaxResponseBuilder extends GSATestCase {
+
+    private static final String[] FIXTURES = {
+        "DynamicNavigation.xml", "Meta.xml", "OneBox10.xml", "OneBox100.xml",
+        "Simple10.xml", "Simple100.xml", "SuggestionsAndSynonyms.xml"
+    };
+
+    public void testSameResponseAsSax() throws Exception {
+        for (int i = 0; i < FIXTURES.length; i++) {
+            String path = "src/test/data/" + FIXTURES[i];
+            GSAResponse sax = GSAResponseParser.SAX.parse(
+                    new FileInputStream(path), GSAClient.DEFAULT_XML_SYSTEM_ID, null, null);
+            GSAResponse stax = GSAResponseParser.STAX.parse(
+                    new FileInputStream(path), GSAClient.DEFAULT_XML_SYSTEM_ID, null, null);
+            assertEquals(FIXTURES[i], describe(sax), describe(stax));
+        }
+    }
+
+    public void testSimple100() throws Exception {
+        GSAResponse response = GSAResponseParser.STAX.parse(
+                new FileInputStream("src/test/data/Simple100.xml"),
+                GSAClient.DEFAULT_XML_SYSTEM_ID, null, null);
+        assertEquals(100, response.getResults().size());
+        assertEquals("http://www.google.com/", ((GSAKeymatch) response.getKeymatchResults().get(0)).getUrl());
+        assertEquals(0, response.getOneBoxResponses().size());
+    }
+
+    public void testOneBox100() throws Exception {
+        GSAResponse response = GSAResponseParser.STAX.parse(
+                new FileInputStream("src/test/data/OneBox100.xml"),
+                GSAClient.DEFAULT_XML_SYSTEM_ID, null, null);
+        assertEquals(100, response.getResults().size());
+        assertTrue(response.getOneBoxResponses().size() > 0);
+    }
+
+    public void testResultListener() throws Exception {
+        final List urls = new ArrayList();
+        GSAResponse response = GSAResponseParser.STAX.parse(
+                new FileInputStream("src/test/data/Simple100.xml"),
+                GSAClient.DEFAULT_XML_SYSTEM_ID, null,
+                new GSAResultListener() {
+                    public void resultParsed(GSAResult result) {
+                        urls.add(result.getUrl());
+                    }
+                });
+        assertEquals(100, urls.size());
+        for (int i = 0; i < urls.size(); i++) {
+            assertEquals(((GSAResult) response.getResults().get(i)).getUrl(), urls.get(i));
+        }
+    }
+
+    public void testMalformed() throws Exception {
+        try {
+            GSAResponseParser.STAX.parse(
+                    new ByteArrayInputStream("<GSP VER=\"3.2\"><RES>".getBytes("UTF-8")),
+                    GSAClient.DEFAULT_XML_SYSTEM_ID, null, null);
+            fail("expected a parse failure");
+        } catch (RuntimeException expected) {
+        }
+    }
+
+    public void testClientUsesParser() throws Exception {
+        StubAppliance stub = new StubAppliance("src/test/data/Simple10.xml");
+        stub.start();
+        try {
+            GSAClient client = new GSAClient("http", "127.0.0.1", stub.getPort(), "/search");
+            assertSame(GSAResponseParser.SAX, client.getResponseParser());
+            final int[] calls = new int[1];
+            client.setResponseParser(new GSAResponseParser() {
+                public GSAResponse parse(java.io.InputStream istream, String xmlSystemId,
+                        ResponsePart[] parts, GSAResultListener listener) {
+                    calls[0]++;
+                    return GSAResponseParser.STAX.parse(istream, xmlSystemId, parts, listener);
+                }
+            });
+            GSAQuery query = new GSAQuery();
+            query.setQueryTerm(new GSAQuery.GSAQueryTerm("stax"));
+            assertEquals(10, client.getGSAResponse(query).getResults().size());
+            assertEquals(10, client.getGSAResponseAsync(query).get().getResults().size());
+            assertEquals(2, calls[0]);
+            client.setResponseParser(null);
+            assertSame(GSAResponseParser.SAX, client.getResponseParser());
+        } finally {
+            stub.stop();
+        }
+    }
+
+    /**
+     * renders the values of all public getters but the timings of the
+     * fetch, recursively, so that two responses can be compared.
+     */
+    static String describe(Object o) {
+        StringBuffer sb = new StringBuffer();
+        describe(o, sb);
+        return sb.toString();
+    }
+
+    private static void describe(Object o, StringBuffer sb) {
+        if (o == null || o instanceof String || o instanceof Number || o instanceof Boolean) {
+            sb.append(o);
+        } else if (o instanceof Collection) {
+            sb.append('[');
+            for (Iterator it = ((Collection) o).iterator(); it.hasNext();) {
+                describe(it.next(), sb);
+                sb.append(',');
+            }
+            sb.append(']');
+        } else if (o instanceof Map) {
+            TreeMap sorted = new TreeMap();
+            for (Iterator it = ((Map) o).entrySet().iterator(); it.hasNext();) {
+                Map.Entry e = (Map.Entry) it.next();
+                sorted.put(String.valueOf(e.getKey()), describe(e.getValue()));
+            }
+            sb.append(sorted);
+        } else if (o instanceof Map.Entry) {
+            sb.append(((Map.Entry) o).getKey()).append('=');
+            describe(((Map.Entry) o).getValue(), sb);
+        } else {
+            Method[] methods = o.getClass().getMethods();
+            Arrays.sort(methods, new Comparator() {
+                public int compare(Object a, Object b) {
+                    return ((Method) a).getName().compareTo(((Method) b).getName());
+                }
+            });
+            sb.append(o.getClass().getName()).append('{');
+            for (int i = 0; i < methods.length; i++) {
+                Method m = methods[i];
+                String name = m.getName();
+                if (m.getParameterTypes().length != 0 || Modifier.isStatic(m.getModifiers())
+                        || m.getDeclaringClass() == Object.class
+                        || !(name.startsWith("get") || name.startsWith("is"))
+                        || name.equals("getTimings")) {
+                    continue;
+                }
+                sb.append(name).append('=');
+                try {
+                    describe(m.invoke(o, new Object[0]), sb);
+                } catch (Exception e) {
+                    sb.append(e);
+                }
+                sb.append(';');
+            }
+            sb.append('}');
+        }
+    }
+}
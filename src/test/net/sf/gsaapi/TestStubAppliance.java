@@ -0,0 +1,140 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+public class TestStubAppliance extends GSATestCase {
+
+    private StubAppliance stub;
+    private GSAClient client;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        stub = new StubAppliance("src/test/data/Simple10.xml");
+        stub.start();
+        client = client(stub);
+    }
+
+    protected void tearDown() throws Exception {
+        stub.stop();
+        super.tearDown();
+    }
+
+    public void testLatency() throws Exception {
+        stub.setLatency(StubAppliance.fixedLatency(100));
+        long start = System.nanoTime();
+        assertEquals(10, client.getGSAResponse(query("slow")).getResults().size());
+        assertTrue((System.nanoTime() - start) / 1000000 >= 100);
+    }
+
+    public void testLatencyDistributions() {
+        Random random = new Random(42);
+        long[] samples = new long[10001];
+        StubAppliance.Latency logNormal = StubAppliance.logNormalLatency(20, 0.5);
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = logNormal.nextMillis(random);
+        }
+        Arrays.sort(samples);
+        assertTrue(Math.abs(samples[samples.length / 2] - 20) <= 1);
+        // exp(0.5 * 2.326) for the 99th percentile
+        assertTrue(Math.abs(samples[samples.length * 99 / 100] - 64) <= 4);
+
+        StubAppliance.Latency spiky = StubAppliance.withSpikes(StubAppliance.fixedLatency(1), 0.01, 500);
+        int spikes = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (spiky.nextMillis(random) == 501) spikes++;
+        }
+        assertTrue(spikes > 50 && spikes < 150);
+
+        StubAppliance.Latency uniform = StubAppliance.uniformLatency(10, 20);
+        for (int i = 0; i < 1000; i++) {
+            long millis = uniform.nextMillis(random);
+            assertTrue(millis >= 10 && millis < 20);
+        }
+    }
+
+    public void testErrors() throws Exception {
+        stub.setErrorRate(1, 503);
+        try {
+            client.getGSAResponse(query("error"));
+            fail("the appliance is unavailable");
+        } catch (IOException expected) {
+        }
+        assertEquals(1, stub.getErrorCount());
+
+        stub.setSeed(1);
+        stub.setErrorRate(0.3, 503);
+        int failures = 0;
+        for (int i = 0; i < 100; i++) {
+            try {
+                client.getGSAResponse(query("q" + i));
+            } catch (IOException e) {
+                failures++;
+            }
+        }
+        assertEquals(stub.getErrorCount() - 1, failures);
+        assertTrue(failures > 10 && failures < 50);
+    }
+
+    public void testReset() throws Exception {
+        stub.setResetRate(1);
+        try {
+            client.getGSAResponse(query("reset"));
+            fail("the connection was dropped");
+        } catch (Exception expected) {
+        }
+        assertEquals(1, stub.getResetCount());
+        stub.setResetRate(0);
+        assertEquals(10, client.getGSAResponse(query("again")).getResults().size());
+    }
+
+    public void testDrip() throws Exception {
+        // Simple10 is 7KB: 14 pieces
+        stub.setDrip(512, 10);
+        long start = System.nanoTime();
+        GSAResponse dripped = client.getGSAResponse(query("drip"));
+        assertTrue((System.nanoTime() - start) / 1000000 >= 130);
+        stub.setDrip(0, 0);
+        assertEquals(TestStaxResponseBuilder.describe(client.getGSAResponse(query("at once"))),
+                TestStaxResponseBuilder.describe(dripped));
+    }
+
+    public void testFixturesInTurn() throws Exception {
+        StubAppliance mixed = new StubAppliance(new String[] {
+            "src/test/data/Simple10.xml", "src/test/data/Simple100.xml" });
+        mixed.start();
+        try {
+            GSAClient mixedClient = client(mixed);
+            GSAQuery query = query("mixed");
+            query.setMaxResults(100);
+            assertEquals(10, mixedClient.getGSAResponse(query).getResults().size());
+            assertEquals(100, mixedClient.getGSAResponse(query).getResults().size());
+            assertEquals(10, mixedClient.getGSAResponse(query).getResults().size());
+        } finally {
+            mixed.stop();
+        }
+    }
+}
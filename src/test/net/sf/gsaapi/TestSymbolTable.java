@@ -0,0 +1,134 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.ByteArrayInputStream;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.gsaapi.util.SymbolTable;
+
+public class TestSymbolTable extends GSATestCase {
+
+    private static final GSAResponseParser[] PARSERS = {
+        GSAResponseParser.SAX, GSAResponseParser.STAX, GSAResponseParser.SCANNER
+    };
+
+    public void testIntern() {
+        SymbolTable table = new SymbolTable(100);
+        assertEquals(128, table.getCapacity());
+        String a = new String("author");
+        assertSame(a, table.intern(a));
+        assertSame(a, table.intern(new String("author")));
+        assertNull(table.intern(null));
+        StringBuffer sb = new StringBuffer();
+        while (sb.length() <= SymbolTable.MAX_SYMBOL_LENGTH) sb.append('x');
+        String longName = sb.toString();
+        table.intern(longName);
+        assertNotSame(longName, table.intern(new String(longName)));
+    }
+
+    public void testBounded() {
+        SymbolTable table = new SymbolTable(16);
+        for (int i = 0; i < 10000; i++) {
+            assertEquals("name" + i, table.intern("name" + i));
+        }
+        assertEquals(16, table.getCapacity());
+    }
+
+    public void testConcurrent() throws Exception {
+        final SymbolTable table = new SymbolTable(64);
+        final Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < 100000; i++) {
+                            String name = "n" + (i % 200);
+                            assertEquals(name, table.intern(name));
+                        }
+                    } catch (Throwable e) {
+                        failure[0] = e;
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join();
+        }
+        assertNull(String.valueOf(failure[0]), failure[0]);
+    }
+
+    /**
+     * counts the String instances holding meta, field and param names in
+     * a Meta.xml-style response with 100 results: without the symbol
+     * table every result held its own copies.
+     */
+    public void testNamesShared() throws Exception {
+        byte[] xml = scaled(StubAppliance.readFile("src/test/data/Meta.xml"), 100);
+        for (int p = 0; p < PARSERS.length; p++) {
+            GSAResponse response = PARSERS[p].parse(
+                    new ByteArrayInputStream(xml), GSAClient.DEFAULT_XML_SYSTEM_ID, null, null);
+            List results = response.getResults();
+            assertEquals(100, results.size());
+            Map names = new IdentityHashMap();
+            for (int i = 0; i < results.size(); i++) {
+                GSAResult result = (GSAResult) results.get(i);
+                addKeys(result.getMetas(), names);
+                addKeys(result.getFields(), names);
+            }
+            assertEquals(PARSERS[p].toString(), 3, names.size());
+            Map params = new IdentityHashMap();
+            addKeys(response.getParams(), params);
+            GSAResponse again = PARSERS[p].parse(
+                    new ByteArrayInputStream(xml), GSAClient.DEFAULT_XML_SYSTEM_ID, null, null);
+            addKeys(again.getParams(), params);
+            assertEquals(PARSERS[p].toString(), response.getParams().size(), params.size());
+        }
+    }
+
+    private static void addKeys(Map map, Map identities) {
+        for (Iterator it = map.keySet().iterator(); it.hasNext();) {
+            identities.put(it.next(), Boolean.TRUE);
+        }
+    }
+
+    /**
+     * repeats the results of a fixture.
+     */
+    static byte[] scaled(byte[] fixture, int copies) throws Exception {
+        String xml = new String(fixture, "UTF-8");
+        int first = xml.indexOf("<R N=");
+        int end = xml.lastIndexOf("</R>") + "</R>".length();
+        StringBuffer sb = new StringBuffer(xml.substring(0, first));
+        for (int i = 0; i < copies; i++) {
+            sb.append(xml.substring(first, end));
+        }
+        sb.append(xml.substring(end));
+        return sb.toString().getBytes("UTF-8");
+    }
+}
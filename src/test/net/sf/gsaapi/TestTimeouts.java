@@ -0,0 +1,238 @@
+/********************************************************************************
+ *  
+ *  Product: GSA-JAPI
+ *  Description: A Java API for programmatically accessing the Google Search
+ *               Appliance.
+ *
+ *  (c) Copyright 2006 Inxight Software, Inc.
+ *  
+ *  Licensed under the Inxight Software, Inc., GSA-JAPI License (the "License").
+ *  You may not use this file except in compliance with the License. You should
+ *  have received a copy of the License with this distribution. If not, you may
+ *  obtain a copy by contacting:
+ *
+ *      Inxight Software, Inc.
+ *      500 Macara Ave.
+ *      Sunnyvale, CA 94085
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed
+ *  under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ *  CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+package net.sf.gsaapi;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.gsaapi.http.PooledHttpTransport;
+
+public class TestTimeouts extends GSATestCase {
+
+    private StubAppliance stub;
+    private ServerSocket stalling;
+
+    protected void tearDown() throws Exception {
+        if (stub != null) stub.stop();
+        if (stalling != null) stalling.close();
+        super.tearDown();
+    }
+
+    private GSAClient hungClient() throws IOException {
+        stub = new StubAppliance("src/test/data/Simple10.xml");
+        stub.setDelayMillis(5000);
+        stub.start();
+        return client(stub);
+    }
+
+    /**
+     * @return a port that answers one request with the headers and the
+     * first part of the body, then stops sending.
+     */
+    private int stallingAppliance() throws IOException {
+        final byte[] body = StubAppliance.readFile("src/test/data/Simple10.xml");
+        stalling = new ServerSocket(0);
+        Thread server = new Thread() {
+            public void run() {
+                try {
+                    Socket socket = stalling.accept();
+                    InputStream in = socket.getInputStream();
+                    // skip the request head
+                    int state = 0;
+                    while (state < 4) {
+                        int c = in.read();
+                        if (c < 0) return;
+                        state = (c == '\r' || c == '\n') ? state + 1 : 0;
+                    }
+                    OutputStream out = socket.getOutputStream();
+                    out.write(("HTTP/1.1 200 OK\r\nContent-Type: text/xml\r\nContent-Length: "
+                            + body.length + "\r\n\r\n").getBytes("ISO-8859-1"));
+                    out.write(body, 0, body.length / 2);
+                    out.flush();
+                    while (in.read() >= 0) {
+                    }
+                    socket.close();
+                } catch (IOException ioe) {
+                }
+            }
+        };
+        server.setDaemon(true);
+        server.start();
+        return stalling.getLocalPort();
+    }
+
+    private static void assertTimesOut(GSAClient client, GSAQuery query, long maxMillis) throws IOException {
+        long start = System.nanoTime();
+        try {
+            client.getGSAResponse(query);
+            fail("expected GSATimeoutException");
+        } catch (GSATimeoutException expected) {
+        }
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        assertTrue("timed out after " + elapsed + "ms", elapsed < maxMillis);
+    }
+
+    public void testNoTimeoutsByDefault() throws Exception {
+        GSAClient client = new GSAClient("gsa.mysite.net");
+        assertEquals(0, client.getConnectTimeout(TimeUnit.MILLISECONDS));
+        assertEquals(0, client.getReadTimeout(TimeUnit.MILLISECONDS));
+        assertEquals(0, client.getSearchTimeout(TimeUnit.MILLISECONDS));
+        assertEquals(0, query("machine amazement").getSearchTimeout(TimeUnit.MILLISECONDS));
+    }
+
+    public void testReadTimeout() throws Exception {
+        GSAClient client = hungClient();
+        client.setReadTimeout(200, TimeUnit.MILLISECONDS);
+        assertTimesOut(client, query("machine amazement"), 2000);
+        assertEquals(1, client.getEndpoints()[0].getFailureCount());
+    }
+
+    public void testReadTimeoutPooled() throws Exception {
+        GSAClient client = hungClient();
+        PooledHttpTransport transport = new PooledHttpTransport();
+        client.setTransport(transport);
+        client.setReadTimeout(200, TimeUnit.MILLISECONDS);
+        assertTimesOut(client, query("machine amazement"), 2000);
+        assertEquals(0, transport.getLeasedConnections());
+        transport.close();
+    }
+
+    public void testSearchTimeout() throws Exception {
+        GSAClient client = hungClient();
+        client.setSearchTimeout(300, TimeUnit.MILLISECONDS);
+        assertTimesOut(client, query("machine amazement"), 2000);
+        client.setTransport(new PooledHttpTransport());
+        assertTimesOut(client, query("machine amazement"), 2000);
+    }
+
+    public void testQueryOverridesClient() throws Exception {
+        GSAClient client = hungClient();
+        client.setReadTimeout(10, TimeUnit.SECONDS);
+        GSAQuery query = query("machine amazement");
+        query.setReadTimeout(200, TimeUnit.MILLISECONDS);
+        assertTimesOut(client, query, 2000);
+        assertEquals(200, query.copy().getReadTimeout(TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * an https appliance that accepts connections and never answers the
+     * TLS handshake.
+     */
+    public void testHttpsHandshakeTimeout() throws Exception {
+        // connections complete in the backlog without being accepted
+        stalling = new ServerSocket(0);
+        PooledHttpTransport transport = new PooledHttpTransport();
+        GSAClient client = new GSAClient("https", "127.0.0.1", stalling.getLocalPort(), "/search");
+        client.setTransport(transport);
+        client.setConnectTimeout(200, TimeUnit.MILLISECONDS);
+        assertTimesOut(client, query("machine amazement"), 2000);
+        client.setConnectTimeout(0, TimeUnit.MILLISECONDS);
+        GSAQuery query = query("machine amazement");
+        query.setSearchTimeout(300, TimeUnit.MILLISECONDS);
+        assertTimesOut(client, query, 2000);
+        assertEquals(0, transport.getLeasedConnections());
+        transport.close();
+    }
+
+    public void testQueryTimeoutAsync() throws Exception {
+        GSAClient client = hungClient();
+        GSAQuery query = query("machine amazement");
+        query.setReadTimeout(200, TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+        try {
+            client.searchAsync(query).get(2, TimeUnit.SECONDS).close();
+            fail("expected GSATimeoutException");
+        } catch (ExecutionException expected) {
+            assertTrue(String.valueOf(expected.getCause()), expected.getCause() instanceof GSATimeoutException);
+        }
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        assertTrue("timed out after " + elapsed + "ms", elapsed < 2000);
+    }
+
+    public void testReadTimeoutWhileParsing() throws Exception {
+        GSAClient client = new GSAClient("http", "127.0.0.1", stallingAppliance(), "/search");
+        PooledHttpTransport transport = new PooledHttpTransport();
+        client.setTransport(transport);
+        client.setReadTimeout(200, TimeUnit.MILLISECONDS);
+        assertTimesOut(client, query("machine amazement"), 2000);
+        assertEquals(0, transport.getLeasedConnections());
+        transport.close();
+    }
+
+    /**
+     * @return a delegate whose responses trickle in: each read returns a
+     * little data, slowly.
+     */
+    private static GSAClientDelegate tricklingDelegate() throws IOException {
+        final byte[] body = StubAppliance.readFile("src/test/data/Simple10.xml");
+        return new GSAClientDelegate() {
+            public InputStream getResponseStream(String requestUrl) {
+                return new ByteArrayInputStream(body) {
+                    public synchronized int read(byte[] b, int off, int len) {
+                        try {
+                            Thread.sleep(20);
+                        } catch (InterruptedException ie) {
+                        }
+                        return super.read(b, off, Math.min(len, 64));
+                    }
+                };
+            }
+        };
+    }
+
+    public void testSearchTimeoutCoversParsing() throws Exception {
+        GSAClient client = new GSAClient("gsa.mysite.net");
+        client.setClientDelegate(tricklingDelegate());
+        GSAQuery query = query("machine amazement");
+        query.setSearchTimeout(300, TimeUnit.MILLISECONDS);
+        assertTimesOut(client, query, 1000);
+        // without the timeout the same response parses
+        assertEquals(10, client.getGSAResponse(query("machine amazement")).getResults().size());
+    }
+
+    public void testSearchTimeoutCoversStreamReads() throws Exception {
+        GSAClient client = new GSAClient("gsa.mysite.net");
+        client.setClientDelegate(tricklingDelegate());
+        GSAQuery query = query("machine amazement");
+        query.setSearchTimeout(300, TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+        InputStream istream = client.search(query);
+        try {
+            byte[] buf = new byte[8192];
+            while (istream.read(buf) >= 0) {
+            }
+            fail("expected GSATimeoutException");
+        } catch (GSATimeoutException expected) {
+        } finally {
+            istream.close();
+        }
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        assertTrue("timed out after " + elapsed + "ms", elapsed < 1000);
+    }
+}